@@ -0,0 +1,82 @@
+package Benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Seeds the benchmark database with a dataset of the configured size before each trial. Benchmarks that read or
+ * write the database take this state as a parameter.
+ *
+ * The dataset is ACCOUNTS accounts, testuser1 included, and the messages parameter's number of messages spread
+ * evenly over them. Choose a size with -p messages=1000; by default every size is run in turn.
+ */
+@State(Scope.Benchmark)
+public class BenchmarkDatabase {
+
+    /**
+     * JVM argument pointing every forked benchmark JVM at a private in-memory database, so ./h2/db is never touched.
+     */
+    public static final String DB_URL_ARG = "-Ddb.url=jdbc:h2:mem:benchmark;DB_CLOSE_DELAY=-1";
+
+    /**
+     * Number of accounts in the dataset.
+     */
+    public static final int ACCOUNTS = 100;
+
+    private static final int SEED_BATCH_SIZE = 1000;
+
+    @Param({"1000", "100000", "1000000"})
+    public int messages;
+
+    /**
+     * Resets the database to the test seed data, then adds accounts and messages until the dataset has the
+     * configured size.
+     */
+    @Setup(Level.Trial)
+    public void seed() {
+        ConnectionUtil.resetTestDatabase();
+
+        AccountDAO accountDAO = new AccountDAO();
+        for (int account_id = 2; account_id <= ACCOUNTS; account_id++) {
+            accountDAO.addAccount(new Account("benchuser" + account_id, "password"));
+        }
+
+        MessageDAO messageDAO = new MessageDAO();
+        List<Message> batch = new ArrayList<>(SEED_BATCH_SIZE);
+        // the seed data already holds message 1.
+        for (int i = 2; i <= messages; i++) {
+            batch.add(new Message(1 + i % ACCOUNTS, "benchmark message number " + i, 1669947792L + i));
+            if (batch.size() == SEED_BATCH_SIZE || i == messages) {
+                messageDAO.addMessages(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the message_id of a random message from the seeded dataset.
+     */
+    public int randomMessageID() {
+        return ThreadLocalRandom.current().nextInt(1, messages + 1);
+    }
+
+    /**
+     * @return the account_id of a random account from the seeded dataset.
+     */
+    public int randomAccountID() {
+        return ThreadLocalRandom.current().nextInt(1, ACCOUNTS + 1);
+    }
+}
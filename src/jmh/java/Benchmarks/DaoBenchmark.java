@@ -0,0 +1,55 @@
+package Benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.AccountDAO;
+import DAO.MessageDAO;
+import Model.Account;
+import Model.Message;
+
+/**
+ * Measures the DAO calls behind the busiest routes directly against the database, without HTTP or caching.
+ * addMessage grows the message table as it runs, so its dataset is slightly larger than the messages parameter.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class DaoBenchmark {
+
+    private final MessageDAO messageDAO = new MessageDAO();
+    private final AccountDAO accountDAO = new AccountDAO();
+
+    @Benchmark
+    public Message addMessage(BenchmarkDatabase database) {
+        return messageDAO.addMessage(new Message(database.randomAccountID(), "benchmark insert", 1669947792L));
+    }
+
+    @Benchmark
+    public Message getMessageByID(BenchmarkDatabase database) {
+        return messageDAO.getMessageByID(database.randomMessageID());
+    }
+
+    @Benchmark
+    public List<Message> getAllMessagesByUser(BenchmarkDatabase database) {
+        return messageDAO.getAllMessagesByUser(database.randomAccountID());
+    }
+
+    @Benchmark
+    public Account getAccountByUsername(BenchmarkDatabase database) {
+        return accountDAO.getAccountByUsername("testuser1");
+    }
+}
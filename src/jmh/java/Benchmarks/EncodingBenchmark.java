@@ -0,0 +1,62 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Message;
+import Util.Encoding;
+
+/**
+ * Compares the negotiable encodings on the large listings internal callers pull: the time to encode and decode a page
+ * of messages in each, with the encoded size printed once per trial.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    public Encoding encoding;
+
+    @Param({"1000"})
+    public int pageSize;
+
+    private final List<Message> page = new ArrayList<>();
+    private byte[] encodedPage;
+
+    @Setup
+    public void setUp() throws IOException {
+        for (int i = 1; i <= pageSize; i++) {
+            page.add(new Message(i, 1 + i % 50, "benchmark message number " + i + " with some ordinary text", 1669947792L + i));
+        }
+        encodedPage = encoding.getMessageListWriter().writeValueAsBytes(page);
+        System.out.println(encoding + " page of " + pageSize + " messages: " + encodedPage.length + " bytes");
+    }
+
+    @Benchmark
+    public byte[] encodePage() throws IOException {
+        return encoding.getMessageListWriter().writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public List<Message> decodePage() throws IOException {
+        return encoding.getMessageListReader().readValue(encodedPage);
+    }
+}
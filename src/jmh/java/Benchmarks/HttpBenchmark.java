@@ -0,0 +1,96 @@
+package Benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Measures full requests per route against the Javalin app running in the benchmark JVM, including routing, JSON,
+ * the message cache and the database. The app listens on a free port, so the benchmark can run next to a live server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class HttpBenchmark {
+
+    private Javalin app;
+    private HttpClient webClient;
+    private String baseUrl;
+
+    /**
+     * Starts the app once the dataset has been seeded.
+     */
+    @Setup(Level.Trial)
+    public void startApp(BenchmarkDatabase database) {
+        app = new SocialMediaController().startAPI().start(0);
+        webClient = HttpClient.newHttpClient();
+        baseUrl = "http://localhost:" + app.port();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApp() {
+        app.stop();
+    }
+
+    @Benchmark
+    public String login() throws IOException, InterruptedException {
+        return post("/login", "{\"username\": \"testuser1\", \"password\": \"password\"}");
+    }
+
+    @Benchmark
+    public String createMessage(BenchmarkDatabase database) throws IOException, InterruptedException {
+        return post("/messages", "{\"posted_by\": " + database.randomAccountID()
+                + ", \"message_text\": \"benchmark insert\", \"time_posted_epoch\": 1669947792}");
+    }
+
+    @Benchmark
+    public String getMessageByID(BenchmarkDatabase database) throws IOException, InterruptedException {
+        return get("/messages/" + database.randomMessageID());
+    }
+
+    @Benchmark
+    public String getMessagesPage(BenchmarkDatabase database) throws IOException, InterruptedException {
+        return get("/messages?limit=50&after=" + database.randomMessageID());
+    }
+
+    @Benchmark
+    public String getMessagesByUserPage(BenchmarkDatabase database) throws IOException, InterruptedException {
+        return get("/accounts/" + database.randomAccountID() + "/messages?order=recent&limit=50");
+    }
+
+    private String get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(baseUrl + path)).build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private String post(String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + path))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString()).body();
+    }
+}
@@ -0,0 +1,81 @@
+package Benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Model.Message;
+import Util.JsonUtil;
+
+/**
+ * Measures Jackson round-trips of Model.Message, and compares the old handler pattern (a new ObjectMapper per
+ * request, serialized to a String) with the shared pre-built writer streaming into the response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonBenchmark {
+
+    private final Message message = new Message(1, 1, "benchmark message number 1", 1669947792L);
+    private final List<Message> page = new ArrayList<>();
+    private final ByteArrayOutputStream response = new ByteArrayOutputStream(8192);
+    private byte[] messageJson;
+
+    @Setup
+    public void setUp() throws IOException {
+        for (int i = 1; i <= 20; i++) {
+            page.add(new Message(i, 1, "benchmark message number " + i, 1669947792L + i));
+        }
+        messageJson = JsonUtil.MESSAGE_WRITER.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public byte[] writeMessage() throws IOException {
+        return JsonUtil.MESSAGE_WRITER.writeValueAsBytes(message);
+    }
+
+    @Benchmark
+    public Message readMessage() throws IOException {
+        return JsonUtil.MESSAGE_READER.readValue(messageJson);
+    }
+
+    @Benchmark
+    public Message roundTripMessage() throws IOException {
+        return JsonUtil.MESSAGE_READER.readValue(JsonUtil.MESSAGE_WRITER.writeValueAsBytes(message));
+    }
+
+    @Benchmark
+    public int writePageWithNewMapper() throws IOException {
+        ObjectMapper mapper = new ObjectMapper();
+        byte[] body = mapper.writeValueAsString(page).getBytes(StandardCharsets.UTF_8);
+        response.reset();
+        response.write(body);
+        return response.size();
+    }
+
+    @Benchmark
+    public int writePageWithSharedWriter() throws IOException {
+        response.reset();
+        JsonUtil.MESSAGE_LIST_WRITER.writeValue(response, page);
+        return response.size();
+    }
+}
@@ -0,0 +1,116 @@
+package Benchmarks;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+import Controller.SocialMediaController;
+import io.javalin.Javalin;
+
+/**
+ * Drives the app with many concurrent clients, once per execution mode, and prints the throughput and latency each
+ * mode sustains. Each client sends its next request as soon as the previous response arrives, alternating between a
+ * message lookup and a newest-first page of a user's messages.
+ *
+ * Not a JMH benchmark, since JMH measures a fixed number of threads rather than concurrent connections. Run it with
+ * mvn -Pjmh test-compile exec:exec -Djmh.main=Benchmarks.LoadTest -Djmh.args="[clients] [seconds] [messages] [modes...]"
+ * e.g. -Djmh.args="1000 20 100000 platform async virtual" (the defaults). Run it with -Ddb.url=... to keep the seeded
+ * dataset out of ./h2/db; by default it uses the same private in-memory database as the benchmarks.
+ */
+public class LoadTest {
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 100_000;
+        String[] modes = args.length > 3 ? Arrays.copyOfRange(args, 3, args.length) : new String[] {"platform", "async", "virtual"};
+
+        if (System.getProperty("db.url") == null) {
+            System.setProperty("db.url", BenchmarkDatabase.DB_URL_ARG.substring("-Ddb.url=".length()));
+        }
+        BenchmarkDatabase database = new BenchmarkDatabase();
+        database.messages = messages;
+        database.seed();
+
+        System.out.printf("%d clients, %d s per mode, %d messages%n", clients, seconds, messages);
+        for (String mode : modes) {
+            run(mode, clients, seconds, database);
+        }
+    }
+
+    private static void run(String mode, int clients, int seconds, BenchmarkDatabase database) throws Exception {
+        System.setProperty("server.executionMode", mode);
+        Javalin app = new SocialMediaController().startAPI().start(0);
+        String baseUrl = "http://localhost:" + app.port();
+        HttpClient webClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(30)).build();
+
+        LongAdder completed = new LongAdder();
+        LongAdder failed = new LongAdder();
+        long[][] latencies = new long[clients][];
+        int[] counts = new int[clients];
+        CountDownLatch done = new CountDownLatch(clients);
+        long warmupEnd = System.nanoTime() + Duration.ofSeconds(Math.max(1, seconds / 4)).toNanos();
+        long end = warmupEnd + Duration.ofSeconds(seconds).toNanos();
+
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            latencies[client] = new long[1024];
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int i = 0; System.nanoTime() < end; i++) {
+                        String path = i % 2 == 0
+                                ? "/messages/" + database.randomMessageID()
+                                : "/accounts/" + database.randomAccountID() + "/messages?order=recent&limit=20";
+                        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(baseUrl + path)).build();
+                        long start = System.nanoTime();
+                        int status;
+                        try {
+                            status = webClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        } catch (Exception e) {
+                            status = -1;
+                        }
+                        long elapsed = System.nanoTime() - start;
+                        if (start < warmupEnd) continue;
+                        if (status != 200) {
+                            failed.increment();
+                            continue;
+                        }
+                        completed.increment();
+                        if (counts[client] == latencies[client].length) {
+                            latencies[client] = Arrays.copyOf(latencies[client], counts[client] * 2);
+                        }
+                        latencies[client][counts[client]++] = elapsed;
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "load-client-" + client);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        done.await();
+        app.stop();
+
+        long[] all = new long[Arrays.stream(counts).sum()];
+        int offset = 0;
+        for (int c = 0; c < clients; c++) {
+            System.arraycopy(latencies[c], 0, all, offset, counts[c]);
+            offset += counts[c];
+        }
+        Arrays.sort(all);
+        System.out.printf("%-10s %10.0f req/s   p50 %7.2f ms   p99 %7.2f ms   max %8.2f ms   failed %d%n",
+                mode,
+                (double) completed.sum() / seconds, percentile(all, 0.50), percentile(all, 0.99),
+                all.length == 0 ? 0 : all[all.length - 1] / 1e6, failed.sum());
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+}
@@ -0,0 +1,90 @@
+package Benchmarks;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.ConnectionUtil;
+
+/**
+ * Compares the old three-step PATCH and DELETE (an existence check, the write, then a re-read, each on its own
+ * connection) with the single FINAL TABLE / OLD TABLE statement used by MessageDAO. Both delete variants first
+ * insert the message they delete, so their difference is the cost of the extra round trip.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class MessageWriteBenchmark {
+
+    private final MessageDAO messageDAO = new MessageDAO();
+
+    @Benchmark
+    public Message updateInThreeStatements(BenchmarkDatabase database) throws SQLException {
+        int message_id = database.randomMessageID();
+        if (select(message_id) == null) return null;
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
+                        "UPDATE message SET message_text = ? WHERE message_id=?;")) {
+            preparedStatement.setString(1, "updated");
+            preparedStatement.setInt(2, message_id);
+            preparedStatement.execute();
+        }
+        return select(message_id);
+    }
+
+    @Benchmark
+    public Message updateFromFinalTable(BenchmarkDatabase database) {
+        return messageDAO.updateMessageByID(database.randomMessageID(), "updated");
+    }
+
+    @Benchmark
+    public Message deleteInTwoStatements(BenchmarkDatabase database) throws SQLException {
+        int message_id = insert(database);
+        Message message = select(message_id);
+        if (message == null) return null;
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
+                        "DELETE FROM message WHERE message_id=?;")) {
+            preparedStatement.setInt(1, message_id);
+            preparedStatement.execute();
+        }
+        return message;
+    }
+
+    @Benchmark
+    public Message deleteFromOldTable(BenchmarkDatabase database) {
+        return messageDAO.deleteMessageByID(insert(database));
+    }
+
+    private Message select(int message_id) throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(
+                        "SELECT * FROM message WHERE message_id=?;")) {
+            preparedStatement.setInt(1, message_id);
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                return rs.next() ? new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)) : null;
+            }
+        }
+    }
+
+    private int insert(BenchmarkDatabase database) {
+        return messageDAO.addMessage(new Message(database.randomAccountID(), "to delete", 1669947792L)).getMessage_id();
+    }
+}
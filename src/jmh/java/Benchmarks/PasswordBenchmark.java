@@ -0,0 +1,68 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Model.Account;
+import Service.AccountService;
+import Util.ConnectionUtil;
+import Util.PasswordHasher;
+
+/**
+ * Measures logins per second on a single core: a full PBKDF2 verification at each iteration count, a login answered
+ * from the verified credential cache, and the HMAC fingerprint that the cached path costs. Multiply by the number of
+ * password hashing threads for the login capacity of a server.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(1)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class PasswordBenchmark {
+
+    @Param({"100000", "210000", "600000"})
+    public int iterations;
+
+    private PasswordHasher hasher;
+    private String stored;
+    private AccountService accountService;
+    private final Account credentials = new Account("testuser1", "password");
+
+    @Setup
+    public void setUp() {
+        hasher = new PasswordHasher(iterations);
+        stored = hasher.hash("password");
+        ConnectionUtil.resetTestDatabase();
+        accountService = new AccountService();
+        accountService.verifyAccount(credentials);
+    }
+
+    @Benchmark
+    public boolean uncachedLogin() {
+        return hasher.verify("password", stored);
+    }
+
+    @Benchmark
+    public Account cachedLogin() {
+        return accountService.verifyAccount(credentials);
+    }
+
+    @Benchmark
+    public String fingerprint() {
+        return hasher.fingerprint("testuser1", "password");
+    }
+}
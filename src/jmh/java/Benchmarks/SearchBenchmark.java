@@ -0,0 +1,67 @@
+package Benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import DAO.MessageDAO;
+import Model.Message;
+import Util.SearchIndex;
+
+/**
+ * Compares a search through the in-memory SearchIndex with H2 scanning the message table with LIKE '%term%', for a
+ * term found in one message and a term found in every message. The index side covers ranking only; resolving the
+ * twenty ids it returns costs the same as the cached message lookups measured elsewhere.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.AverageTime, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = BenchmarkDatabase.DB_URL_ARG)
+public class SearchBenchmark {
+
+    private static final int LIMIT = 20;
+
+    private final MessageDAO messageDAO = new MessageDAO();
+    private SearchIndex index;
+    private String rareTerm;
+
+    @Setup
+    public void setUp(BenchmarkDatabase database) {
+        index = new SearchIndex(1.0, 604800);
+        messageDAO.forEachMessage(message ->
+                index.add(message.getMessage_id(), message.getMessage_text(), message.getTime_posted_epoch()));
+        rareTerm = String.valueOf(database.messages / 2);
+    }
+
+    @Benchmark
+    public int[] indexRareTerm() {
+        return index.search(rareTerm, LIMIT);
+    }
+
+    @Benchmark
+    public int[] indexCommonTerm() {
+        return index.search("benchmark", LIMIT);
+    }
+
+    @Benchmark
+    public List<Message> likeRareTerm() {
+        return messageDAO.searchMessages(List.of(rareTerm), LIMIT);
+    }
+
+    @Benchmark
+    public List<Message> likeCommonTerm() {
+        return messageDAO.searchMessages(List.of("benchmark"), LIMIT);
+    }
+}
@@ -0,0 +1,56 @@
+package Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import Service.SessionService;
+
+/**
+ * Measures the cost of session tokens: issuing one at login, and the in-memory check every authenticated write pays,
+ * with and without revoked tokens in the deny-list.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenBenchmark {
+
+    private SessionService sessionService;
+    private SessionService revokingSessionService;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        sessionService = new SessionService(new byte[32], 3600);
+        token = sessionService.issue(1);
+        revokingSessionService = new SessionService(new byte[32], 3600);
+        for (int i = 0; i < 1000; i++) revokingSessionService.revoke(revokingSessionService.issue(i));
+    }
+
+    @Benchmark
+    public String issue() {
+        return sessionService.issue(1);
+    }
+
+    @Benchmark
+    public int verify() {
+        return sessionService.verify(token);
+    }
+
+    @Benchmark
+    public int verifyWithDenyList() {
+        return revokingSessionService.verify(token);
+    }
+}
@@ -0,0 +1,202 @@
+package Controller;
+
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Util.ConnectionUtil;
+import Util.ServerTiming;
+import io.javalin.http.Context;
+import io.javalin.http.Handler;
+
+/**
+ * Decides which threads run the request handlers, since every handler blocks on JDBC.
+ *
+ * In platform mode (the default) handlers run on Jetty's request threads, as Javalin normally does. In virtual mode
+ * each request is handed to a new virtual thread, and in async mode to a bounded pool of platform threads, with the
+ * request suspended through Javalin's ctx.future until the handler finishes. Virtual threads need JDK 21; on an
+ * older JDK virtual mode falls back to async mode.
+ *
+ * In the offloaded modes at most one handler per pooled connection runs at a time, so a burst of requests queues
+ * here instead of timing out inside the connection pool.
+ *
+ * The mode is chosen with the server.executionMode system property (platform, virtual or async). Async mode is sized
+ * with server.async.threads and server.async.queueCapacity; requests beyond its queue are rejected with status 503.
+ *
+ * Whichever thread runs a handler has the request's ServerTiming, if it is being timed, bound to it while it runs.
+ */
+public class HandlerExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger(HandlerExecutor.class);
+
+    /**
+     * The ways handlers can be run.
+     */
+    public enum Mode { PLATFORM, VIRTUAL, ASYNC }
+
+    /**
+     * The result a handler running on an offloaded thread asked to wait for through future(), if any.
+     */
+    private static final ThreadLocal<CompletableFuture<?>> pendingResult = new ThreadLocal<>();
+    /**
+     * Request attribute holding the request's ServerTiming, only set while it is being timed.
+     */
+    static final String SERVER_TIMING_ATTRIBUTE = "serverTiming";
+
+    private final Mode mode;
+    private final ExecutorService executor;
+    private final Semaphore dbPermits;
+
+    /**
+     * @param mode The requested mode. VIRTUAL is downgraded to ASYNC if this JDK has no virtual threads.
+     * @param asyncThreads The number of threads in ASYNC mode.
+     * @param asyncQueueCapacity The number of requests that may wait for a thread in ASYNC mode.
+     * @param dbPermits The number of handlers that may run at once in the offloaded modes.
+     */
+    public HandlerExecutor(Mode mode, int asyncThreads, int asyncQueueCapacity, int dbPermits) {
+        ExecutorService virtualExecutor = mode == Mode.VIRTUAL ? newVirtualThreadExecutor() : null;
+        if (mode == Mode.VIRTUAL && virtualExecutor == null) {
+            logger.warn("Virtual threads are not available on Java {}, falling back to async mode",
+                    System.getProperty("java.version"));
+            mode = Mode.ASYNC;
+        }
+        this.mode = mode;
+        this.dbPermits = new Semaphore(dbPermits, true);
+        if (mode == Mode.VIRTUAL) {
+            executor = virtualExecutor;
+        } else if (mode == Mode.ASYNC) {
+            AtomicInteger count = new AtomicInteger();
+            executor = new ThreadPoolExecutor(asyncThreads, asyncThreads, 60, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<>(asyncQueueCapacity), runnable -> {
+                        Thread thread = new Thread(runnable, "handler-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * @return a HandlerExecutor configured by the server.executionMode, server.async.threads and
+     * server.async.queueCapacity system properties, allowing one handler per pooled connection.
+     */
+    public static HandlerExecutor fromSystemProperties() {
+        Mode mode = Mode.valueOf(System.getProperty("server.executionMode", "platform").toUpperCase(Locale.ROOT));
+        return new HandlerExecutor(mode, Integer.getInteger("server.async.threads", 64),
+                Integer.getInteger("server.async.queueCapacity", 10_000), ConnectionUtil.getPool().getMaxSize());
+    }
+
+    /**
+     * @return the mode handlers are actually run in.
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Wraps handler so that it runs in this executor's mode.
+     * @param handler The handler to wrap.
+     * @return a handler that runs handler on the request thread in platform mode, otherwise one that suspends the
+     * request and runs handler on an offloaded thread. The handler is only started once Javalin asks for the request's
+     * future, after the wrapping handler has returned, so the request thread never touches ctx while it runs.
+     */
+    public Handler wrap(Handler handler) {
+        if (executor == null) return ctx -> handle(handler, ctx);
+        return ctx -> ctx.future(() -> {
+            CompletableFuture<Object> result = new CompletableFuture<>();
+            try {
+                executor.execute(() -> run(handler, ctx, result));
+            } catch (RejectedExecutionException e) {
+                ctx.status(503);
+                return CompletableFuture.completedFuture(null);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * Lets a handler finish its response once future completes, on whichever thread is running it. Handlers must use
+     * this rather than calling ctx.future themselves, which Javalin only honours on the request thread.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param future Supplies the future that completes the response.
+     */
+    public static void future(Context ctx, Supplier<? extends CompletableFuture<?>> future) {
+        if (pendingResult.get() != null) {
+            pendingResult.set(future.get());
+        } else {
+            ctx.future(future);
+        }
+    }
+
+    /**
+     * Runs handler while holding a DB permit, then completes result once the handler and anything it passed to
+     * future() have finished.
+     */
+    private void run(Handler handler, Context ctx, CompletableFuture<Object> result) {
+        CompletableFuture<?> pending;
+        pendingResult.set(CompletableFuture.completedFuture(null));
+        try {
+            dbPermits.acquireUninterruptibly();
+            try {
+                handle(handler, ctx);
+            } finally {
+                dbPermits.release();
+            }
+            pending = pendingResult.get();
+        } catch (Exception e) {
+            result.completeExceptionally(e);
+            return;
+        } finally {
+            pendingResult.remove();
+        }
+        pending.whenComplete((value, e) -> {
+            if (e != null) {
+                result.completeExceptionally(e);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    /**
+     * Runs handler on this thread, with the request's ServerTiming bound to the thread if the request is being timed.
+     */
+    private static void handle(Handler handler, Context ctx) throws Exception {
+        ServerTiming timing = ctx.attribute(SERVER_TIMING_ATTRIBUTE);
+        if (timing == null) {
+            handler.handle(ctx);
+            return;
+        }
+        ServerTiming.bind(timing);
+        try {
+            handler.handle(ctx);
+        } finally {
+            ServerTiming.unbind();
+        }
+    }
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor(), looked up reflectively so the code still compiles and
+     * runs on JDKs without it, or null if it is unavailable.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | UnsupportedOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package Controller;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.server.Response;
+
+import Util.FlightEvents;
+import Util.LatencyHistogram;
+import Util.Metrics;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+
+/**
+ * Records every request's route, status and latency into Metrics, as http_requests_total and
+ * http_request_duration_seconds.
+ *
+ * Routes are registered as the app adds its handlers, so each one's histogram and counters exist before the first
+ * request arrives; finish() then only looks the route up by its method and path pattern and increments preallocated
+ * counters. Requests that match no route are recorded under route="unmatched".
+ *
+ * While the event is enabled, each request is also recorded as a FlightEvents.Request event.
+ */
+class RequestMetrics {
+
+    /**
+     * Request attribute holding the System.nanoTime() reading taken when the request arrived.
+     */
+    private static final String START_ATTRIBUTE = "requestMetricsStart";
+    /**
+     * Request attribute holding the request's FlightEvents.Request event, only set while that event is enabled.
+     */
+    private static final String EVENT_ATTRIBUTE = "requestMetricsEvent";
+    private static final int MIN_STATUS = 100;
+    private static final int MAX_STATUS = 599;
+
+    private final Map<HandlerType, Map<String, Route>> routes = new EnumMap<>(HandlerType.class);
+    private final Route unmatched = new Route("*", "unmatched");
+
+    /**
+     * Creates the metrics of one route.
+     * @param method The route's HTTP method. Before and after handlers are ignored.
+     * @param path The route's path pattern, as given to Javalin.
+     */
+    synchronized void register(HandlerType method, String path) {
+        if (!method.isHttpMethod()) return;
+        // routes is only written while the app is being set up, before requests are served, so readers don't lock.
+        routes.computeIfAbsent(method, key -> new ConcurrentHashMap<>()).put(path, new Route(method.name(), path));
+    }
+
+    /**
+     * Notes when a request arrived. Must run before any other before-handler.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    void start(Context ctx) {
+        ctx.attribute(START_ATTRIBUTE, System.nanoTime());
+        FlightEvents.Request event = new FlightEvents.Request();
+        if (event.isEnabled()) {
+            event.begin();
+            ctx.attribute(EVENT_ATTRIBUTE, event);
+        }
+    }
+
+    /**
+     * Records a finished request's status and latency.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    void finish(Context ctx) {
+        Long start = ctx.attribute(START_ATTRIBUTE);
+        if (start == null) return;
+        Route route = null;
+        Map<String, Route> byPath = routes.get(ctx.method());
+        if (byPath != null) {
+            String path = ctx.endpointHandlerPath();
+            if (path != null) route = byPath.get(path);
+        }
+        if (route == null) route = unmatched;
+        route.latency.recordSince(start);
+        route.status(ctx.statusCode()).increment();
+        FlightEvents.Request event = ctx.attribute(EVENT_ATTRIBUTE);
+        if (event != null && event.shouldCommit()) {
+            event.method = ctx.method().name();
+            event.route = route == unmatched ? "unmatched" : ctx.endpointHandlerPath();
+            event.path = ctx.path();
+            event.status = ctx.statusCode();
+            event.bytesWritten = bytesWritten(ctx);
+            event.commit();
+        }
+    }
+
+    /**
+     * After-handlers run before Javalin writes the result, so a response's size is whatever a handler already wrote
+     * to the output plus the result still waiting to be written, when its length is known up front.
+     * @return the response body's size in bytes, as far as it is known.
+     */
+    private static long bytesWritten(Context ctx) {
+        long written = 0;
+        if (ctx.res() instanceof Response) {
+            written = ((Response) ctx.res()).getHttpOutput().getWritten();
+        }
+        InputStream result = ctx.resultInputStream();
+        if (result != null) {
+            try {
+                written += result.available();
+            } catch (IOException e) {
+                // the result's size is unknown; report what was written so far
+            }
+        }
+        return written;
+    }
+
+    /**
+     * One route's latency histogram and its request counters by status, created on first use of each status.
+     */
+    private static class Route {
+        final String labels;
+        final LatencyHistogram latency;
+        final AtomicReferenceArray<LongAdder> statuses = new AtomicReferenceArray<>(MAX_STATUS - MIN_STATUS + 1);
+
+        Route(String method, String path) {
+            labels = "method=\"" + method + "\",route=\"" + Metrics.escape(path) + "\"";
+            latency = Metrics.histogram("http_request_duration_seconds", "Time from a request's arrival to its response.", labels);
+        }
+
+        LongAdder status(int status) {
+            int index = Math.max(MIN_STATUS, Math.min(status, MAX_STATUS)) - MIN_STATUS;
+            LongAdder counter = statuses.get(index);
+            if (counter == null) {
+                counter = Metrics.counter("http_requests_total", "Requests served, by route and status.",
+                        labels + ",status=\"" + (index + MIN_STATUS) + "\"");
+                statuses.set(index, counter);
+            }
+            return counter;
+        }
+    }
+}
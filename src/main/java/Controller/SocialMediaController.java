@@ -1,182 +1,896 @@
 package Controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.JsonMappingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
 
 import Model.Account;
+import Model.BatchResult;
 import Model.Message;
+import Model.MessagePage;
+import Service.AccountMembership;
 import Service.AccountService;
+import Service.FeedService;
 import Service.MessageService;
+import Service.MessageWriteQueue;
+import Service.SessionService;
+import Util.ConnectionUtil;
+import Util.Encoding;
+import Util.JsonUtil;
+import Util.LoadingCache;
+import Util.MessageIndex;
+import Util.Metrics;
+import Util.SearchIndex;
+import Util.ServerTiming;
+import Util.SqlProfiler;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HandlerType;
+import io.javalin.http.UnauthorizedResponse;
+import io.javalin.json.JavalinJackson;
 
 /**
  * This class handles the HTTP requests made to localhost:8080. Handlers are supplied for each supported request.
+ *
+ * Accounts and messages are sent as JSON by default, or as Smile or CBOR when the request's Accept header prefers
+ * them, and request bodies are read in whichever of the three their Content-Type names (see Encoding).
  */
 public class SocialMediaController {
 
+    /**
+     * Response header carrying the after/before value that fetches the next page of a paginated listing.
+     */
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    /**
+     * Response header carrying the session token issued by /login. Clients send it back as "Authorization: Bearer {token}".
+     */
+    public static final String AUTH_TOKEN_HEADER = "X-Auth-Token";
+    /**
+     * Request header carrying the management token that /metrics and /admin requests must present.
+     */
+    public static final String MANAGEMENT_TOKEN_HEADER = "X-Management-Token";
+    /**
+     * Request attribute holding the account_id of a request's verified session token, if it has one.
+     */
+    private static final String AUTHENTICATED_ACCOUNT = "authenticatedAccount";
+    private static final String BEARER_PREFIX = "Bearer ";
+    private static final String WEAK_ETAG_PREFIX = "W/";
+
     AccountService accountService;
     MessageService messageService;
+    FeedService feedService;
+    HandlerExecutor handlerExecutor;
+    SessionService sessionService;
+    /**
+     * Whether write requests must carry a session token, set by the auth.required system property. When false,
+     * requests without a token are trusted as before, but a token that is presented is still checked.
+     */
+    boolean authRequired;
+    /**
+     * Whether responses carry a Server-Timing header breaking the request down by phase, set by the http.serverTiming
+     * system property.
+     */
+    boolean serverTiming;
+    /**
+     * The token /metrics and /admin requests must send in the X-Management-Token header, set by the management.token
+     * system property. When it is unset those endpoints are not served at all.
+     */
+    String managementToken;
+    RequestMetrics requestMetrics;
 
     public SocialMediaController(){
-        accountService = new AccountService();
-        messageService = new MessageService();
+        AccountMembership accountMembership = new AccountMembership();
+        accountService = new AccountService(accountMembership);
+        feedService = new FeedService();
+        messageService = new MessageService(feedService, accountMembership);
+        handlerExecutor = HandlerExecutor.fromSystemProperties();
+        sessionService = new SessionService();
+        authRequired = Boolean.getBoolean("auth.required");
+        serverTiming = Boolean.getBoolean("http.serverTiming");
+        managementToken = System.getProperty("management.token");
+        requestMetrics = new RequestMetrics();
+        registerMetrics(accountMembership);
     }
 
     /**
-     * Establishes the valid requests and their respective handlers.
+     * Establishes the valid requests and their respective handlers. Handlers run on the threads chosen by
+     * handlerExecutor (see HandlerExecutor), after authenticate() has checked the request's session token. Every
+     * request's route, status and latency are recorded by requestMetrics, and its phases are timed into a Server-Timing
+     * header when serverTiming is set. The management endpoints are only served when managementToken is set, to requests
+     * presenting it.
      * @return a Javalin app object which defines the behavior of the Javalin controller.
      */
     public Javalin startAPI() {
-        Javalin app = Javalin.create();
-        app.post("/register", this::userRegistrationHandler);
-        app.post("/login", this::loginHandler);
-        app.post("/messages", this::createNewMessageHandler);
-        app.get("/messages", this::getAllMessagesHandler);
-        app.get("/messages/{message_id}", this::getMsgByIDHandler);
-        app.delete("/messages/{message_id}", this::deleteMessageByIDHandler);
-        app.patch("/messages/{message_id}", this::updateMessageByIDHandler);
-        app.get("/accounts/{account_id}/messages", this::getAllMessagesByUserHandler);
+        Javalin app = Javalin.create(config -> config.jsonMapper(new JavalinJackson(JsonUtil.MAPPER)));
+        app.events(event -> event.handlerAdded(handler -> requestMetrics.register(handler.getHttpMethod(), handler.getPath())));
+        app.before(requestMetrics::start);
+        app.after(requestMetrics::finish);
+        if (serverTiming) {
+            app.before(ctx -> ctx.attribute(HandlerExecutor.SERVER_TIMING_ATTRIBUTE, new ServerTiming()));
+            app.after(this::serverTimingHandler);
+        }
+        app.before(this::authenticate);
+        app.exception(UnauthorizedResponse.class, (e, ctx) -> ctx.status(401));
+        app.post("/register", handlerExecutor.wrap(this::userRegistrationHandler));
+        app.post("/login", handlerExecutor.wrap(this::loginHandler));
+        app.post("/logout", this::logoutHandler);
+        app.post("/messages", handlerExecutor.wrap(this::createNewMessageHandler));
+        app.post("/messages/batch", handlerExecutor.wrap(this::createMessageBatchHandler));
+        app.get("/messages", handlerExecutor.wrap(this::getAllMessagesHandler));
+        app.get("/messages/export", handlerExecutor.wrap(this::exportMessagesHandler));
+        app.get("/messages/search", handlerExecutor.wrap(this::searchMessagesHandler));
+        app.get("/messages/{message_id}", handlerExecutor.wrap(this::getMsgByIDHandler));
+        app.delete("/messages/{message_id}", handlerExecutor.wrap(this::deleteMessageByIDHandler));
+        app.patch("/messages/{message_id}", handlerExecutor.wrap(this::updateMessageByIDHandler));
+        app.get("/accounts/{account_id}/messages", handlerExecutor.wrap(this::getAllMessagesByUserHandler));
+        app.get("/accounts/{account_id}/messages/count", handlerExecutor.wrap(this::countMessagesByUserHandler));
+        app.post("/accounts/{account_id}/follow/{target_id}", handlerExecutor.wrap(this::followHandler));
+        app.delete("/accounts/{account_id}/follow/{target_id}", handlerExecutor.wrap(this::unfollowHandler));
+        app.get("/accounts/{account_id}/feed", handlerExecutor.wrap(this::getFeedHandler));
+        if (managementToken != null) {
+            app.before("/metrics", this::authenticateManagement);
+            app.before("/admin/*", this::authenticateManagement);
+            app.get("/metrics", handlerExecutor.wrap(this::metricsHandler));
+            app.get("/admin/sql-stats", handlerExecutor.wrap(this::sqlStatsHandler));
+        }
         return app;
     }
 
     /**
      * Handles user registration requests by communicating with an AccountService object.
-     * Response contains the new Account object if successful (status 200), status 400 otherwise.
+     * Response contains the new Account object if successful (status 200), status 400 otherwise, or status 503 if
+     * the password hashing pool is saturated.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
-     * @throws JsonMappingException 
-     */
-    private void userRegistrationHandler(Context ctx) throws JsonMappingException, JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        Account newAccount = accountService.addAccount(account);
-        if (newAccount == null) {
-            ctx.status(400);
-        } else {
-            ctx.json(mapper.writeValueAsString(newAccount));
+     * @throws IOException if the request body could not be parsed or the response could not be written.
+     */
+    private void userRegistrationHandler(Context ctx) throws IOException {
+        Account account = readBody(ctx, Encoding::getAccountReader);
+        CompletableFuture<Account> future;
+        try {
+            future = accountService.addAccountAsync(account);
+        } catch (RejectedExecutionException e) {
+            ctx.status(503);
+            return;
         }
+        respondWithAccount(ctx, future, 400);
     }
 
     /**
      * Handles login requests by communicating with an AccountService object.
-     * Response contains the new Account object if successful (status 200), status 401 otherwise.
+     * Response contains the new Account object if successful (status 200), with a session token for the account in the
+     * X-Auth-Token header. Status is 401 otherwise, or 503 if the password hashing pool is saturated.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
-     * @throws JsonMappingException 
-     */
-    private void loginHandler(Context ctx) throws JsonMappingException, JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Account account = mapper.readValue(ctx.body(), Account.class);
-        Account newAccount = accountService.verifyAccount(account);
-        if (newAccount == null) {
-            ctx.status(401);
-        } else {
-            ctx.json(mapper.writeValueAsString(newAccount));
+     * @throws IOException if the request body could not be parsed or the response could not be written.
+     */
+    private void loginHandler(Context ctx) throws IOException {
+        Account account = readBody(ctx, Encoding::getAccountReader);
+        CompletableFuture<Account> future;
+        try {
+            future = accountService.verifyAccountAsync(account);
+        } catch (RejectedExecutionException e) {
+            ctx.status(503);
+            return;
         }
+        respondWithAccount(ctx, future.thenApply(verified -> {
+            if (verified != null) ctx.header(AUTH_TOKEN_HEADER, sessionService.issue(verified.getAccount_id()));
+            return verified;
+        }), 401);
+    }
+
+    /**
+     * Handles logout requests by revoking the request's session token with a SessionService object.
+     * Status is 200 if the token was revoked, 401 if the request has no valid token. The response body is always empty.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void logoutHandler(Context ctx) {
+        if (!sessionService.revoke(bearerToken(ctx))) ctx.status(401);
+    }
+
+    /**
+     * Runs before every handler. Verifies the request's session token, if it has one, in memory, and records its
+     * account_id for authorize(). Rejects the request with status 401 if the token is invalid, or if auth.required is
+     * set and a write request has no token.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void authenticate(Context ctx) {
+        String token = bearerToken(ctx);
+        if (token == null) {
+            if (authRequired && requiresToken(ctx)) throw new UnauthorizedResponse();
+            return;
+        }
+        int account_id = sessionService.verify(token);
+        if (account_id == SessionService.INVALID) throw new UnauthorizedResponse();
+        ctx.attribute(AUTHENTICATED_ACCOUNT, account_id);
+    }
+
+    /**
+     * Runs before the management endpoints. Rejects the request with status 401 unless its X-Management-Token header
+     * matches managementToken.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void authenticateManagement(Context ctx) {
+        String token = ctx.header(MANAGEMENT_TOKEN_HEADER);
+        if (token == null || !MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+                managementToken.getBytes(StandardCharsets.UTF_8))) {
+            throw new UnauthorizedResponse();
+        }
+    }
+
+    /**
+     * @return true for requests that change an account's data: every method but GET, except registering and logging in.
+     */
+    private static boolean requiresToken(Context ctx) {
+        if (ctx.method() == HandlerType.GET || ctx.method() == HandlerType.HEAD || ctx.method() == HandlerType.OPTIONS) return false;
+        String path = ctx.path();
+        return !path.equals("/register") && !path.equals("/login");
+    }
+
+    /**
+     * @return the token from the request's "Authorization: Bearer" header, or null if it has none.
+     */
+    private static String bearerToken(Context ctx) {
+        String authorization = ctx.header("Authorization");
+        if (authorization == null || !authorization.startsWith(BEARER_PREFIX)) return null;
+        return authorization.substring(BEARER_PREFIX.length());
+    }
+
+    /**
+     * Checks that a request acting on behalf of account_id is allowed to, setting status 403 if it isn't. Requests
+     * with a session token may only act for the token's account; requests without one were already let through by
+     * authenticate().
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param account_id The account the request acts for.
+     * @return true if the request may proceed.
+     */
+    private static boolean authorize(Context ctx, int account_id) {
+        Integer authenticated = ctx.attribute(AUTHENTICATED_ACCOUNT);
+        if (authenticated == null || authenticated == account_id) return true;
+        ctx.status(403);
+        return false;
+    }
+
+    /**
+     * Checks that a request may change the message with message_id, as authorize() does for its author. Messages that
+     * don't exist are left for the handler to report.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param message_id The message_id of the message the request changes.
+     * @return true if the request may proceed.
+     */
+    private boolean authorizeMessage(Context ctx, int message_id) {
+        if (ctx.attribute(AUTHENTICATED_ACCOUNT) == null) return true;
+        Message message = messageService.getMessageByID(message_id);
+        return message == null || authorize(ctx, message.getPosted_by());
+    }
+
+    /**
+     * Suspends the request until future completes on the password hashing pool, then responds with its Account.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param future Completes with the Account to respond with, or null to respond with failureStatus.
+     * @param failureStatus The status to respond with when future completes with null.
+     */
+    private void respondWithAccount(Context ctx, CompletableFuture<Account> future, int failureStatus) {
+        HandlerExecutor.future(ctx, () -> future.thenAccept(result -> {
+            if (result == null) {
+                ctx.status(failureStatus);
+                return;
+            }
+            try {
+                Encoding encoding = responseEncoding(ctx);
+                ctx.contentType(encoding.getContentType());
+                ctx.result(serialize(ctx, encoding.getAccountWriter(), result));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
     }
 
     /**
      * Handles message creation requests by communicating with a MessageService object.
-     * Response contains the new Message object if successful (status 200), status 400 otherwise.
+     * Response contains the new Message object if successful (status 200), status 400 otherwise, or status 403 if the
+     * request's session token belongs to another account than posted_by. When write-behind is enabled, the message is
+     * group committed (see createNewMessageAsync).
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
-     * @throws JsonMappingException 
+     * @throws IOException if the request body could not be parsed or the response could not be written.
      */
-    private void createNewMessageHandler(Context ctx) throws JsonMappingException, JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
-        Message message = mapper.readValue(ctx.body(), Message.class);
+    private void createNewMessageHandler(Context ctx) throws IOException {
+        Message message = readBody(ctx, Encoding::getMessageReader);
+        if (!authorize(ctx, message.getPosted_by())) return;
+        if (messageService.isWriteBehindEnabled()) {
+            createNewMessageAsync(ctx, message);
+            return;
+        }
         Message newMessage = messageService.createMessage(message);
         if (newMessage == null) {
             ctx.status(400);
         } else {
-            ctx.json(mapper.writeValueAsString(newMessage));
+            writeBody(ctx, Encoding::getMessageWriter, newMessage);
         }
     }
 
+    /**
+     * Creates message through the write-behind queue, suspending the request until the message has been committed
+     * rather than holding a request thread while it waits. Responds as createNewMessageHandler does, or with status 429
+     * if the queue is full.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param message The Message object to create.
+     */
+    private void createNewMessageAsync(Context ctx, Message message) {
+        CompletableFuture<Message> future;
+        try {
+            future = messageService.createMessageAsync(message);
+        } catch (RejectedExecutionException e) {
+            ctx.status(429);
+            return;
+        }
+        // the future completes on the committer thread, so the body is handed to Javalin to write rather than written here.
+        HandlerExecutor.future(ctx, () -> future.thenAccept(newMessage -> {
+            if (newMessage == null) {
+                ctx.status(400);
+                return;
+            }
+            try {
+                Encoding encoding = responseEncoding(ctx);
+                ctx.contentType(encoding.getContentType());
+                ctx.result(serialize(ctx, encoding.getMessageWriter(), newMessage));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }));
+    }
+
+    /**
+     * Handles batch message creation requests by communicating with a MessageService object.
+     * The request body is an array of up to MAX_BATCH_SIZE messages.
+     * Response contains a List of BatchResult objects in request order, each holding either the new message_id or the
+     * reason that message was rejected (status 200). Status is 400 if the batch is missing, empty or too large, and 403
+     * if the request's session token belongs to another account than any message's posted_by.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException if the request body is not a valid array or the response could not be written.
+     */
+    private void createMessageBatchHandler(Context ctx) throws IOException {
+        List<Message> messages = readBody(ctx, Encoding::getMessageListReader);
+        List<BatchResult> results;
+        try {
+            if (messages == null) throw new IllegalArgumentException("batch must be a JSON array");
+            for (Message message : messages) {
+                if (!authorize(ctx, message.getPosted_by())) return;
+            }
+            results = messageService.createMessages(messages);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            return;
+        }
+        writeBody(ctx, Encoding::getBatchResultListWriter, results);
+    }
+
     /**
      * Handles requests to fetch all messages by communicating with a MessageService object.
-     * Response contains a List of Message objects. Status is always 200.
+     * Response contains a List of Message objects. Status is always 200, unless pagination parameters are given (see
+     * writeMessagePage).
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
+     * @throws IOException if the response could not be written.
      */
-    private void getAllMessagesHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void getAllMessagesHandler(Context ctx) throws IOException {
+        if (isPageRequest(ctx)) {
+            writeMessagePage(ctx, null, null);
+            return;
+        }
         List<Message> messages = messageService.getAllMessages();
-        ctx.json(mapper.writeValueAsString(messages));
+        writeBody(ctx, Encoding::getMessageListWriter, messages);
+    }
+
+    /**
+     * Handles requests to export every message by streaming them from a MessageService object as they are read from the
+     * database, so memory use does not grow with the size of the table.
+     * Response is a JSON array of Message objects, or newline-delimited JSON (one Message per line) when the format
+     * query parameter is ndjson. Status is always 200.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException if the response could not be written.
+     */
+    private void exportMessagesHandler(Context ctx) throws IOException {
+        boolean ndjson = "ndjson".equals(ctx.queryParam("format"));
+        ctx.contentType(ndjson ? "application/x-ndjson" : ContentType.APPLICATION_JSON.getMimeType());
+        try (JsonGenerator generator = JsonUtil.MAPPER.createGenerator(ctx.outputStream())) {
+            generator.setRootValueSeparator(null);
+            if (!ndjson) generator.writeStartArray();
+            messageService.forEachMessage(message -> {
+                try {
+                    JsonUtil.MESSAGE_STREAM_WRITER.writeValue(generator, message);
+                    if (ndjson) generator.writeRaw('\n');
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            if (!ndjson) generator.writeEndArray();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
     }
 
     /**
      * Handles fetching of a specific message by message ID by communicating with a MessageService object.
      * message_id is obtained through the path parameter.
-     * Response contains the respective Message object if it exists, an empty body otherwise. Status is always 200.
+     * Response contains the respective Message object if it exists, with an ETag header, or an empty body otherwise.
+     * Status is 200, or 304 with no body if the request's If-None-Match holds the message's current ETag.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
+     * @throws IOException if the response could not be written.
      */
-    private void getMsgByIDHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void getMsgByIDHandler(Context ctx) throws IOException {
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
+        String etag = etag(ctx, messageService.getVersions().messageVersion(message_id));
+        if (isNotModified(ctx, etag)) return;
         Message newMessage = messageService.getMessageByID(message_id);
         if (newMessage == null) {
             ctx.json("");
         } else {
-            ctx.json(mapper.writeValueAsString(newMessage));
+            ctx.header(Header.ETAG, etag);
+            writeBody(ctx, Encoding::getMessageWriter, newMessage);
         }
     }
 
+    /**
+     * Handles message search requests by communicating with a MessageService object.
+     * Query parameters: q, the search text, and limit (defaults to DEFAULT_PAGE_SIZE, capped at MAX_PAGE_SIZE).
+     * Response contains the List of Message objects containing any word of q, best match first (status 200). Status
+     * is 400 if q has no words or limit is malformed.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException if the response could not be written.
+     */
+    private void searchMessagesHandler(Context ctx) throws IOException {
+        List<Message> messages;
+        try {
+            int limit = ctx.queryParam("limit") == null ? MessageService.DEFAULT_PAGE_SIZE : Integer.parseInt(ctx.queryParam("limit"));
+            messages = messageService.searchMessages(ctx.queryParam("q"), limit);
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            return;
+        }
+        writeBody(ctx, Encoding::getMessageListWriter, messages);
+    }
+
     /**
      * Handles message deletion requests by communicating with a MessageService object.
      * message_id is obtained through the path parameter.
-     * Response contains the Message object that was deleted if it exists, an empty body otherwise. Status is always 200.
+     * Response contains the Message object that was deleted if it exists, an empty body otherwise. Status is 200, or
+     * 403 if the request's session token belongs to another account than the message's author.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
+     * @throws IOException if the response could not be written.
      */
-    private void deleteMessageByIDHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void deleteMessageByIDHandler(Context ctx) throws IOException {
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
+        if (!authorizeMessage(ctx, message_id)) return;
         Message deletedMessage = messageService.deleteMessageByID(message_id);
         if (deletedMessage == null) {
             ctx.json("");
         } else {
-            ctx.json(mapper.writeValueAsString(deletedMessage));
+            writeBody(ctx, Encoding::getMessageWriter, deletedMessage);
         }
     }
 
     /**
      * Handles message update requests by communicating with a MessageService object.
      * message_id is obtained through the path parameter.
-     * Response contains the Message object that was updated if it exists (status 200), status 400 otherwise.
+     * Response contains the Message object that was updated if it exists (status 200), status 400 otherwise, or status
+     * 403 if the request's session token belongs to another account than the message's author.
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
+     * @throws IOException if the response could not be written.
      */
-    private void updateMessageByIDHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void updateMessageByIDHandler(Context ctx) throws IOException {
         int message_id = Integer.parseInt(ctx.pathParam("message_id"));
+        if (!authorizeMessage(ctx, message_id)) return;
 
-        Message message = mapper.readValue(ctx.body(), Message.class);
+        Message message = readBody(ctx, Encoding::getMessageReader);
         String new_body = message.getMessage_text();
         Message updatedMessage = messageService.updateMessageByID(message_id, new_body);
         if (updatedMessage == null) {
             ctx.status(400);
         } else {
-            ctx.json(mapper.writeValueAsString(updatedMessage));
+            writeBody(ctx, Encoding::getMessageWriter, updatedMessage);
         }
     }
 
     /**
      * Handles requests to fetch all messages by account_id by communicating with a MessageService object.
      * account_id is obtained through the path parameter.
-     * Response contains the List of Message objects by user with account_id. Status is always 200.
+     * Response contains the List of Message objects by user with account_id, with an ETag header that changes whenever
+     * the user creates, updates or deletes a message. Status is 200, or 304 with no body if the request's
+     * If-None-Match holds the current ETag, unless pagination parameters are given (see writeMessagePage).
      * @param context The Javalin Context object manages information about both the HTTP request and response.
-     * @throws JsonProcessingException 
+     * @throws IOException if the response could not be written.
      */
-    private void getAllMessagesByUserHandler(Context ctx) throws JsonProcessingException {
-        ObjectMapper mapper = new ObjectMapper();
+    private void getAllMessagesByUserHandler(Context ctx) throws IOException {
         int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        String etag = etag(ctx, messageService.getVersions().accountVersion(account_id));
+        if (isNotModified(ctx, etag)) return;
+        if (isPageRequest(ctx)) {
+            writeMessagePage(ctx, account_id, etag);
+            return;
+        }
         List<Message> messages = messageService.getAllMessagesByUser(account_id);
-        ctx.json(mapper.writeValueAsString(messages));
+        ctx.header(Header.ETAG, etag);
+        writeBody(ctx, Encoding::getMessageListWriter, messages);
+    }
+
+    /**
+     * Handles requests to count the messages by account_id by communicating with a MessageService object.
+     * account_id is obtained through the path parameter.
+     * Response contains a JSON object whose count field is the number of messages by the user with account_id. Status
+     * is always 200.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException if the response could not be written.
+     */
+    private void countMessagesByUserHandler(Context ctx) throws IOException {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        int count = messageService.countMessagesByUser(account_id);
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        ctx.result("{\"count\":" + count + "}");
+    }
+
+    /**
+     * Handles follow requests by communicating with a FeedService object.
+     * account_id (the follower) and target_id (the account to follow) are obtained through the path parameters.
+     * Response status is 200 if account_id now follows target_id, 400 if the accounts are the same or either doesn't
+     * exist, and 403 if the request's session token belongs to another account. The response body is always empty.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void followHandler(Context ctx) {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        int target_id = Integer.parseInt(ctx.pathParam("target_id"));
+        if (!authorize(ctx, account_id)) return;
+        if (!feedService.follow(account_id, target_id)) ctx.status(400);
+    }
+
+    /**
+     * Handles unfollow requests by communicating with a FeedService object.
+     * account_id (the follower) and target_id (the account to unfollow) are obtained through the path parameters.
+     * Status is 200, whether or not account_id was following target_id, or 403 if the request's session token belongs
+     * to another account. The response body is always empty.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void unfollowHandler(Context ctx) {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        int target_id = Integer.parseInt(ctx.pathParam("target_id"));
+        if (!authorize(ctx, account_id)) return;
+        feedService.unfollow(account_id, target_id);
+    }
+
+    /**
+     * Handles requests for an account's home feed by communicating with a FeedService object.
+     * account_id is obtained through the path parameter.
+     * Query parameters: limit (defaults to DEFAULT_PAGE_SIZE, capped at MAX_PAGE_SIZE) and before={time_posted_epoch}:{message_id}.
+     * Response contains one page of messages from the accounts account_id follows, newest first (status 200). When more
+     * messages exist, the X-Next-Cursor header holds the before value for the next page. Status is 400 if any parameter
+     * is malformed.
+     * @param context The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException if the response could not be written.
+     */
+    private void getFeedHandler(Context ctx) throws IOException {
+        int account_id = Integer.parseInt(ctx.pathParam("account_id"));
+        MessagePage page;
+        try {
+            int limit = ctx.queryParam("limit") == null ? MessageService.DEFAULT_PAGE_SIZE : Integer.parseInt(ctx.queryParam("limit"));
+            long before_epoch = Long.MAX_VALUE;
+            int before_id = Integer.MAX_VALUE;
+            String before = ctx.queryParam("before");
+            if (before != null) {
+                int separator = before.indexOf(':');
+                before_epoch = Long.parseLong(before.substring(0, separator));
+                before_id = Integer.parseInt(before.substring(separator + 1));
+            }
+            page = feedService.getFeed(account_id, before_epoch, before_id, limit);
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            ctx.status(400);
+            return;
+        }
+        // a page whose every message was deleted while it was read has no message to build the cursor from.
+        if (page.hasMore() && page.last() != null) {
+            Message last = page.last();
+            ctx.header(NEXT_CURSOR_HEADER, last.getTime_posted_epoch() + ":" + last.getMessage_id());
+        }
+        writeBody(ctx, Encoding::getMessageListWriter, page.getMessages());
+    }
+
+    /**
+     * Handles requests for the server's metrics, read from memory.
+     * Response contains every metric in Metrics in the Prometheus text exposition format. Status is always 200.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void metricsHandler(Context ctx) {
+        StringBuilder metrics = new StringBuilder(64 * 1024);
+        Metrics.writeTo(metrics);
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8");
+        ctx.result(metrics.toString());
+    }
+
+    /**
+     * Handles requests for the SQL profiler's statistics, read from memory.
+     * Query parameter: limit, the number of statements to list (default 20).
+     * Response contains the statements with the most total time, most first, each with its execution count, rows
+     * and time split into prepare, execute, fetch and map (status 200). Status is 400 if limit is malformed, and 404
+     * if profiling is disabled.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @throws IOException if the response could not be written.
+     */
+    private void sqlStatsHandler(Context ctx) throws IOException {
+        SqlProfiler profiler = ConnectionUtil.getProfiler();
+        if (profiler == null) {
+            ctx.status(404);
+            return;
+        }
+        int limit;
+        try {
+            limit = ctx.queryParam("limit") == null ? 20 : Integer.parseInt(ctx.queryParam("limit"));
+            if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        } catch (IllegalArgumentException e) {
+            ctx.status(400);
+            return;
+        }
+        writeJson(ctx, JsonUtil.SQL_STATS_LIST_WRITER, profiler.top(limit));
+    }
+
+    /**
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return true if the request asks for a single page of messages rather than the full listing.
+     */
+    private boolean isPageRequest(Context ctx) {
+        return ctx.queryParam("limit") != null || ctx.queryParam("after") != null
+                || ctx.queryParam("before") != null || ctx.queryParam("order") != null;
+    }
+
+    /**
+     * Responds with one page of messages, optionally restricted to the user with account_id, using keyset pagination.
+     * Query parameters: limit (defaults to DEFAULT_PAGE_SIZE, capped at MAX_PAGE_SIZE), and either order=id (the default)
+     * with after={message_id}, or order=recent with before={time_posted_epoch}:{message_id}.
+     * When more messages exist, the X-Next-Cursor header holds the after/before value for the next page.
+     * Response status is 400 if any parameter is malformed.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param account_id The author to restrict the listing to, or null for all messages.
+     * @param etag The ETag to send with a successful response, or null for none.
+     * @throws IOException if the response could not be written.
+     */
+    private void writeMessagePage(Context ctx, Integer account_id, String etag) throws IOException {
+        boolean recent;
+        int limit;
+        int after_id = 0;
+        long before_epoch = Long.MAX_VALUE;
+        int before_id = Integer.MAX_VALUE;
+        try {
+            String order = ctx.queryParam("order");
+            recent = "recent".equals(order);
+            if (order != null && !recent && !order.equals("id")) throw new IllegalArgumentException("unknown order " + order);
+            limit = ctx.queryParam("limit") == null ? MessageService.DEFAULT_PAGE_SIZE : Integer.parseInt(ctx.queryParam("limit"));
+            if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+            if (recent) {
+                if (ctx.queryParam("after") != null) throw new IllegalArgumentException("after is only valid with order=id");
+                String before = ctx.queryParam("before");
+                if (before != null) {
+                    int separator = before.indexOf(':');
+                    before_epoch = Long.parseLong(before.substring(0, separator));
+                    before_id = Integer.parseInt(before.substring(separator + 1));
+                }
+            } else {
+                if (ctx.queryParam("before") != null) throw new IllegalArgumentException("before is only valid with order=recent");
+                if (ctx.queryParam("after") != null) after_id = Integer.parseInt(ctx.queryParam("after"));
+            }
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            ctx.status(400);
+            return;
+        }
+
+        MessagePage page;
+        if (recent) {
+            page = account_id == null
+                    ? messageService.getMessagesBefore(before_epoch, before_id, limit)
+                    : messageService.getMessagesByUserBefore(account_id, before_epoch, before_id, limit);
+        } else {
+            page = account_id == null
+                    ? messageService.getMessagesAfter(after_id, limit)
+                    : messageService.getMessagesByUserAfter(account_id, after_id, limit);
+        }
+        if (page.hasMore()) {
+            Message last = page.last();
+            ctx.header(NEXT_CURSOR_HEADER, recent
+                    ? last.getTime_posted_epoch() + ":" + last.getMessage_id()
+                    : String.valueOf(last.getMessage_id()));
+        }
+        if (etag != null) ctx.header(Header.ETAG, etag);
+        writeBody(ctx, Encoding::getMessageListWriter, page.getMessages());
+    }
+
+    /**
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param version A version from MessageVersions.
+     * @return the strong ETag for the version in the response's negotiated encoding, which also names this process's
+     * generation so ETags handed out before a restart never match. Each binary encoding gets its own ETag, since a
+     * strong ETag names one exact representation.
+     */
+    private String etag(Context ctx, long version) {
+        String etag = "\"" + messageService.getVersions().getGeneration() + "-" + version;
+        Encoding encoding = responseEncoding(ctx);
+        if (encoding != Encoding.JSON) etag += "-" + encoding.name().toLowerCase(Locale.ROOT);
+        return etag + "\"";
+    }
+
+    /**
+     * Answers a conditional read without touching the database: if the request's If-None-Match header lists etag,
+     * responds 304 Not Modified with the ETag header and no body.
+     * The version behind etag must be read before the data it describes (see MessageVersions).
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param etag The current ETag of the requested resource.
+     * @return true if the response is complete.
+     */
+    private boolean isNotModified(Context ctx, String etag) {
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch == null) return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            candidate = candidate.trim();
+            // If-None-Match compares weakly, so a W/ prefix added by an intermediary still matches.
+            if (candidate.startsWith(WEAK_ETAG_PREFIX)) candidate = candidate.substring(WEAK_ETAG_PREFIX.length());
+            if (candidate.equals(etag)) {
+                ctx.header(Header.ETAG, etag);
+                ctx.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reports the services' caches, queues and indexes through Metrics. Components that are disabled report nothing.
+     * @param accountMembership The AccountMembership shared by the services.
+     */
+    private void registerMetrics(AccountMembership accountMembership) {
+        registerCacheMetrics("messages", messageService.getMessageCache());
+        registerCacheMetrics("credentials", accountService.getVerifiedCredentials());
+        Metrics.counterFunction("account_membership_lookups_total", "Account existence checks.", "",
+                accountMembership::getLookupCount);
+        Metrics.counterFunction("account_membership_queries_total", "Account existence checks that queried the database.", "",
+                accountMembership::getQueryCount);
+        Metrics.gauge("session_revoked_tokens", "Revoked session tokens held in the deny-list.", "",
+                sessionService::getDenyListSize);
+        if (messageService.getWriteQueue() != null) {
+            MessageWriteQueue writeQueue = messageService.getWriteQueue();
+            Metrics.gauge("message_write_queue_depth", "Messages waiting for a group commit.", "", writeQueue::getQueueDepth);
+            Metrics.counterFunction("message_write_queue_commits_total", "Group commits made.", "", writeQueue::getCommitCount);
+            Metrics.counterFunction("message_write_queue_messages_total", "Messages written by group commits.", "",
+                    writeQueue::getCommittedMessageCount);
+            Metrics.counterFunction("message_write_queue_commit_seconds_total", "Time spent writing group commits.", "",
+                    () -> writeQueue.getTotalCommitNanos() / 1e9);
+            Metrics.gauge("message_write_queue_commit_max_seconds", "Longest group commit so far.", "",
+                    () -> writeQueue.getMaxCommitNanos() / 1e9);
+            double[] batchSizeBounds = Arrays.stream(writeQueue.getBatchSizeBounds()).asDoubleStream().toArray();
+            Metrics.histogramFunction("message_write_queue_batch_size", "Messages written per group commit.", "",
+                    batchSizeBounds, writeQueue::getBatchSizeCounts, writeQueue::getCommittedMessageCount);
+        }
+        if (messageService.getMessageIndex() != null) {
+            MessageIndex index = messageService.getMessageIndex();
+            Metrics.gauge("message_index_messages", "Messages in the author index.", "", index::size);
+            Metrics.gauge("message_index_bytes", "Approximate heap used by the author index.", "", index::estimatedBytes);
+        }
+        if (messageService.getSearchIndex() != null) {
+            SearchIndex search = messageService.getSearchIndex();
+            Metrics.gauge("search_index_messages", "Messages in the search index.", "", search::size);
+            Metrics.gauge("search_index_terms", "Distinct terms in the search index.", "", search::termCount);
+            Metrics.gauge("search_index_posting_bytes", "Bytes of encoded postings in the search index.", "", search::postingBytes);
+        }
+    }
+
+    private static void registerCacheMetrics(String name, LoadingCache<?, ?> cache) {
+        String labels = "cache=\"" + name + "\"";
+        Metrics.counterFunction("cache_hits_total", "Cache lookups answered from memory.", labels, cache::hitCount);
+        Metrics.counterFunction("cache_misses_total", "Cache lookups that had to load.", labels, cache::missCount);
+        Metrics.counterFunction("cache_evictions_total", "Entries evicted for size or age.", labels, cache::evictionCount);
+        Metrics.gauge("cache_size", "Entries held.", labels, cache::size);
+    }
+
+    /**
+     * Adds the Server-Timing header to a timed request's response, unless a handler streaming a large body has already
+     * sent the headers.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     */
+    private void serverTimingHandler(Context ctx) {
+        ServerTiming timing = ctx.attribute(HandlerExecutor.SERVER_TIMING_ATTRIBUTE);
+        if (timing != null && !ctx.res().isCommitted()) ctx.header(ServerTiming.HEADER, timing.toHeader());
+    }
+
+    /**
+     * Negotiates the encoding of the response body from the request's Accept header (see Encoding.forAccept), and
+     * marks the response as varying by Accept so caches keep the encodings apart.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @return the encoding to respond in.
+     */
+    private Encoding responseEncoding(Context ctx) {
+        ctx.header(Header.VARY, Header.ACCEPT);
+        return Encoding.forAccept(ctx.header(Header.ACCEPT));
+    }
+
+    /**
+     * Parses the request body in the encoding named by its Content-Type, timing it as the parse phase when the
+     * request is being timed.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param reader Picks the pre-built reader for the body's type in the body's encoding.
+     * @return the parsed body.
+     * @throws IOException if the request body is not valid in its encoding.
+     */
+    private <T> T readBody(Context ctx, Function<Encoding, ObjectReader> reader) throws IOException {
+        ObjectReader bodyReader = reader.apply(Encoding.forContentType(ctx.header(Header.CONTENT_TYPE)));
+        ServerTiming timing = ctx.attribute(HandlerExecutor.SERVER_TIMING_ATTRIBUTE);
+        if (timing == null) return bodyReader.readValue(ctx.bodyAsBytes());
+        long start = System.nanoTime();
+        T value = bodyReader.readValue(ctx.bodyAsBytes());
+        timing.record(ServerTiming.Phase.PARSE, start);
+        return value;
+    }
+
+    /**
+     * Serializes value, timing it as the serialize phase when the request is being timed.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param writer The pre-built writer for value's type.
+     * @param value The object to serialize.
+     * @return the encoded value.
+     * @throws IOException if value could not be serialized.
+     */
+    private byte[] serialize(Context ctx, ObjectWriter writer, Object value) throws IOException {
+        ServerTiming timing = ctx.attribute(HandlerExecutor.SERVER_TIMING_ATTRIBUTE);
+        if (timing == null) return writer.writeValueAsBytes(value);
+        long start = System.nanoTime();
+        byte[] body = writer.writeValueAsBytes(value);
+        timing.record(ServerTiming.Phase.SERIALIZE, start);
+        return body;
+    }
+
+    /**
+     * Sends value as the response body in the encoding negotiated by responseEncoding().
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param writer Picks the pre-built writer for value's type in the negotiated encoding.
+     * @param value The object to send as the response body.
+     * @throws IOException if the response could not be written.
+     */
+    private void writeBody(Context ctx, Function<Encoding, ObjectWriter> writer, Object value) throws IOException {
+        Encoding encoding = responseEncoding(ctx);
+        write(ctx, encoding.getContentType(), writer.apply(encoding), value);
+    }
+
+    /**
+     * Sends value as a JSON response body, whatever the request accepts. Used by the operational endpoints.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param writer The pre-built writer for value's type.
+     * @param value The object to send as the response body.
+     * @throws IOException if the response could not be written.
+     */
+    private void writeJson(Context ctx, ObjectWriter writer, Object value) throws IOException {
+        write(ctx, ContentType.JSON, writer, value);
+    }
+
+    /**
+     * Serializes value directly into the response output stream, without building an intermediate copy. A timed
+     * request's body is serialized into a buffer instead, so that serialization is timed on its own and the
+     * Server-Timing header can still be added once it is done.
+     * @param ctx The Javalin Context object manages information about both the HTTP request and response.
+     * @param contentType The media type writer produces.
+     * @param writer The pre-built writer for value's type.
+     * @param value The object to send as the response body.
+     * @throws IOException if the response could not be written.
+     */
+    private void write(Context ctx, String contentType, ObjectWriter writer, Object value) throws IOException {
+        ctx.contentType(contentType);
+        if (ctx.attribute(HandlerExecutor.SERVER_TIMING_ATTRIBUTE) == null) {
+            writer.writeValue(ctx.outputStream(), value);
+        } else {
+            ctx.result(serialize(ctx, writer, value));
+        }
     }
-}
\ No newline at end of file
+}
@@ -5,78 +5,112 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import Model.Account;
 import Util.ConnectionUtil;
+import Util.DataAccessException;
+import Util.DaoTimer;
+import Util.FlightEvents;
+import Util.SqlErrors;
 
 public class AccountDAO {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccountDAO.class);
+
+    private static final DaoTimer addAccountTimer = new DaoTimer(AccountDAO.class, "addAccount");
+    private static final DaoTimer getAccountByUsernameTimer = new DaoTimer(AccountDAO.class, "getAccountByUsername");
+    private static final DaoTimer updatePasswordTimer = new DaoTimer(AccountDAO.class, "updatePassword");
+    private static final DaoTimer accountIDExistsTimer = new DaoTimer(AccountDAO.class, "accountIDExists");
+    private static final DaoTimer existingAccountIDsTimer = new DaoTimer(AccountDAO.class, "existingAccountIDs");
+    private static final DaoTimer forEachAccountTimer = new DaoTimer(AccountDAO.class, "forEachAccount");
+
     /**
      * Attempts to connect to the database and add account as a new record to the account table.
      * @param account The Account object to persist to the database.
-     * @return The Account object after persisting it to the database. Returns null on failure.
+     * @return The Account object after persisting it to the database. Returns null if the username is taken.
+     * @throws DataAccessException if the database failed for any other reason.
      */
     public Account addAccount(Account account){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "INSERT INTO account (username, password) VALUES (?, ?);";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        String sql = "INSERT INTO account (username, password) VALUES (?, ?);";
+        FlightEvents.DaoCall call = addAccountTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             preparedStatement.setString(1, account.getUsername());
             preparedStatement.setString(2, account.getPassword());
 
             preparedStatement.executeUpdate();
-            ResultSet rs = preparedStatement.getGeneratedKeys();
-            if(rs.next()){
-                int account_id = rs.getInt(1);
-                return new Account(account_id, account.getUsername(), account.getPassword());
+            try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+                if(rs.next()){
+                    int account_id = rs.getInt(1);
+                    return new Account(account_id, account.getUsername(), account.getPassword());
+                }
             }
         }catch(SQLException e){
-            System.out.println(e.getMessage());
+            SqlErrors.logConstraintViolation(logger, "addAccount", e);
+        } finally {
+            addAccountTimer.stop(call);
         }
         return null;
     }
 
     /**
-     * Attempts to connect to the database and verify that account exists.
-     * @param account The Account object to verify
-     * @return The Account object after verifying it from the database. Returns null on failure.
+     * Attempts to connect to the database and fetch the account using username, including its stored password.
+     * @param username The username to search for in the database.
+     * @return The Account object with username, whose password is the stored hash, or plaintext for rows that predate
+     * hashing. Returns null if there is no such account or on failure.
      */
-    public Account verifyAccount(Account account){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM account WHERE username=? AND password=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+    public Account getAccountByUsername(String username){
+        String sql = "SELECT * FROM account WHERE username=?;";
+        FlightEvents.DaoCall call = getAccountByUsernameTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
-            preparedStatement.setString(1, account.getUsername());
-            preparedStatement.setString(2, account.getPassword());
+            preparedStatement.setString(1, username);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            if(rs.next()){
-                int account_id = rs.getInt(1);
-                return new Account(account_id, account.getUsername(), account.getPassword());
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if(rs.next()){
+                    return new Account(rs.getInt("account_id"), rs.getString("username"), rs.getString("password"));
+                }
             }
         }catch(SQLException e){
-            System.out.println(e.getMessage());
+            SqlErrors.log(logger, "getAccountByUsername", e);
+        } finally {
+            getAccountByUsernameTimer.stop(call);
         }
         return null;
     }
 
     /**
-     * Attempts to connect to the database and check if username is present in the account table.
-     * @param username The username to search for in the database.
-     * @return true if username is currently being used by an Account, false otherwise.
+     * Attempts to connect to the database and replace an account's stored password, if it hasn't changed since it
+     * was read.
+     * @param account_id The account_id of the account to update.
+     * @param oldPassword The stored password that was read and verified.
+     * @param newPassword The value to store instead.
+     * @return true if the password was replaced, false if it had already changed or on failure.
      */
-    public boolean usernameExists(String username){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM account WHERE username = ?;" ;
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+    public boolean updatePassword(int account_id, String oldPassword, String newPassword){
+        String sql = "UPDATE account SET password=? WHERE account_id=? AND password=?;";
+        FlightEvents.DaoCall call = updatePasswordTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
-            preparedStatement.setString(1, username);
+            preparedStatement.setString(1, newPassword);
+            preparedStatement.setInt(2, account_id);
+            preparedStatement.setString(3, oldPassword);
 
-            if (preparedStatement.executeQuery().next()) return true;
-        } catch(SQLException e) {
-            System.out.println(e.getMessage());
+            return preparedStatement.executeUpdate() == 1;
+        }catch(SQLException e){
+            SqlErrors.log(logger, "updatePassword", e);
+        } finally {
+            updatePasswordTimer.stop(call);
         }
         return false;
     }
@@ -87,18 +121,71 @@ public class AccountDAO {
      * @return true if account_id is currently being used by an Account, false otherwise.
      */
     public boolean accountIDExists(int account_id){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM account WHERE account_id = ?;" ;
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT * FROM account WHERE account_id = ?;" ;
+        FlightEvents.DaoCall call = accountIDExistsTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setInt(1, account_id);
 
-            if (preparedStatement.executeQuery().next()) return true;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) return true;
+            }
         } catch(SQLException e) {
-            System.out.println(e.getMessage());
+            SqlErrors.log(logger, "accountIDExists", e);
+        } finally {
+            accountIDExistsTimer.stop(call);
         }
         return false;
     }
-    
+
+    /**
+     * Attempts to connect to the database and find which of account_ids are present in the account table, using a
+     * single query. The ids are bound as one array parameter, so the statement's SQL is the same for any number of ids.
+     * @param account_ids The account_ids to search for in the database. Must not be empty.
+     * @return The Set of account_ids currently being used by an Account. Returns an empty Set on failure.
+     */
+    public Set<Integer> existingAccountIDs(Collection<Integer> account_ids){
+        Set<Integer> existing = new HashSet<>();
+        String sql = "SELECT account_id FROM account WHERE account_id = ANY(?);";
+        FlightEvents.DaoCall call = existingAccountIDsTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", account_ids.toArray()));
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    existing.add(rs.getInt(1));
+                }
+            }
+        } catch(SQLException e) {
+            SqlErrors.log(logger, "existingAccountIDs", e);
+        } finally {
+            existingAccountIDsTimer.stop(call);
+        }
+        return existing;
+    }
+
+    /**
+     * Attempts to connect to the database and pass every account in the account table to consumer, one at a time,
+     * without their passwords.
+     * @param consumer Receives each Account in account_id order.
+     */
+    public void forEachAccount(Consumer<Account> consumer){
+        String sql = "SELECT account_id, username FROM account ORDER BY account_id;";
+        FlightEvents.DaoCall call = forEachAccountTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                ResultSet rs = preparedStatement.executeQuery()) {
+
+            while (rs.next()) {
+                consumer.accept(new Account(rs.getInt(1), rs.getString(2), null));
+            }
+        } catch(SQLException e) {
+            SqlErrors.log(logger, "forEachAccount", e);
+        } finally {
+            forEachAccountTimer.stop(call);
+        }
+    }
 }
@@ -0,0 +1,148 @@
+package DAO;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import Util.ConnectionUtil;
+import Util.DaoTimer;
+import Util.FlightEvents;
+import Util.SqlErrors;
+
+public class FollowDAO {
+
+    private static final Logger logger = LoggerFactory.getLogger(FollowDAO.class);
+
+    private static final DaoTimer followTimer = new DaoTimer(FollowDAO.class, "follow");
+    private static final DaoTimer unfollowTimer = new DaoTimer(FollowDAO.class, "unfollow");
+    private static final DaoTimer countFollowersTimer = new DaoTimer(FollowDAO.class, "countFollowers");
+    private static final DaoTimer getFollowerIDsTimer = new DaoTimer(FollowDAO.class, "getFollowerIDs");
+    private static final DaoTimer getFolloweeIDsTimer = new DaoTimer(FollowDAO.class, "getFolloweeIDs");
+
+    /**
+     * Attempts to connect to the database and record that follower_id follows followee_id in the follow table.
+     * Following an account that is already followed succeeds without changing anything.
+     * @param follower_id The account_id of the follower.
+     * @param followee_id The account_id of the account being followed.
+     * @return true if follower_id now follows followee_id, false on failure, e.g. if either account doesn't exist.
+     */
+    public boolean follow(int follower_id, int followee_id){
+        String sql = "MERGE INTO follow (follower_id, followee_id) KEY (follower_id, followee_id) VALUES (?, ?);";
+        FlightEvents.DaoCall call = followTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setInt(1, follower_id);
+            preparedStatement.setInt(2, followee_id);
+
+            preparedStatement.executeUpdate();
+            return true;
+        }catch(SQLException e){
+            SqlErrors.log(logger, "follow", e);
+        } finally {
+            followTimer.stop(call);
+        }
+        return false;
+    }
+
+    /**
+     * Attempts to connect to the database and remove the record that follower_id follows followee_id from the follow
+     * table, if it exists.
+     * @param follower_id The account_id of the follower.
+     * @param followee_id The account_id of the account being unfollowed.
+     * @return true if follower_id was following followee_id, false otherwise.
+     */
+    public boolean unfollow(int follower_id, int followee_id){
+        String sql = "DELETE FROM follow WHERE follower_id = ? AND followee_id = ?;";
+        FlightEvents.DaoCall call = unfollowTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setInt(1, follower_id);
+            preparedStatement.setInt(2, followee_id);
+
+            return preparedStatement.executeUpdate() > 0;
+        }catch(SQLException e){
+            SqlErrors.log(logger, "unfollow", e);
+        } finally {
+            unfollowTimer.stop(call);
+        }
+        return false;
+    }
+
+    /**
+     * Attempts to connect to the database and fetch every account that follows followee_id.
+     * @param followee_id The account_id whose followers are requested.
+     * @return The List of follower account_ids. Returns an empty List on failure.
+     */
+    public List<Integer> getFollowerIDs(int followee_id){
+        return getIDs("SELECT follower_id FROM follow WHERE followee_id = ?;", followee_id, getFollowerIDsTimer);
+    }
+
+    /**
+     * Attempts to connect to the database and fetch every account that follower_id follows.
+     * @param follower_id The account_id whose followed accounts are requested.
+     * @return The List of followed account_ids. Returns an empty List on failure.
+     */
+    public List<Integer> getFolloweeIDs(int follower_id){
+        return getIDs("SELECT followee_id FROM follow WHERE follower_id = ?;", follower_id, getFolloweeIDsTimer);
+    }
+
+    /**
+     * Attempts to connect to the database and count the accounts that follow followee_id.
+     * @param followee_id The account_id whose followers are counted.
+     * @return The number of followers. Returns 0 on failure.
+     */
+    public int countFollowers(int followee_id){
+        String sql = "SELECT COUNT(*) FROM follow WHERE followee_id = ?;";
+        FlightEvents.DaoCall call = countFollowersTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setInt(1, followee_id);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) return rs.getInt(1);
+            }
+        }catch(SQLException e){
+            SqlErrors.log(logger, "countFollowers", e);
+        } finally {
+            countFollowersTimer.stop(call);
+        }
+        return 0;
+    }
+
+    /**
+     * Runs a query returning a single column of account_ids.
+     * @param sql The query, with a single int parameter.
+     * @param account_id The value of the parameter.
+     * @param timer The timer of the calling method.
+     * @return The List of account_ids. Returns an empty List on failure.
+     */
+    private List<Integer> getIDs(String sql, int account_id, DaoTimer timer){
+        List<Integer> account_ids = new ArrayList<>();
+        FlightEvents.DaoCall call = timer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setInt(1, account_id);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while (rs.next()) {
+                    account_ids.add(rs.getInt(1));
+                }
+            }
+        }catch(SQLException e){
+            SqlErrors.log(logger, "getIDs", e);
+        } finally {
+            timer.stop(call);
+        }
+        return account_ids;
+    }
+}
@@ -1,64 +1,161 @@
 package DAO;
 
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import Model.Message;
 import Util.ConnectionUtil;
+import Util.DataAccessException;
+import Util.DaoTimer;
+import Util.FlightEvents;
+import Util.SqlErrors;
 
 public class MessageDAO {
 
+    private static final Logger logger = LoggerFactory.getLogger(MessageDAO.class);
+
+    private static final DaoTimer addMessageTimer = new DaoTimer(MessageDAO.class, "addMessage");
+    private static final DaoTimer addMessagesTimer = new DaoTimer(MessageDAO.class, "addMessages");
+    private static final DaoTimer getMessageByIDTimer = new DaoTimer(MessageDAO.class, "getMessageByID");
+    private static final DaoTimer getAllMessagesTimer = new DaoTimer(MessageDAO.class, "getAllMessages");
+    private static final DaoTimer forEachMessageTimer = new DaoTimer(MessageDAO.class, "forEachMessage");
+    private static final DaoTimer getAllMessagesByUserTimer = new DaoTimer(MessageDAO.class, "getAllMessagesByUser");
+    private static final DaoTimer countMessagesByUserTimer = new DaoTimer(MessageDAO.class, "countMessagesByUser");
+    private static final DaoTimer getMessagesAfterTimer = new DaoTimer(MessageDAO.class, "getMessagesAfter");
+    private static final DaoTimer getMessagesBeforeTimer = new DaoTimer(MessageDAO.class, "getMessagesBefore");
+    private static final DaoTimer getMessagesByUserAfterTimer = new DaoTimer(MessageDAO.class, "getMessagesByUserAfter");
+    private static final DaoTimer getMessagesByUserBeforeTimer = new DaoTimer(MessageDAO.class, "getMessagesByUserBefore");
+    private static final DaoTimer getMessagesByIDsTimer = new DaoTimer(MessageDAO.class, "getMessagesByIDs");
+    private static final DaoTimer deleteMessageByIDTimer = new DaoTimer(MessageDAO.class, "deleteMessageByID");
+    private static final DaoTimer replaceMessageTextTimer = new DaoTimer(MessageDAO.class, "replaceMessageText");
+    private static final DaoTimer searchMessagesTimer = new DaoTimer(MessageDAO.class, "searchMessages");
+    private static final DaoTimer messageIDExistsTimer = new DaoTimer(MessageDAO.class, "messageIDExists");
+
+    /**
+     * Number of rows requested from the database per round trip while streaming the message table.
+     */
+    private static final int STREAM_FETCH_SIZE = 500;
+
     /**
      * Attempts to connect to the database and add message as a new record to the message table.
      * @param message The Message object to persist to the database.
-     * @return The Message object after persisting it to the database. Returns null on failure.
+     * @return The Message object after persisting it to the database. Returns null if posted_by doesn't exist.
+     * @throws DataAccessException if the database failed for any other reason.
      */
     public Message addMessage(Message message){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);";
+        FlightEvents.DaoCall call = addMessageTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 
             preparedStatement.setInt(1, message.getPosted_by());
             preparedStatement.setString(2, message.getMessage_text());
             preparedStatement.setLong(3, message.getTime_posted_epoch());
 
             preparedStatement.executeUpdate();
-            ResultSet rs = preparedStatement.getGeneratedKeys();
-            if(rs.next()){
-                int message_id = rs.getInt(1);
-                return new Message(message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+            try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+                if(rs.next()){
+                    int message_id = rs.getInt(1);
+                    return new Message(message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+                }
             }
         }catch(SQLException e){
-            System.out.println(e.getMessage());
+            SqlErrors.logConstraintViolation(logger, "addMessage", e);
+        } finally {
+            addMessageTimer.stop(call);
         }
         return null;
     }
 
+    /**
+     * Attempts to connect to the database and add every message as a new record to the message table, sending them
+     * as a single JDBC batch in one transaction. If the batch is rejected, the transaction is rolled back and the
+     * messages are inserted one at a time instead, so a bad row only fails itself.
+     * @param messages The Message objects to persist to the database. posted_by must already be known to exist.
+     * @return A List the same size as messages, holding each Message after persisting it, or null for each message
+     * that could not be inserted. Every entry is null if the database could not be reached.
+     */
+    public List<Message> addMessages(List<Message> messages){
+        List<Message> newMessages = new ArrayList<>(Collections.nCopies(messages.size(), null));
+        String sql = "INSERT INTO message (posted_by, message_text, time_posted_epoch) VALUES (?, ?, ?);";
+        FlightEvents.DaoCall call = addMessagesTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+
+            connection.setAutoCommit(false);
+            boolean committed = false;
+            try {
+                for (Message message : messages) {
+                    preparedStatement.setInt(1, message.getPosted_by());
+                    preparedStatement.setString(2, message.getMessage_text());
+                    preparedStatement.setLong(3, message.getTime_posted_epoch());
+                    preparedStatement.addBatch();
+                }
+                preparedStatement.executeBatch();
+                try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+                    for (int i = 0; i < messages.size() && rs.next(); i++) {
+                        newMessages.set(i, withID(rs.getInt(1), messages.get(i)));
+                    }
+                }
+                connection.commit();
+                committed = true;
+            } catch (BatchUpdateException e) {
+                logger.warn("addMessages batch of {} rejected, inserting rows one at a time: {}", messages.size(), e.getMessage());
+                connection.rollback();
+                preparedStatement.clearBatch();
+                for (int i = 0; i < messages.size(); i++) {
+                    newMessages.set(i, addMessage(preparedStatement, messages.get(i)));
+                }
+                connection.commit();
+                committed = true;
+            } finally {
+                // re-enabling auto-commit would commit the open transaction, storing rows the caller is told failed.
+                if (!committed) rollback(connection);
+                connection.setAutoCommit(true);
+            }
+        }catch(SQLException e){
+            SqlErrors.log(logger, "addMessages", e);
+            Collections.fill(newMessages, null);
+        } finally {
+            addMessagesTimer.stop(call);
+        }
+        return newMessages;
+    }
+
     /**
      * Attempts to connect to the database and fetch the message specified by message_id in the message table.
      * @param message_id The message_id to search for in the database.
      * @return The Message object related to message_id, if it exists. Returns null otherwise.
      */
     public Message getMessageByID(int message_id){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM message WHERE message_id=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT * FROM message WHERE message_id=?;";
+        FlightEvents.DaoCall call = getMessageByIDTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setInt(1, message_id);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            if(rs.next()){
-                return new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4));
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if(rs.next()){
+                    return new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4));
+                }
             }
         }catch(SQLException e){
-            System.out.println(e.getMessage());
+            SqlErrors.log(logger, "getMessageByID", e);
+        } finally {
+            getMessageByIDTimer.stop(call);
         }
         return null;
     }
@@ -68,66 +165,274 @@ public class MessageDAO {
      * @return The List of Message objects representing all rows in the message table.
      */
     public List<Message> getAllMessages(){
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-        try {
-            String sql = "SELECT * FROM message;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT * FROM message;";
+        FlightEvents.DaoCall call = getAllMessagesTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql);
+                ResultSet rs = preparedStatement.executeQuery()) {
 
-            ResultSet rs = preparedStatement.executeQuery();
             while(rs.next()){
                 messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
             }
         }catch(SQLException e){
-            System.out.println(e.getMessage());
+            SqlErrors.log(logger, "getAllMessages", e);
+        } finally {
+            getAllMessagesTimer.stop(call);
         }
         return messages;
     }
 
+    /**
+     * Attempts to connect to the database and pass every message in the message table, in message_id order, to
+     * consumer as it is read. The query runs with H2's lazy execution enabled, so rows are produced on demand instead of
+     * the whole result being materialized first, keeping memory use flat however large the table is.
+     * @param consumer Receives each Message in turn. Runtime exceptions thrown by consumer abort the scan and propagate.
+     */
+    public void forEachMessage(Consumer<Message> consumer){
+        String sql = "SELECT * FROM message ORDER BY message_id;";
+        FlightEvents.DaoCall call = forEachMessageTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("SET LAZY_QUERY_EXECUTION TRUE");
+            }
+            try (PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+                preparedStatement.setFetchSize(STREAM_FETCH_SIZE);
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    while(rs.next()){
+                        consumer.accept(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+                    }
+                }
+            } finally {
+                try (Statement statement = connection.createStatement()) {
+                    statement.execute("SET LAZY_QUERY_EXECUTION FALSE");
+                }
+            }
+        }catch(SQLException e){
+            SqlErrors.log(logger, "forEachMessage", e);
+        } finally {
+            forEachMessageTimer.stop(call);
+        }
+    }
+
     /**
      * Attempts to connect to the database and fetch all messages by account_id in the message table.
      * @param account_id The account_id which specifies the author of the messages to be fetched.
-     * @return The List of Message objects written by account_id in the message table.
+     * @return The List of Message objects written by account_id in the message table, oldest first by
+     * time_posted_epoch and then message_id, the same order as MessageIndex.
      */
     public List<Message> getAllMessagesByUser(int account_id){
-        Connection connection = ConnectionUtil.getConnection();
         List<Message> messages = new ArrayList<>();
-        try {
-            String sql = "SELECT * FROM message WHERE posted_by=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT * FROM message WHERE posted_by=? ORDER BY time_posted_epoch, message_id;";
+        FlightEvents.DaoCall call = getAllMessagesByUserTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setInt(1, account_id);
 
-            ResultSet rs = preparedStatement.executeQuery();
-            while(rs.next()){
-                messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                while(rs.next()){
+                    messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+                }
             }
         }catch(SQLException e){
-            System.out.println(e.getMessage());
+            SqlErrors.log(logger, "getAllMessagesByUser", e);
+        } finally {
+            getAllMessagesByUserTimer.stop(call);
         }
         return messages;
     }
 
+    /**
+     * Attempts to connect to the database and count the messages by account_id in the message table.
+     * @param account_id The account_id which specifies the author of the messages to be counted.
+     * @return The number of messages written by account_id. Returns 0 on failure.
+     */
+    public int countMessagesByUser(int account_id){
+        String sql = "SELECT COUNT(*) FROM message WHERE posted_by=?;";
+        FlightEvents.DaoCall call = countMessagesByUserTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setInt(1, account_id);
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if(rs.next()){
+                    return rs.getInt(1);
+                }
+            }
+        }catch(SQLException e){
+            SqlErrors.log(logger, "countMessagesByUser", e);
+        } finally {
+            countMessagesByUserTimer.stop(call);
+        }
+        return 0;
+    }
+
+    /**
+     * Attempts to connect to the database and fetch one page of messages in message_id order, starting after after_id.
+     * @param after_id The message_id of the last message on the previous page, or 0 for the first page.
+     * @param limit The maximum number of messages to fetch.
+     * @return The List of at most limit Message objects with a message_id greater than after_id.
+     */
+    public List<Message> getMessagesAfter(int after_id, int limit){
+        String sql = "SELECT * FROM message WHERE message_id > ? ORDER BY message_id LIMIT ?;";
+        FlightEvents.DaoCall call = getMessagesAfterTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setInt(1, after_id);
+            preparedStatement.setInt(2, limit);
+
+            return readMessages(preparedStatement);
+        }catch(SQLException e){
+            SqlErrors.log(logger, "getMessagesAfter", e);
+        } finally {
+            getMessagesAfterTimer.stop(call);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Attempts to connect to the database and fetch one page of messages, newest first, starting after the
+     * (time_posted_epoch, message_id) position of the last message on the previous page.
+     * @param before_epoch The time_posted_epoch of the last message on the previous page, or Long.MAX_VALUE for the first page.
+     * @param before_id The message_id of the last message on the previous page, or Integer.MAX_VALUE for the first page.
+     * @param limit The maximum number of messages to fetch.
+     * @return The List of at most limit Message objects, ordered by time_posted_epoch then message_id, descending.
+     */
+    public List<Message> getMessagesBefore(long before_epoch, int before_id, int limit){
+        String sql = "SELECT * FROM message WHERE time_posted_epoch < ? OR (time_posted_epoch = ? AND message_id < ?) " +
+                "ORDER BY time_posted_epoch DESC, message_id DESC LIMIT ?;";
+        FlightEvents.DaoCall call = getMessagesBeforeTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setLong(1, before_epoch);
+            preparedStatement.setLong(2, before_epoch);
+            preparedStatement.setInt(3, before_id);
+            preparedStatement.setInt(4, limit);
+
+            return readMessages(preparedStatement);
+        }catch(SQLException e){
+            SqlErrors.log(logger, "getMessagesBefore", e);
+        } finally {
+            getMessagesBeforeTimer.stop(call);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Attempts to connect to the database and fetch one page of messages by account_id in message_id order,
+     * starting after after_id.
+     * @param account_id The account_id which specifies the author of the messages to be fetched.
+     * @param after_id The message_id of the last message on the previous page, or 0 for the first page.
+     * @param limit The maximum number of messages to fetch.
+     * @return The List of at most limit Message objects written by account_id with a message_id greater than after_id.
+     */
+    public List<Message> getMessagesByUserAfter(int account_id, int after_id, int limit){
+        String sql = "SELECT * FROM message WHERE posted_by = ? AND message_id > ? ORDER BY message_id LIMIT ?;";
+        FlightEvents.DaoCall call = getMessagesByUserAfterTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setInt(1, account_id);
+            preparedStatement.setInt(2, after_id);
+            preparedStatement.setInt(3, limit);
+
+            return readMessages(preparedStatement);
+        }catch(SQLException e){
+            SqlErrors.log(logger, "getMessagesByUserAfter", e);
+        } finally {
+            getMessagesByUserAfterTimer.stop(call);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Attempts to connect to the database and fetch one page of messages by account_id, newest first, starting after
+     * the (time_posted_epoch, message_id) position of the last message on the previous page.
+     * @param account_id The account_id which specifies the author of the messages to be fetched.
+     * @param before_epoch The time_posted_epoch of the last message on the previous page, or Long.MAX_VALUE for the first page.
+     * @param before_id The message_id of the last message on the previous page, or Integer.MAX_VALUE for the first page.
+     * @param limit The maximum number of messages to fetch.
+     * @return The List of at most limit Message objects written by account_id, ordered by time_posted_epoch then
+     * message_id, descending.
+     */
+    public List<Message> getMessagesByUserBefore(int account_id, long before_epoch, int before_id, int limit){
+        // H2 prefers the foreign key's single-column index unless told otherwise, and only skips the sort when the
+        // ORDER BY repeats the index's leading column.
+        String sql = "SELECT * FROM message USE INDEX (message_posted_by_time_idx) WHERE posted_by = ? " +
+                "AND (time_posted_epoch < ? OR (time_posted_epoch = ? AND message_id < ?)) " +
+                "ORDER BY posted_by, time_posted_epoch DESC, message_id DESC LIMIT ?;";
+        FlightEvents.DaoCall call = getMessagesByUserBeforeTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setInt(1, account_id);
+            preparedStatement.setLong(2, before_epoch);
+            preparedStatement.setLong(3, before_epoch);
+            preparedStatement.setInt(4, before_id);
+            preparedStatement.setInt(5, limit);
+
+            return readMessages(preparedStatement);
+        }catch(SQLException e){
+            SqlErrors.log(logger, "getMessagesByUserBefore", e);
+        } finally {
+            getMessagesByUserBeforeTimer.stop(call);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Attempts to connect to the database and fetch every message in message_ids with a single query. The ids are bound
+     * as one array parameter, so the statement's SQL is the same for any number of ids.
+     * @param message_ids The message_ids to search for in the database. Must not be empty.
+     * @return The List of Message objects that exist, in no particular order. Returns null on failure, so callers can
+     * tell a failed read from messages that don't exist.
+     */
+    public List<Message> getMessagesByIDs(Collection<Integer> message_ids){
+        String sql = "SELECT * FROM message WHERE message_id = ANY(?);";
+        FlightEvents.DaoCall call = getMessagesByIDsTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            preparedStatement.setArray(1, connection.createArrayOf("INTEGER", message_ids.toArray()));
+
+            return readMessages(preparedStatement);
+        }catch(SQLException e){
+            SqlErrors.log(logger, "getMessagesByIDs", e);
+        } finally {
+            getMessagesByIDsTimer.stop(call);
+        }
+        return null;
+    }
+
     /**
      * Attempts to connect to the database and delete the message specified by message_id in the message table, if it exists.
+     * The delete and the read of the deleted row happen in a single statement, so only one round trip is made and no
+     * other request can change the row in between.
      * @param message_id The message_id to search for in the database.
      * @return The Message object that was deleted, if it exists. Returns null otherwise.
      */
     public Message deleteMessageByID(int message_id){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            Message message = getMessageByID(message_id);
-
-            String sql = "DELETE FROM message WHERE message_id=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT * FROM OLD TABLE (DELETE FROM message WHERE message_id=?);";
+        FlightEvents.DaoCall call = deleteMessageByIDTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setInt(1, message_id);
 
-            preparedStatement.execute();
-            // message will be null if it didn't exist in the first place.
-            return message;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                // no row if the message didn't exist in the first place.
+                if(rs.next()){
+                    return new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4));
+                }
+            }
         }catch(SQLException e){
-            System.out.println(e.getMessage());
+            SqlErrors.log(logger, "deleteMessageByID", e);
+        } finally {
+            deleteMessageByIDTimer.stop(call);
         }
         return null;
     }
@@ -138,42 +443,156 @@ public class MessageDAO {
      * @param message_id The message_id of the Message to be updated.
      * @param new_body The new message_text to replace the existing text.
      * @return The Message object that was updated, if it exists. Returns null otherwise.
+     * @see #replaceMessageText(int, String)
      */
     public Message updateMessageByID(int message_id, String new_body){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
+        Message previous = replaceMessageText(message_id, new_body);
+        return previous == null ? null
+                : new Message(previous.getMessage_id(), previous.getPosted_by(), new_body, previous.getTime_posted_epoch());
+    }
 
-            String sql = "UPDATE message SET message_text = ? WHERE message_id=?;";
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+    /**
+     * Attempts to connect to the database and overwrite the message_text of the message specified by message_id, if it
+     * exists, returning the message as it was before. The update and the read of the previous row happen in a single
+     * statement, so only one round trip is made and no other request can change the row in between.
+     * @param message_id The message_id of the Message to be updated.
+     * @param new_body The new message_text to replace the existing text.
+     * @return The Message object as it was before the update, if it exists. Returns null otherwise.
+     */
+    public Message replaceMessageText(int message_id, String new_body){
+        String sql = "SELECT * FROM OLD TABLE (UPDATE message SET message_text = ? WHERE message_id=?);";
+        FlightEvents.DaoCall call = replaceMessageTextTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setString(1, new_body);
             preparedStatement.setInt(2, message_id);
-            preparedStatement.execute();
-            Message message = getMessageByID(message_id);
-            return message;
+
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if(rs.next()){
+                    return new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4));
+                }
+            }
         }catch(SQLException e){
-            System.out.println(e.getMessage());
+            SqlErrors.log(logger, "replaceMessageText", e);
+        } finally {
+            replaceMessageTextTimer.stop(call);
         }
         return null;
     }
 
+    /**
+     * Attempts to connect to the database and find the newest messages whose message_text contains any of terms,
+     * ignoring case, by scanning the message table with LIKE.
+     * @param terms The lowercase terms to search for. Must not be empty.
+     * @param limit The most messages to return.
+     * @return The List of matching Message objects, newest first. Returns an empty List on failure.
+     */
+    public List<Message> searchMessages(List<String> terms, int limit){
+        String sql = "SELECT * FROM message WHERE "
+                + String.join(" OR ", Collections.nCopies(terms.size(), "LOWER(message_text) LIKE ?"))
+                + " ORDER BY time_posted_epoch DESC, message_id DESC LIMIT ?;";
+        FlightEvents.DaoCall call = searchMessagesTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
+
+            int index = 1;
+            for (String term : terms) {
+                preparedStatement.setString(index++, "%" + term + "%");
+            }
+            preparedStatement.setInt(index, limit);
+
+            return readMessages(preparedStatement);
+        }catch(SQLException e){
+            SqlErrors.log(logger, "searchMessages", e);
+        } finally {
+            searchMessagesTimer.stop(call);
+        }
+        return new ArrayList<>();
+    }
+
     /**
      * Attempts to connect to the database and check if message_id is present in the message table.
      * @param message_id The message_id to search for in the database.
      * @return true if message_id is currently being used by an Account, false otherwise.
      */
     public boolean messageIDExists(int message_id){
-        Connection connection = ConnectionUtil.getConnection();
-        try {
-            String sql = "SELECT * FROM message WHERE message_id = ?;" ;
-            PreparedStatement preparedStatement = connection.prepareStatement(sql);
+        String sql = "SELECT * FROM message WHERE message_id = ?;" ;
+        FlightEvents.DaoCall call = messageIDExistsTimer.start();
+        try (Connection connection = ConnectionUtil.getConnection();
+                PreparedStatement preparedStatement = connection.prepareStatement(sql)) {
 
             preparedStatement.setInt(1, message_id);
 
-            if (preparedStatement.executeQuery().next()) return true;
+            try (ResultSet rs = preparedStatement.executeQuery()) {
+                if (rs.next()) return true;
+            }
         } catch(SQLException e) {
-            System.out.println(e.getMessage());
+            SqlErrors.log(logger, "messageIDExists", e);
+        } finally {
+            messageIDExistsTimer.stop(call);
         }
         return false;
     }
+
+    /**
+     * Inserts a single message through an already prepared INSERT, as part of the caller's transaction. A failed insert
+     * only undoes its own statement, so the caller's transaction can still be committed.
+     * @param preparedStatement The prepared INSERT, created with Statement.RETURN_GENERATED_KEYS.
+     * @param message The Message object to persist to the database.
+     * @return The Message object after persisting it, or null if the insert failed.
+     */
+    private Message addMessage(PreparedStatement preparedStatement, Message message) {
+        try {
+            preparedStatement.setInt(1, message.getPosted_by());
+            preparedStatement.setString(2, message.getMessage_text());
+            preparedStatement.setLong(3, message.getTime_posted_epoch());
+            preparedStatement.executeUpdate();
+            try (ResultSet rs = preparedStatement.getGeneratedKeys()) {
+                if(rs.next()){
+                    return withID(rs.getInt(1), message);
+                }
+            }
+        }catch(SQLException e){
+            SqlErrors.log(logger, "addMessage", e);
+        }
+        return null;
+    }
+
+    /**
+     * Rolls back connection's open transaction after a failure, logging rather than throwing if that fails too, so the
+     * original failure is the one reported.
+     */
+    private void rollback(Connection connection) {
+        try {
+            connection.rollback();
+        } catch (SQLException e) {
+            logger.warn("Rollback failed: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * @param message_id The message_id generated by the database for message.
+     * @param message The Message object that was inserted.
+     * @return A copy of message carrying message_id.
+     */
+    private Message withID(int message_id, Message message) {
+        return new Message(message_id, message.getPosted_by(), message.getMessage_text(), message.getTime_posted_epoch());
+    }
+
+    /**
+     * Executes a query whose rows are full message records and maps every row to a Message.
+     * @param preparedStatement The query to run, with all parameters already bound.
+     * @return The List of Message objects, in the order the query returned them.
+     * @throws SQLException if the query fails.
+     */
+    private List<Message> readMessages(PreparedStatement preparedStatement) throws SQLException {
+        List<Message> messages = new ArrayList<>();
+        try (ResultSet rs = preparedStatement.executeQuery()) {
+            while(rs.next()){
+                messages.add(new Message(rs.getInt(1), rs.getInt(2), rs.getString(3), rs.getLong(4)));
+            }
+        }
+        return messages;
+    }
 }
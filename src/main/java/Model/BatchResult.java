@@ -0,0 +1,54 @@
+package Model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+/**
+ * This is a class that models the outcome of creating one message in a batch. Exactly one of message_id and error is
+ * set, and only that one is included in the JSON representation.
+ */
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchResult {
+    /**
+     * The id generated for the message, if it was created.
+     */
+    private final Integer message_id;
+    /**
+     * Why the message was rejected, if it was not created.
+     */
+    private final String error;
+
+    /**
+     * @param message_id
+     * @param error
+     */
+    private BatchResult(Integer message_id, String error) {
+        this.message_id = message_id;
+        this.error = error;
+    }
+    /**
+     * @param message_id The id generated for the created message.
+     * @return a BatchResult for a message that was created.
+     */
+    public static BatchResult created(int message_id) {
+        return new BatchResult(message_id, null);
+    }
+    /**
+     * @param error Why the message was rejected.
+     * @return a BatchResult for a message that was not created.
+     */
+    public static BatchResult failed(String error) {
+        return new BatchResult(null, error);
+    }
+    /**
+     * @return message_id
+     */
+    public Integer getMessage_id() {
+        return message_id;
+    }
+    /**
+     * @return error
+     */
+    public String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,45 @@
+package Model;
+
+import java.util.List;
+
+/**
+ * This is a class that models one page of a paginated message listing.
+ */
+public class MessagePage {
+    /**
+     * The messages on this page, in the order requested.
+     */
+    private final List<Message> messages;
+    /**
+     * Whether more messages exist past the last message on this page.
+     */
+    private final boolean hasMore;
+
+    /**
+     * @param messages
+     * @param hasMore
+     */
+    public MessagePage(List<Message> messages, boolean hasMore) {
+        this.messages = messages;
+        this.hasMore = hasMore;
+    }
+    /**
+     * @return messages
+     */
+    public List<Message> getMessages() {
+        return messages;
+    }
+    /**
+     * @return hasMore
+     */
+    public boolean hasMore() {
+        return hasMore;
+    }
+    /**
+     * @return the last message on this page, which the next page's cursor is built from. Returns null if the page is
+     * empty.
+     */
+    public Message last() {
+        return messages.isEmpty() ? null : messages.get(messages.size() - 1);
+    }
+}
@@ -0,0 +1,125 @@
+package Service;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.AccountDAO;
+import Model.Account;
+
+/**
+ * An in-memory record of which account_ids exist, so the common answer to "does this account exist?" needs no query.
+ *
+ * Account ids go into a BitSet loaded from the account table on construction. A set bit is certain, since accounts
+ * are never deleted, and a clear bit is confirmed with AccountDAO.accountIDExists in case the account was created
+ * through another AccountMembership. The database's foreign key constraints still reject anything that slips through
+ * a race.
+ */
+public class AccountMembership {
+
+    private static final Logger logger = LoggerFactory.getLogger(AccountMembership.class);
+
+    AccountDAO accountDAO;
+
+    private final BitSet account_ids = new BitSet();
+    private final ReentrantReadWriteLock idLock = new ReentrantReadWriteLock();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder queries = new LongAdder();
+
+    public AccountMembership(){
+        accountDAO = new AccountDAO();
+        accountDAO.forEachAccount(this::added);
+        logger.info("Loaded {} account ids", account_ids.cardinality());
+    }
+
+    /**
+     * Records an account that has just been added to the database.
+     * @param account The Account object persisted to the database, including its account_id.
+     */
+    public void added(Account account){
+        idLock.writeLock().lock();
+        try {
+            account_ids.set(account.getAccount_id());
+        } finally {
+            idLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param account_id The account_id to look up.
+     * @return true if an Account has account_id. Queries the database only if the account isn't known yet.
+     */
+    public boolean accountIDExists(int account_id){
+        lookups.increment();
+        if (isKnown(account_id)) return true;
+        queries.increment();
+        if (!accountDAO.accountIDExists(account_id)) return false;
+        idLock.writeLock().lock();
+        try {
+            account_ids.set(account_id);
+        } finally {
+            idLock.writeLock().unlock();
+        }
+        return true;
+    }
+
+    /**
+     * @param account_ids The account_ids to look up.
+     * @return The Set of account_ids used by an Account. Queries the database, once, only for those not known yet.
+     */
+    public Set<Integer> existingAccountIDs(Collection<Integer> account_ids){
+        Set<Integer> existing = new HashSet<>();
+        Set<Integer> unknown = new HashSet<>();
+        for (int account_id : account_ids) {
+            lookups.increment();
+            if (isKnown(account_id)) {
+                existing.add(account_id);
+            } else {
+                unknown.add(account_id);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            queries.increment();
+            Set<Integer> found = accountDAO.existingAccountIDs(unknown);
+            idLock.writeLock().lock();
+            try {
+                for (int account_id : found) this.account_ids.set(account_id);
+            } finally {
+                idLock.writeLock().unlock();
+            }
+            existing.addAll(found);
+        }
+        return existing;
+    }
+
+    /**
+     * @return the number of membership checks made.
+     */
+    public long getLookupCount(){
+        return lookups.sum();
+    }
+
+    /**
+     * @return the number of membership checks that still had to query the database.
+     */
+    public long getQueryCount(){
+        return queries.sum();
+    }
+
+    private boolean isKnown(int account_id){
+        if (account_id < 0) return false;
+        idLock.readLock().lock();
+        try {
+            return account_ids.get(account_id);
+        } finally {
+            idLock.readLock().unlock();
+        }
+    }
+}
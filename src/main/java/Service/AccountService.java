@@ -1,37 +1,181 @@
 package Service;
 
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
 import Model.Account;
 
 import DAO.AccountDAO;
+import Util.LoadingCache;
+import Util.PasswordHasher;
+import Util.ServerTiming;
 
+/**
+ * Registers and verifies accounts. Passwords are stored as salted PBKDF2 hashes (see PasswordHasher).
+ *
+ * Hashing is deliberately slow, so it runs on a dedicated pool of accounts.password.threads threads (default one per
+ * core) with room for accounts.password.queueCapacity waiting requests (default 1000), rather than on the request
+ * threads; the async methods throw RejectedExecutionException when that queue is full. A successful login is
+ * remembered for accounts.credentialCache.ttlSeconds (default 60) under an HMAC fingerprint of the username and
+ * password, so a client logging in again with the same credentials skips the hash.
+ *
+ * Accounts whose password was stored in plaintext before hashing was introduced can still log in, and their password
+ * is replaced by a hash the first time they do, as is any hash made with a different accounts.password.iterations.
+ */
 public class AccountService {
 
+    /**
+     * The longest username the account table holds.
+     */
+    public static final int MAX_USERNAME_LENGTH = 255;
+
     AccountDAO accountDAO;
+    /**
+     * Records new accounts so that messages can be checked against them without a query.
+     */
+    AccountMembership accountMembership;
+
+    private final PasswordHasher passwordHasher;
+    private final ExecutorService hashExecutor;
+    /**
+     * Recently verified logins by credential fingerprint, holding the account without its password.
+     */
+    private final LoadingCache<String, Account> verifiedCredentials;
 
     public AccountService(){
+        this(new AccountMembership());
+    }
+
+    /**
+     * @param accountMembership The AccountMembership to record new accounts in.
+     */
+    public AccountService(AccountMembership accountMembership){
         accountDAO = new AccountDAO();
+        this.accountMembership = accountMembership;
+        passwordHasher = new PasswordHasher(Integer.getInteger("accounts.password.iterations", 210_000));
+        int threads = Integer.getInteger("accounts.password.threads", Runtime.getRuntime().availableProcessors());
+        AtomicInteger count = new AtomicInteger();
+        hashExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Integer.getInteger("accounts.password.queueCapacity", 1000)), runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        verifiedCredentials = new LoadingCache<>(Integer.getInteger("accounts.credentialCache.maximumSize", 10_000),
+                Long.getLong("accounts.credentialCache.ttlSeconds", 60), TimeUnit.SECONDS);
     }
 
     /**
-     * Validates the account's fields, then persists it to the database.
-     * An account is valid if the username is not blank, the password is at least four characters, and the username is not taken.
+     * Validates the account's fields, then persists it to the database, blocking until it has been hashed and stored.
      * @param account The Account object to be added to the database.
      * @return The Account object persisted to the database.
+     * @see #addAccountAsync(Account)
      */
     public Account addAccount(Account account){
-        if (account.getUsername().length() == 0) return null;
-        if (account.getPassword().length() < 4) return null;
-        if (accountDAO.usernameExists(account.getUsername())) return null;
+        return addAccountAsync(account).join();
+    }
 
-        return accountDAO.addAccount(account);
+    /**
+     * Validates the account's fields, then hashes its password on the hashing pool and persists it to the database.
+     * An account is valid if the username is not blank and at most MAX_USERNAME_LENGTH characters, the password is at
+     * least four characters, and the username is not taken.
+     * Whether the username is taken is left to the username's unique constraint rather than checked first, so two
+     * concurrent registrations of the same name can't both pass the check.
+     * @param account The Account object to be added to the database.
+     * @return A future completed with the Account object persisted to the database, holding the password as submitted,
+     * or with null if the account is invalid or the username is taken. The future fails with a DataAccessException if
+     * the database could not be written.
+     * @throws RejectedExecutionException if the hashing pool's queue is full.
+     */
+    public CompletableFuture<Account> addAccountAsync(Account account){
+        ServerTiming timing = ServerTiming.current();
+        long start = System.nanoTime();
+        boolean valid = account.getUsername() != null && account.getUsername().length() > 0
+                && account.getUsername().length() <= MAX_USERNAME_LENGTH
+                && account.getPassword() != null && account.getPassword().length() >= 4;
+        if (timing != null) timing.record(ServerTiming.Phase.VALIDATE, start);
+        if (!valid) return CompletableFuture.completedFuture(null);
+
+        return supplyHashing(() -> {
+            Account newAccount = accountDAO.addAccount(new Account(account.getUsername(), passwordHasher.hash(account.getPassword())));
+            if (newAccount == null) return null;
+            accountMembership.added(newAccount);
+            return new Account(newAccount.getAccount_id(), newAccount.getUsername(), account.getPassword());
+        });
     }
 
     /**
-     * Calls the DAO to verify the Account's information in the database.
+     * Verifies the Account's username and password, blocking until the password has been checked.
      * @param account The Account object to verify.
      * @return The verified Account object. Returns null on failure.
+     * @see #verifyAccountAsync(Account)
      */
     public Account verifyAccount(Account account){
-        return accountDAO.verifyAccount(account);
+        return verifyAccountAsync(account).join();
+    }
+
+    /**
+     * Verifies the Account's username and password. Credentials verified within the last few seconds are answered
+     * from memory; otherwise the stored password is read here and checked on the hashing pool.
+     * @param account The Account object to verify.
+     * @return A future completed with the verified Account object, holding the password as submitted, or with null if
+     * the username or password is wrong.
+     * @throws RejectedExecutionException if the hashing pool's queue is full.
+     */
+    public CompletableFuture<Account> verifyAccountAsync(Account account){
+        String username = account.getUsername();
+        String password = account.getPassword();
+        if (username == null || password == null) return CompletableFuture.completedFuture(null);
+
+        String fingerprint = passwordHasher.fingerprint(username, password);
+        Account verified = verifiedCredentials.getIfPresent(fingerprint);
+        if (verified != null) {
+            return CompletableFuture.completedFuture(new Account(verified.getAccount_id(), username, password));
+        }
+
+        Account stored = accountDAO.getAccountByUsername(username);
+        return supplyHashing(() -> {
+            ServerTiming timing = ServerTiming.current();
+            long start = System.nanoTime();
+            boolean matches = passwordHasher.verify(password, stored == null ? null : stored.getPassword());
+            if (timing != null) timing.record(ServerTiming.Phase.VALIDATE, start);
+            if (!matches) return null;
+            if (passwordHasher.needsRehash(stored.getPassword())) {
+                accountDAO.updatePassword(stored.getAccount_id(), stored.getPassword(), passwordHasher.hash(password));
+            }
+            verifiedCredentials.put(fingerprint, new Account(stored.getAccount_id(), username, null));
+            return new Account(stored.getAccount_id(), username, password);
+        });
+    }
+
+    /**
+     * Runs task on the hashing pool, with the calling request's ServerTiming, if any, bound to the pool thread while
+     * it runs.
+     * @throws RejectedExecutionException if the hashing pool's queue is full.
+     */
+    private <T> CompletableFuture<T> supplyHashing(Supplier<T> task){
+        ServerTiming timing = ServerTiming.current();
+        return CompletableFuture.supplyAsync(() -> {
+            if (timing == null) return task.get();
+            ServerTiming.bind(timing);
+            try {
+                return task.get();
+            } finally {
+                ServerTiming.unbind();
+            }
+        }, hashExecutor);
+    }
+
+    /**
+     * @return the cache of recently verified credentials, for reporting its hit ratio.
+     */
+    public LoadingCache<String, Account> getVerifiedCredentials(){
+        return verifiedCredentials;
     }
 }
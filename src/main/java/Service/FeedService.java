@@ -0,0 +1,408 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.FollowDAO;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Util.LoadingCache;
+
+/**
+ * Serves each account's home feed: the messages posted by the accounts it follows, newest first.
+ *
+ * Every account that has read its feed gets an in-memory timeline of the newest feed.timelineSize message references
+ * from the accounts it follows. New messages are pushed into their followers' timelines by a background fan-out
+ * thread, so a feed page is read straight from the timeline and the messages fetched by id, without joining message
+ * and follow. Accounts with more than feed.fanOutThreshold followers are not fanned out; their followers pull their
+ * newest messages at read time instead, which costs one indexed query per such account followed. Up to
+ * feed.fanOutQueueCapacity fan-outs wait for the fan-out thread; beyond that the posting thread fans out itself.
+ *
+ * Timelines are built lazily on an account's first feed read after startup, and are not persisted. At most
+ * feed.maxTimelines are held, evicting the least recently read; an evicted timeline is rebuilt on the account's next
+ * read. A page reaching past the oldest entry of a timeline that has dropped older entries is read from the database
+ * like a pulled account's messages. A timeline is built from the database without holding any lock, while fan-outs, follows and deletions that
+ * happen meanwhile are applied to it as it is built, so none of them is lost. Deleted messages are removed from the
+ * timelines holding them by the fan-out thread, after any fan-out of the same message.
+ */
+public class FeedService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedService.class);
+
+    /**
+     * The most times a page is read again after finding messages deleted since they were fanned out.
+     */
+    private static final int MAX_PAGE_READS = 3;
+
+    private static final Comparator<FeedEntry> NEWEST_FIRST = Comparator
+            .comparingLong((FeedEntry entry) -> entry.time_posted_epoch).reversed()
+            .thenComparing(Comparator.comparingInt((FeedEntry entry) -> entry.message_id).reversed());
+
+    MessageDAO messageDAO;
+    FollowDAO followDAO;
+
+    private final int timelineSize;
+    private final int fanOutThreshold;
+    private final LoadingCache<Integer, Timeline> timelines;
+    /**
+     * Timelines being built, by account_id. A timeline is registered here before its build reads the database and
+     * stays until it has been cached, so every change made meanwhile reaches it through one map or the other.
+     */
+    private final ConcurrentHashMap<Integer, Timeline> building = new ConcurrentHashMap<>();
+    /**
+     * Accounts seen with more followers than fanOutThreshold. Once an account is here its messages are always pulled
+     * at read time, since timelines built while it was pulled don't hold its older messages.
+     */
+    private final Set<Integer> pulledAuthors = ConcurrentHashMap.newKeySet();
+    private final ExecutorService fanOut;
+
+    public FeedService(){
+        messageDAO = new MessageDAO();
+        followDAO = new FollowDAO();
+        timelineSize = Integer.getInteger("feed.timelineSize", 800);
+        fanOutThreshold = Integer.getInteger("feed.fanOutThreshold", 1000);
+        timelines = new LoadingCache<>(Integer.getInteger("feed.maxTimelines", 10_000), 0, TimeUnit.SECONDS);
+        // a full queue runs the fan-out on the posting thread, which slows posting down rather than losing messages.
+        fanOut = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(Integer.getInteger("feed.fanOutQueueCapacity", 10_000)), runnable -> {
+                    Thread thread = new Thread(runnable, "feed-fan-out");
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Makes follower_id follow followee_id, adding followee_id's newest messages to follower_id's timeline.
+     * @param follower_id The account_id of the follower.
+     * @param followee_id The account_id of the account to follow.
+     * @return true if follower_id now follows followee_id, false if the accounts are the same or either doesn't exist.
+     */
+    public boolean follow(int follower_id, int followee_id){
+        if (follower_id == followee_id) return false;
+        if (!followDAO.follow(follower_id, followee_id)) return false;
+
+        if (followDAO.countFollowers(followee_id) > fanOutThreshold) pulledAuthors.add(followee_id);
+        Timeline timeline = existingTimeline(follower_id);
+        if (timeline != null) {
+            timeline.followees.add(followee_id);
+            if (!pulledAuthors.contains(followee_id)) timeline.addNewest(newestMessages(followee_id), timelineSize);
+        }
+        return true;
+    }
+
+    /**
+     * Makes follower_id stop following followee_id, removing followee_id's messages from follower_id's timeline.
+     * @param follower_id The account_id of the follower.
+     * @param followee_id The account_id of the account to unfollow.
+     * @return true if follower_id was following followee_id, false otherwise.
+     */
+    public boolean unfollow(int follower_id, int followee_id){
+        boolean unfollowed = followDAO.unfollow(follower_id, followee_id);
+        Timeline timeline = existingTimeline(follower_id);
+        if (timeline != null) {
+            timeline.followees.remove(followee_id);
+            timeline.removeAuthor(followee_id);
+        }
+        return unfollowed;
+    }
+
+    /**
+     * Queues message to be pushed into the timeline of every follower of its author. Returns without waiting unless the
+     * fan-out queue is full.
+     * @param message The Message object that was just created.
+     */
+    public void publish(Message message){
+        fanOut.execute(() -> {
+            try {
+                fanOut(message);
+            } catch (RuntimeException e) {
+                logger.error("Fan-out of message {} failed", message.getMessage_id(), e);
+            }
+        });
+    }
+
+    /**
+     * Queues message to be removed from the timeline of every follower of its author. Returns without waiting unless
+     * the fan-out queue is full.
+     * @param message The Message object that was just deleted.
+     */
+    public void retract(Message message){
+        fanOut.execute(() -> {
+            try {
+                retractFromTimelines(message);
+            } catch (RuntimeException e) {
+                logger.error("Retraction of message {} failed", message.getMessage_id(), e);
+            }
+        });
+    }
+
+    /**
+     * Returns one page of account_id's feed, newest first.
+     * @param account_id The account_id whose feed is requested.
+     * @param before_epoch The time_posted_epoch of the last message on the previous page, or Long.MAX_VALUE for the first page.
+     * @param before_id The message_id of the last message on the previous page, or Integer.MAX_VALUE for the first page.
+     * @param limit The requested page size, capped at MessageService.MAX_PAGE_SIZE.
+     * @return The MessagePage of feed messages posted before the given position.
+     * @throws IllegalArgumentException if limit is not positive.
+     * @throws IllegalStateException if the page's messages could not be read.
+     */
+    public MessagePage getFeed(int account_id, long before_epoch, int before_id, int limit){
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        int pageSize = Math.min(limit, MessageService.MAX_PAGE_SIZE);
+        Timeline timeline = timelines.get(account_id, this::buildTimeline);
+        // once cached, changes reach the timeline through the cache.
+        building.remove(account_id, timeline);
+        for (int reads = 1; ; reads++) {
+            MessagePage page = readPage(timeline, before_epoch, before_id, pageSize, reads == MAX_PAGE_READS);
+            if (page != null) return page;
+        }
+    }
+
+    /**
+     * Reads one page of timeline's feed, merged with the messages of the pulled accounts it follows. When the page
+     * reaches past the oldest entry of a timeline that has dropped older entries, every followed account is pulled.
+     * @param last Whether to return the page even if some of its messages had been deleted, leaving them out.
+     * @return the page, or null if some of its messages had been deleted, whose entries have now been removed from
+     * timeline so the page can be read again.
+     * @throws IllegalStateException if the page's messages could not be read.
+     */
+    private MessagePage readPage(Timeline timeline, long before_epoch, int before_id, int pageSize, boolean last){
+        FeedEntry before = new FeedEntry(before_id, 0, before_epoch);
+
+        TreeSet<FeedEntry> entries = new TreeSet<>(NEWEST_FIRST);
+        List<FeedEntry> cached = timeline.page(before, pageSize + 1);
+        entries.addAll(cached);
+        boolean pastTimeline = cached.size() <= pageSize && timeline.isTruncated();
+        Map<Integer, Message> pulled = new HashMap<>();
+        for (int followee_id : timeline.followees) {
+            if (!pastTimeline && !pulledAuthors.contains(followee_id)) continue;
+            for (Message message : messageDAO.getMessagesByUserBefore(followee_id, before_epoch, before_id, pageSize + 1)) {
+                entries.add(FeedEntry.of(message));
+                pulled.put(message.getMessage_id(), message);
+            }
+        }
+
+        List<FeedEntry> pageEntries = new ArrayList<>(pageSize + 1);
+        for (FeedEntry entry : entries) {
+            if (pageEntries.size() == pageSize + 1) break;
+            pageEntries.add(entry);
+        }
+        boolean hasMore = pageEntries.size() > pageSize;
+        if (hasMore) pageEntries.remove(pageSize);
+
+        Map<Integer, Message> messages = new HashMap<>(pulled);
+        Set<Integer> missing = new HashSet<>();
+        for (FeedEntry entry : pageEntries) {
+            if (!messages.containsKey(entry.message_id)) missing.add(entry.message_id);
+        }
+        if (!missing.isEmpty()) {
+            List<Message> fetched = messageDAO.getMessagesByIDs(missing);
+            // the timeline is only changed for messages known to be deleted.
+            if (fetched == null) throw new IllegalStateException("could not read the feed's messages");
+            for (Message message : fetched) messages.put(message.getMessage_id(), message);
+        }
+
+        List<Message> page = new ArrayList<>(pageEntries.size());
+        boolean deleted = false;
+        for (FeedEntry entry : pageEntries) {
+            Message message = messages.get(entry.message_id);
+            if (message != null) {
+                page.add(message);
+            } else {
+                // deleted since it was fanned out, before its retraction reached the timeline.
+                timeline.remove(entry);
+                deleted = true;
+            }
+        }
+        return deleted && !last ? null : new MessagePage(page, hasMore);
+    }
+
+    /**
+     * Pushes message into the timeline of every follower whose timeline has been built, unless its author has too
+     * many followers, in which case followers pull its messages at read time.
+     */
+    private void fanOut(Message message){
+        int author = message.getPosted_by();
+        if (pulledAuthors.contains(author)) return;
+        if (followDAO.countFollowers(author) > fanOutThreshold) {
+            pulledAuthors.add(author);
+            return;
+        }
+        List<Integer> followers = followDAO.getFollowerIDs(author);
+        FeedEntry entry = FeedEntry.of(message);
+        for (int follower_id : followers) {
+            // a timeline being built may have read the database before message existed, so it gets message too.
+            Timeline timeline = existingTimeline(follower_id);
+            if (timeline != null) timeline.add(entry);
+        }
+    }
+
+    /**
+     * Removes a deleted message from the timeline of every follower of its author that holds it.
+     */
+    private void retractFromTimelines(Message message){
+        FeedEntry entry = FeedEntry.of(message);
+        for (int follower_id : followDAO.getFollowerIDs(message.getPosted_by())) {
+            Timeline timeline = existingTimeline(follower_id);
+            if (timeline != null) timeline.remove(entry);
+        }
+    }
+
+    /**
+     * @return account_id's timeline if it is being built or has been cached, or null if it has neither.
+     */
+    private Timeline existingTimeline(int account_id){
+        // building is checked first: a build that isn't registered there either hasn't read the database yet, and
+        // will see the change, or has already been cached.
+        Timeline timeline = building.get(account_id);
+        return timeline != null ? timeline : timelines.getIfPresent(account_id);
+    }
+
+    /**
+     * Builds account_id's timeline from the newest messages of every account it follows. The timeline is registered
+     * in building first, so changes made while the database is read are applied to it rather than lost.
+     */
+    private Timeline buildTimeline(int account_id){
+        Timeline timeline = new Timeline(timelineSize);
+        building.put(account_id, timeline);
+        try {
+            for (int followee_id : followDAO.getFolloweeIDs(account_id)) {
+                timeline.followees.add(followee_id);
+                if (!pulledAuthors.contains(followee_id) && followDAO.countFollowers(followee_id) > fanOutThreshold) {
+                    pulledAuthors.add(followee_id);
+                }
+                if (!pulledAuthors.contains(followee_id)) timeline.addBuilt(newestMessages(followee_id), timelineSize);
+            }
+        } catch (RuntimeException e) {
+            building.remove(account_id, timeline);
+            throw e;
+        }
+        timeline.built();
+        return timeline;
+    }
+
+    private List<FeedEntry> newestMessages(int account_id){
+        List<FeedEntry> entries = new ArrayList<>();
+        for (Message message : messageDAO.getMessagesByUserBefore(account_id, Long.MAX_VALUE, Integer.MAX_VALUE, timelineSize)) {
+            entries.add(FeedEntry.of(message));
+        }
+        return entries;
+    }
+
+    /**
+     * A reference to one message in a timeline, holding just enough to order it and to remove it on unfollow.
+     */
+    private static class FeedEntry {
+        final int message_id;
+        final int posted_by;
+        final long time_posted_epoch;
+
+        FeedEntry(int message_id, int posted_by, long time_posted_epoch) {
+            this.message_id = message_id;
+            this.posted_by = posted_by;
+            this.time_posted_epoch = time_posted_epoch;
+        }
+
+        static FeedEntry of(Message message) {
+            return new FeedEntry(message.getMessage_id(), message.getPosted_by(), message.getTime_posted_epoch());
+        }
+    }
+
+    /**
+     * One account's feed: the newest capacity entries from the accounts it follows, and the accounts it follows.
+     */
+    private static class Timeline {
+        final int capacity;
+        final TreeSet<FeedEntry> entries = new TreeSet<>(NEWEST_FIRST);
+        final Set<Integer> followees = ConcurrentHashMap.newKeySet();
+        /**
+         * The message_ids removed while the timeline was being built, which its build may still read from the
+         * database before their deletion; null once it is built.
+         */
+        Set<Integer> removedWhileBuilding = new HashSet<>();
+        /**
+         * Whether messages older than the oldest entry may be missing, because entries were dropped for capacity or an
+         * account's newest messages were read only up to capacity.
+         */
+        boolean truncated;
+
+        Timeline(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void add(FeedEntry entry) {
+            entries.add(entry);
+            if (entries.size() > capacity) {
+                entries.pollLast();
+                truncated = true;
+            }
+        }
+
+        /**
+         * Adds one account's newest messages, read up to limit of them.
+         */
+        synchronized void addNewest(List<FeedEntry> newest, int limit) {
+            for (FeedEntry entry : newest) add(entry);
+            if (newest.size() >= limit) truncated = true;
+        }
+
+        /**
+         * Adds one account's newest messages, read up to limit of them by the timeline's build, skipping any removed
+         * since.
+         */
+        synchronized void addBuilt(List<FeedEntry> newest, int limit) {
+            for (FeedEntry entry : newest) {
+                if (!removedWhileBuilding.contains(entry.message_id)) add(entry);
+            }
+            if (newest.size() >= limit) truncated = true;
+        }
+
+        synchronized boolean isTruncated() {
+            return truncated;
+        }
+
+        synchronized void built() {
+            removedWhileBuilding = null;
+        }
+
+        synchronized void remove(FeedEntry entry) {
+            entries.remove(entry);
+            if (removedWhileBuilding != null) removedWhileBuilding.add(entry.message_id);
+        }
+
+        synchronized void removeAuthor(int posted_by) {
+            Iterator<FeedEntry> iterator = entries.iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().posted_by == posted_by) iterator.remove();
+            }
+        }
+
+        /**
+         * @return up to limit entries strictly older than before, newest first.
+         */
+        synchronized List<FeedEntry> page(FeedEntry before, int limit) {
+            List<FeedEntry> page = new ArrayList<>(limit);
+            for (FeedEntry entry : entries.tailSet(before, false)) {
+                if (page.size() == limit) break;
+                page.add(entry);
+            }
+            return page;
+        }
+    }
+}
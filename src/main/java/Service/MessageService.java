@@ -1,45 +1,237 @@
 package Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import DAO.AccountDAO;
 import DAO.MessageDAO;
+import Model.BatchResult;
 import Model.Message;
+import Model.MessagePage;
+import Util.LoadingCache;
+import Util.MessageIndex;
+import Util.SearchIndex;
+import Util.ServerTiming;
 
 public class MessageService {
 
+    private static final Logger logger = LoggerFactory.getLogger(MessageService.class);
+
+    /**
+     * Page size used when a paginated request does not specify a limit.
+     */
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    /**
+     * Largest page size the server will return, whatever limit is requested.
+     */
+    public static final int MAX_PAGE_SIZE = 500;
+    /**
+     * Largest number of messages accepted by createMessages in one call.
+     */
+    public static final int MAX_BATCH_SIZE = 1000;
+
     MessageDAO messageDAO;
-    //contains this one because message has a foreign key linked to account.
-    AccountDAO accountDAO;
+    /**
+     * Read-through cache of messages by message_id, sized by the cache.messages.maximumSize system property, with entries
+     * expiring after cache.messages.ttlSeconds (0, the default, never expires them). Only reads populate the cache,
+     * through its loader, so a load raced by an update or delete is discarded rather than cached; updates and deletes
+     * invalidate it. Cached Message objects are shared and must not be modified.
+     */
+    LoadingCache<Integer, Message> messageCache;
+    /**
+     * Group-committing write-behind queue used by createMessageAsync, or null unless the messages.writeBehind system
+     * property is true. Sized by messages.writeBehind.capacity, messages.writeBehind.maxBatchSize and
+     * messages.writeBehind.maxWaitMillis.
+     */
+    MessageWriteQueue writeQueue;
+    /**
+     * In-memory index of every message's id by author, or null unless the messages.index system property is true. Loaded
+     * from the database on construction and updated by every write below, it serves getAllMessagesByUser and
+     * countMessagesByUser without scanning the message table.
+     */
+    MessageIndex messageIndex;
+    /**
+     * In-memory full-text index of every message's text, or null unless the messages.search system property is true.
+     * Loaded from the database on construction, in the same pass as messageIndex, so it is off by default like
+     * messageIndex; searchMessages falls back to the database without it. Updated by every write below. Ranks by
+     * BM25 plus a recency boost of search.recencyWeight (default 1.0) halving every search.recencyHalfLifeSeconds
+     * (default 604800, a week).
+     */
+    SearchIndex searchIndex;
+    /**
+     * Versions bumped by every write below, for answering conditional reads.
+     */
+    MessageVersions versions = new MessageVersions();
+
+    /**
+     * Receives every message created, to push it into followers' feeds.
+     */
+    FeedService feedService;
+
+    /**
+     * Answers whether an account exists, usually without a query.
+     */
+    AccountMembership accountMembership;
 
     public MessageService(){
+        this(new FeedService(), new AccountMembership());
+    }
+
+    /**
+     * @param feedService The FeedService that new messages are published to and deleted messages retracted from.
+     * @param accountMembership The AccountMembership that authors are checked against.
+     */
+    public MessageService(FeedService feedService, AccountMembership accountMembership){
+        this.feedService = feedService;
+        this.accountMembership = accountMembership;
         messageDAO = new MessageDAO();
-        accountDAO = new AccountDAO();
+        messageCache = new LoadingCache<>(Integer.getInteger("cache.messages.maximumSize", 10_000),
+                Long.getLong("cache.messages.ttlSeconds", 0), TimeUnit.SECONDS);
+        if (Boolean.getBoolean("messages.writeBehind")) {
+            writeQueue = new MessageWriteQueue(messageDAO, Integer.getInteger("messages.writeBehind.capacity", 10_000),
+                    Integer.getInteger("messages.writeBehind.maxBatchSize", 256),
+                    Long.getLong("messages.writeBehind.maxWaitMillis", 5));
+        }
+        MessageIndex index = Boolean.getBoolean("messages.index") ? new MessageIndex() : null;
+        SearchIndex search = Boolean.getBoolean("messages.search")
+                ? new SearchIndex(Double.parseDouble(System.getProperty("search.recencyWeight", "1.0")),
+                        Double.parseDouble(System.getProperty("search.recencyHalfLifeSeconds", "604800")))
+                : null;
+        if (index != null || search != null) {
+            long start = System.nanoTime();
+            messageDAO.forEachMessage(message -> {
+                if (index != null) index.add(message.getPosted_by(), message.getMessage_id(), message.getTime_posted_epoch());
+                if (search != null) search.add(message.getMessage_id(), message.getMessage_text(), message.getTime_posted_epoch());
+            });
+            messageIndex = index;
+            searchIndex = search;
+            List<Object> built = new ArrayList<>();
+            if (index != null) built.add(index);
+            if (search != null) built.add(search);
+            logger.info("Built {} in {} ms", built, (System.nanoTime() - start) / 1_000_000);
+        }
     }
 
     /**
-     * Checks to make sure message is valid and user exists, then calls the DAO to persist it to the database.
+     * Checks to make sure message is valid, then calls the DAO to persist it to the database. A message posted by a user
+     * that doesn't exist is rejected by the posted_by foreign key rather than checked for first.
      * @param message The Message object to create in the database.
      * @return The Message object added to the database. Returns null on failure.
      */
     public Message createMessage(Message message){
-        if (!isValidMessageBody(message.getMessage_text())) return null;
-        if (!accountDAO.accountIDExists(message.getPosted_by())) return null;
+        if (!validate(message.getMessage_text())) return null;
+
+        Message newMessage = messageDAO.addMessage(message);
+        if (newMessage != null) created(newMessage);
+        return newMessage;
+    }
+
+    /**
+     * Checks to make sure message is valid and user exists, then queues it on the write-behind queue to be persisted in
+     * the next group commit. Falls back to createMessage when write-behind is disabled.
+     * @param message The Message object to create in the database.
+     * @return A future completed with the Message object added to the database once it has been committed, or with null
+     * on failure.
+     * @throws RejectedExecutionException if the write-behind queue is full.
+     */
+    public CompletableFuture<Message> createMessageAsync(Message message){
+        if (writeQueue == null) return CompletableFuture.completedFuture(createMessage(message));
+        ServerTiming timing = ServerTiming.current();
+        long start = System.nanoTime();
+        // checked up front so a message from an unknown user doesn't force its whole group commit to be retried row by row.
+        boolean valid = isValidMessageBody(message.getMessage_text()) && accountMembership.accountIDExists(message.getPosted_by());
+        if (timing != null) timing.record(ServerTiming.Phase.VALIDATE, start);
+        if (!valid) return CompletableFuture.completedFuture(null);
 
-        return messageDAO.addMessage(message);
+        return writeQueue.submit(message).thenApply(newMessage -> {
+            if (newMessage != null) created(newMessage);
+            return newMessage;
+        });
     }
 
     /**
-     * Checks to make sure message is valid and exists, then calls the DAO to persist the update to the database.
+     * Checks every message the same way as createMessage, then calls the DAO to persist the valid ones to the database
+     * in a single batch. Authors are checked with one query for the whole batch rather than one per message.
+     * @param messages The Message objects to create in the database.
+     * @return A List of BatchResult objects in the same order as messages, holding the new message_id of each message
+     * that was created and the reason for each one that was not.
+     * @throws IllegalArgumentException if messages is empty or larger than MAX_BATCH_SIZE.
+     */
+    public List<BatchResult> createMessages(List<Message> messages){
+        if (messages.isEmpty()) throw new IllegalArgumentException("batch must not be empty");
+        if (messages.size() > MAX_BATCH_SIZE) throw new IllegalArgumentException("batch is larger than " + MAX_BATCH_SIZE);
+
+        ServerTiming timing = ServerTiming.current();
+        long start = System.nanoTime();
+        Set<Integer> authors = new HashSet<>();
+        for (Message message : messages) authors.add(message.getPosted_by());
+        Set<Integer> existingAuthors = accountMembership.existingAccountIDs(authors);
+
+        BatchResult[] results = new BatchResult[messages.size()];
+        List<Message> valid = new ArrayList<>();
+        List<Integer> validIndexes = new ArrayList<>();
+        for (int i = 0; i < messages.size(); i++) {
+            Message message = messages.get(i);
+            if (message.getMessage_text() == null || !isValidMessageBody(message.getMessage_text())) {
+                results[i] = BatchResult.failed("message_text must not be blank and must be under 255 characters");
+            } else if (!existingAuthors.contains(message.getPosted_by())) {
+                results[i] = BatchResult.failed("posted_by does not refer to an existing account");
+            } else {
+                valid.add(message);
+                validIndexes.add(i);
+            }
+        }
+        if (timing != null) timing.record(ServerTiming.Phase.VALIDATE, start);
+
+        if (!valid.isEmpty()) {
+            List<Message> newMessages = messageDAO.addMessages(valid);
+            for (int i = 0; i < newMessages.size(); i++) {
+                Message newMessage = newMessages.get(i);
+                if (newMessage == null) {
+                    results[validIndexes.get(i)] = BatchResult.failed("message could not be saved");
+                } else {
+                    created(newMessage);
+                    results[validIndexes.get(i)] = BatchResult.created(newMessage.getMessage_id());
+                }
+            }
+        }
+        return List.of(results);
+    }
+
+    /**
+     * Checks to make sure message is valid, then calls the DAO to persist the update to the database. The DAO reports
+     * a message that doesn't exist by returning null, so no separate existence check is needed. The cached message is
+     * invalidated rather than replaced, since nothing orders this write against a concurrent update or delete of the
+     * same message; the next read loads whichever write the database kept.
      * @param message_id The message_id of the message to be updated.
      * @param new_body The new message_text to replace the existing text.
      * @return The Message object updated in the database. Returns null on failure.
      */
     public Message updateMessageByID(int message_id, String new_body){
-        if (!isValidMessageBody(new_body)) return null;
-        if (!messageDAO.messageIDExists(message_id)) return null;
+        if (!validate(new_body)) return null;
 
-        return messageDAO.updateMessageByID(message_id, new_body);
+        Message previousMessage = messageDAO.replaceMessageText(message_id, new_body);
+        messageCache.invalidate(message_id);
+        if (previousMessage == null) return null;
+        Message updatedMessage = new Message(message_id, previousMessage.getPosted_by(), new_body,
+                previousMessage.getTime_posted_epoch());
+        versions.changed(message_id, updatedMessage.getPosted_by());
+        if (searchIndex != null) {
+            // the previous text orders this update after the write that set it, even if the two reach the index out of order.
+            searchIndex.replace(message_id, previousMessage.getMessage_text(), new_body);
+        }
+        return updatedMessage;
     }
 
     /**
@@ -51,21 +243,115 @@ public class MessageService {
     }
 
     /**
-     * Calls DAO to request all messages from the user specified by account_id.
+     * Calls DAO to stream every message from the database, one at a time, without loading them all into memory.
+     * @param consumer Receives each Message in message_id order.
+     */
+    public void forEachMessage(Consumer<Message> consumer){
+        messageDAO.forEachMessage(consumer);
+    }
+
+    /**
+     * Calls DAO to request all messages from the user specified by account_id, oldest first by time_posted_epoch and
+     * then message_id. When the in-memory index is enabled, the user's message_ids come from the index, in the same
+     * order, and only their rows are fetched.
      * @param account_id The account_id of the user whose messages are requested.
      * @return The List of all Message objects, written by the user with account_id, obtained by the DAO.
      */
     public List<Message> getAllMessagesByUser(int account_id){
-        return messageDAO.getAllMessagesByUser(account_id);
+        if (messageIndex == null) return messageDAO.getAllMessagesByUser(account_id);
+        return getMessagesByIDs(messageIndex.messageIDs(account_id));
+    }
+
+    /**
+     * Counts the messages from the user specified by account_id, from the in-memory index when it is enabled and by
+     * calling the DAO otherwise.
+     * @param account_id The account_id of the user whose messages are counted.
+     * @return The number of messages written by the user with account_id.
+     */
+    public int countMessagesByUser(int account_id){
+        if (messageIndex == null) return messageDAO.countMessagesByUser(account_id);
+        return messageIndex.count(account_id);
+    }
+
+    /**
+     * Searches message text for the terms in query, from the in-memory search index when it is enabled and by calling
+     * the DAO to scan the message table otherwise.
+     * @param query The search text. Split into terms at every character that is not a letter or digit.
+     * @param limit The requested number of results, capped at MAX_PAGE_SIZE.
+     * @return The List of Message objects containing any query term, best match first; newest first without the index.
+     * @throws IllegalArgumentException if query has no terms or limit is not positive.
+     */
+    public List<Message> searchMessages(String query, int limit){
+        List<String> terms = SearchIndex.tokenize(query);
+        if (terms.isEmpty()) throw new IllegalArgumentException("query has no terms");
+        int size = pageSize(limit);
+        if (searchIndex != null) return getMessagesByIDs(searchIndex.search(query, size));
+        return messageDAO.searchMessages(new ArrayList<>(new LinkedHashSet<>(terms)), size);
+    }
+
+    /**
+     * @return the in-memory search index, or null if it is disabled.
+     */
+    public SearchIndex getSearchIndex(){
+        return searchIndex;
+    }
+
+    /**
+     * Calls DAO to request one page of messages in message_id order.
+     * @param after_id The message_id of the last message on the previous page, or 0 for the first page.
+     * @param limit The requested page size, capped at MAX_PAGE_SIZE.
+     * @return The MessagePage of messages following after_id.
+     */
+    public MessagePage getMessagesAfter(int after_id, int limit){
+        int pageSize = pageSize(limit);
+        return toPage(messageDAO.getMessagesAfter(after_id, pageSize + 1), pageSize);
+    }
+
+    /**
+     * Calls DAO to request one page of messages, newest first.
+     * @param before_epoch The time_posted_epoch of the last message on the previous page, or Long.MAX_VALUE for the first page.
+     * @param before_id The message_id of the last message on the previous page, or Integer.MAX_VALUE for the first page.
+     * @param limit The requested page size, capped at MAX_PAGE_SIZE.
+     * @return The MessagePage of messages posted before the given position.
+     */
+    public MessagePage getMessagesBefore(long before_epoch, int before_id, int limit){
+        int pageSize = pageSize(limit);
+        return toPage(messageDAO.getMessagesBefore(before_epoch, before_id, pageSize + 1), pageSize);
+    }
+
+    /**
+     * Calls DAO to request one page of messages from the user specified by account_id, in message_id order.
+     * @param account_id The account_id of the user whose messages are requested.
+     * @param after_id The message_id of the last message on the previous page, or 0 for the first page.
+     * @param limit The requested page size, capped at MAX_PAGE_SIZE.
+     * @return The MessagePage of messages by account_id following after_id.
+     */
+    public MessagePage getMessagesByUserAfter(int account_id, int after_id, int limit){
+        int pageSize = pageSize(limit);
+        return toPage(messageDAO.getMessagesByUserAfter(account_id, after_id, pageSize + 1), pageSize);
+    }
+
+    /**
+     * Calls DAO to request one page of messages from the user specified by account_id, newest first.
+     * @param account_id The account_id of the user whose messages are requested.
+     * @param before_epoch The time_posted_epoch of the last message on the previous page, or Long.MAX_VALUE for the first page.
+     * @param before_id The message_id of the last message on the previous page, or Integer.MAX_VALUE for the first page.
+     * @param limit The requested page size, capped at MAX_PAGE_SIZE.
+     * @return The MessagePage of messages by account_id posted before the given position.
+     */
+    public MessagePage getMessagesByUserBefore(int account_id, long before_epoch, int before_id, int limit){
+        int pageSize = pageSize(limit);
+        return toPage(messageDAO.getMessagesByUserBefore(account_id, before_epoch, before_id, pageSize + 1), pageSize);
     }
 
     /**
-     * Calls DAO to request the message specified by message_id.
+     * Returns the message specified by message_id from the cache, calling the DAO on a miss. Concurrent misses on the
+     * same message_id share a single DAO call.
      * @param message_id The message_id of the requested message.
      * @return The Message object requested from the database. Returns null on failure.
      */
     public Message getMessageByID(int message_id){
-        return messageDAO.getMessageByID(message_id);
+        return messageCache.get(message_id, messageDAO::getMessageByID);
     }
 
     /**
@@ -74,7 +360,53 @@ public class MessageService {
      * @return The Message object that was deleted.
      */
     public Message deleteMessageByID(int message_id){
-        return messageDAO.deleteMessageByID(message_id);
+        Message deletedMessage = messageDAO.deleteMessageByID(message_id);
+        messageCache.invalidate(message_id);
+        if (deletedMessage != null) versions.changed(message_id, deletedMessage.getPosted_by());
+        if (deletedMessage != null && messageIndex != null) {
+            messageIndex.remove(deletedMessage.getPosted_by(), message_id, deletedMessage.getTime_posted_epoch());
+        }
+        if (deletedMessage != null && searchIndex != null) {
+            searchIndex.remove(message_id, deletedMessage.getMessage_text());
+        }
+        if (deletedMessage != null) feedService.retract(deletedMessage);
+        return deletedMessage;
+    }
+
+    /**
+     * @return the versions of messages and of each author's messages, bumped by every write made through this service.
+     */
+    public MessageVersions getVersions(){
+        return versions;
+    }
+
+    /**
+     * @return the cache in front of getMessageByID, for reporting its hit, miss and eviction counts.
+     */
+    public LoadingCache<Integer, Message> getMessageCache(){
+        return messageCache;
+    }
+
+    /**
+     * @return true if createMessageAsync queues messages for group commit rather than writing them immediately.
+     */
+    public boolean isWriteBehindEnabled(){
+        return writeQueue != null;
+    }
+
+    /**
+     * @return the write-behind queue, for reporting its depth, batch sizes and commit latency. Null unless write-behind
+     * is enabled.
+     */
+    public MessageWriteQueue getWriteQueue(){
+        return writeQueue;
+    }
+
+    /**
+     * @return the in-memory message index, for reporting its size and memory use. Null unless the index is enabled.
+     */
+    public MessageIndex getMessageIndex(){
+        return messageIndex;
     }
 
     /**
@@ -87,5 +419,87 @@ public class MessageService {
         if (message_body.length() >= 255) return false;
         return true;
     }
-}
 
+    /**
+     * Validates a message body as isValidMessageBody does, recording the time taken in the request's ServerTiming.
+     * @param message_body The message_text to validate.
+     * @return true is message is valid, false otherwise.
+     */
+    private boolean validate(String message_body){
+        ServerTiming timing = ServerTiming.current();
+        long start = System.nanoTime();
+        boolean valid = isValidMessageBody(message_body);
+        if (timing != null) timing.record(ServerTiming.Phase.VALIDATE, start);
+        return valid;
+    }
+
+    /**
+     * Indexes a newly created message and publishes it to its author's followers' feeds.
+     * @param newMessage The Message object just added to the database.
+     */
+    private void created(Message newMessage){
+        versions.created(newMessage.getPosted_by());
+        if (messageIndex != null) {
+            messageIndex.add(newMessage.getPosted_by(), newMessage.getMessage_id(), newMessage.getTime_posted_epoch());
+        }
+        if (searchIndex != null) {
+            searchIndex.add(newMessage.getMessage_id(), newMessage.getMessage_text(), newMessage.getTime_posted_epoch());
+        }
+        feedService.publish(newMessage);
+    }
+
+    /**
+     * Resolves message_ids to messages, taking cached messages from the cache and fetching the rest by primary key, at
+     * most MAX_BATCH_SIZE per query. Messages deleted in the meantime, or in a chunk that couldn't be read, are left
+     * out.
+     * @param message_ids The message_ids to resolve.
+     * @return The List of Message objects in the order of message_ids.
+     */
+    private List<Message> getMessagesByIDs(int[] message_ids){
+        Map<Integer, Message> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (int message_id : message_ids) {
+            Message cached = messageCache.getIfPresent(message_id);
+            if (cached != null) {
+                found.put(message_id, cached);
+            } else {
+                missing.add(message_id);
+            }
+        }
+        for (int from = 0; from < missing.size(); from += MAX_BATCH_SIZE) {
+            List<Integer> chunk = missing.subList(from, Math.min(from + MAX_BATCH_SIZE, missing.size()));
+            List<Message> fetched = messageDAO.getMessagesByIDs(chunk);
+            if (fetched == null) continue;
+            for (Message message : fetched) found.put(message.getMessage_id(), message);
+        }
+
+        List<Message> messages = new ArrayList<>(message_ids.length);
+        for (int message_id : message_ids) {
+            Message message = found.get(message_id);
+            if (message != null) messages.add(message);
+        }
+        return messages;
+    }
+
+    /**
+     * Caps a requested page size at MAX_PAGE_SIZE.
+     * @param limit The requested page size. Must be positive.
+     * @return The page size the server will actually use.
+     */
+    private int pageSize(int limit){
+        if (limit <= 0) throw new IllegalArgumentException("limit must be positive");
+        return Math.min(limit, MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Builds a page from rows fetched with one extra row beyond the page size, which tells whether another page exists
+     * without a separate count query.
+     * @param rows The rows returned by the DAO, at most pageSize + 1.
+     * @param pageSize The number of messages that belong on this page.
+     * @return The MessagePage holding the first pageSize rows.
+     */
+    private MessagePage toPage(List<Message> rows, int pageSize){
+        boolean hasMore = rows.size() > pageSize;
+        return new MessagePage(hasMore ? rows.subList(0, pageSize) : rows, hasMore);
+    }
+}
@@ -0,0 +1,111 @@
+package Service;
+
+import java.security.SecureRandom;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Version counters for message reads, so a client re-polling a message or an author's messages can be told that
+ * nothing has changed without reading or serializing anything.
+ *
+ * Every write takes the next value of one process-wide counter and records it against the message it changed and the
+ * account that posted it. A message or account not written since startup is at version 0. Versions are only
+ * comparable within one process, so each carries the random generation of the process that issued it.
+ *
+ * Readers must take a version before reading the data it describes, and writers bump versions after writing: a reader
+ * racing a write then labels new data with an old version, which costs the client one more full response, and never
+ * labels old data with a new version.
+ *
+ * At most maxMessages message versions are kept. Once there are more, the versions of the messages changed longest ago
+ * are dropped and replaced by a floor that every message's version is at least, so a version never goes backwards; a
+ * dropped message's version rises to the floor, which costs its clients one more full response.
+ */
+public class MessageVersions {
+
+    private final String generation = Long.toHexString(new SecureRandom().nextLong());
+    private final AtomicLong clock = new AtomicLong();
+    /**
+     * Versions of messages updated or deleted since startup. Creating a message doesn't need an entry, since no
+     * version is reported for a message that doesn't exist.
+     */
+    private final Map<Integer, Long> messages = new ConcurrentHashMap<>();
+    private final Map<Integer, Long> accounts = new ConcurrentHashMap<>();
+    private final int maxMessages;
+    /**
+     * The least version of every message, at least the version of every message dropped from messages.
+     */
+    private volatile long floor;
+
+    /**
+     * Keeps up to messages.versions.maxSize message versions, 100,000 by default.
+     */
+    public MessageVersions(){
+        this(Integer.getInteger("messages.versions.maxSize", 100_000));
+    }
+
+    /**
+     * @param maxMessages The most message versions to keep.
+     */
+    public MessageVersions(int maxMessages){
+        this.maxMessages = maxMessages;
+    }
+
+    /**
+     * Records that a message by posted_by has been created.
+     * @param posted_by The account_id of the author.
+     */
+    public void created(int posted_by){
+        accounts.merge(posted_by, clock.incrementAndGet(), Math::max);
+    }
+
+    /**
+     * Records that a message has been updated or deleted.
+     * @param message_id The message_id of the changed message.
+     * @param posted_by The account_id of its author.
+     */
+    public void changed(int message_id, int posted_by){
+        long version = clock.incrementAndGet();
+        messages.merge(message_id, version, Math::max);
+        accounts.merge(posted_by, version, Math::max);
+        if (messages.size() > maxMessages) trim();
+    }
+
+    /**
+     * @param message_id The message_id of a message.
+     * @return the version of the last update or delete of the message, or the floor if that is higher; 0 if the
+     * message has not changed since startup and nothing has been dropped.
+     */
+    public long messageVersion(int message_id){
+        return Math.max(messages.getOrDefault(message_id, 0L), floor);
+    }
+
+    /**
+     * @param account_id The account_id of an author.
+     * @return the version of the last message created, updated or deleted by the author, or 0 if there has been none
+     * since startup.
+     */
+    public long accountVersion(int account_id){
+        return accounts.getOrDefault(account_id, 0L);
+    }
+
+    /**
+     * Drops the versions of the messages changed longest ago, keeping about half of maxMessages.
+     */
+    private synchronized void trim(){
+        if (messages.size() <= maxMessages) return;
+        // each version is issued once, so no more than maxMessages / 2 messages hold a version above the cutoff.
+        long cutoff = clock.get() - maxMessages / 2;
+        if (cutoff <= floor) return;
+        // the floor is raised before anything is dropped, so a message read meanwhile never sees its version fall.
+        floor = cutoff;
+        messages.values().removeIf(version -> version <= cutoff);
+    }
+
+    /**
+     * @return an identifier for this process, different after every restart.
+     */
+    public String getGeneration(){
+        return generation;
+    }
+}
@@ -0,0 +1,219 @@
+package Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import DAO.MessageDAO;
+import Model.Message;
+
+/**
+ * A bounded write-behind queue for new messages, drained by a single committer thread that group commits them.
+ *
+ * The committer waits for a message, then keeps collecting until it holds maxBatchSize messages or maxWaitMillis
+ * have passed since the first one arrived, and writes them all in one transaction through MessageDAO.addMessages.
+ * Each submitter's future completes only after that transaction has committed. When the queue is full, submit()
+ * fails immediately rather than blocking the caller.
+ */
+public class MessageWriteQueue {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageWriteQueue.class);
+
+    private final MessageDAO messageDAO;
+    private final BlockingQueue<PendingMessage> queue;
+    private final int maxBatchSize;
+    private final long maxWaitNanos;
+
+    /**
+     * Upper bound of each batch size histogram bucket: 1, 2, 4, ... up to maxBatchSize.
+     */
+    private final int[] batchSizeBounds;
+    private final LongAdder[] batchSizeCounts;
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder committedMessages = new LongAdder();
+    private final LongAdder commitNanos = new LongAdder();
+    private final AtomicLong maxCommitNanos = new AtomicLong();
+
+    /**
+     * @param messageDAO The DAO that writes each batch.
+     * @param capacity The number of messages that may wait in the queue before submit() starts rejecting them.
+     * @param maxBatchSize The most messages written in one transaction.
+     * @param maxWaitMillis How long the committer waits for a batch to fill once its first message has arrived.
+     */
+    public MessageWriteQueue(MessageDAO messageDAO, int capacity, int maxBatchSize, long maxWaitMillis) {
+        if (capacity < 1 || maxBatchSize < 1 || maxWaitMillis < 0) {
+            throw new IllegalArgumentException("Invalid write queue settings: capacity=" + capacity
+                    + ", maxBatchSize=" + maxBatchSize + ", maxWaitMillis=" + maxWaitMillis);
+        }
+        this.messageDAO = messageDAO;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.maxBatchSize = maxBatchSize;
+        this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+
+        int buckets = 32 - Integer.numberOfLeadingZeros(maxBatchSize - 1) + 1;
+        batchSizeBounds = new int[buckets];
+        batchSizeCounts = new LongAdder[buckets];
+        for (int i = 0; i < buckets; i++) {
+            batchSizeBounds[i] = Math.min(1 << i, maxBatchSize);
+            batchSizeCounts[i] = new LongAdder();
+        }
+
+        Thread committer = new Thread(this::run, "message-write-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Queues message to be written in the next group commit.
+     * @param message The Message object to persist. It must already have been validated.
+     * @return a future completed with the Message after persisting it, or with null if it could not be inserted.
+     * @throws RejectedExecutionException if the queue is full.
+     */
+    public CompletableFuture<Message> submit(Message message) {
+        PendingMessage pending = new PendingMessage(message);
+        if (!queue.offer(pending)) {
+            throw new RejectedExecutionException("Message write queue is full (" + queue.size() + " waiting)");
+        }
+        return pending.future;
+    }
+
+    /**
+     * @return the number of messages waiting to be written.
+     */
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    /**
+     * @return the upper bound of each batch size histogram bucket, in increasing order.
+     */
+    public int[] getBatchSizeBounds() {
+        return batchSizeBounds.clone();
+    }
+
+    /**
+     * @return the number of commits whose batch size fell in each bucket; bucket i holds sizes above bound i-1 up to
+     * and including bound i.
+     */
+    public long[] getBatchSizeCounts() {
+        long[] counts = new long[batchSizeCounts.length];
+        for (int i = 0; i < counts.length; i++) counts[i] = batchSizeCounts[i].sum();
+        return counts;
+    }
+
+    /**
+     * @return the number of group commits made.
+     */
+    public long getCommitCount() {
+        return commits.sum();
+    }
+
+    /**
+     * @return the number of messages written across all group commits.
+     */
+    public long getCommittedMessageCount() {
+        return committedMessages.sum();
+    }
+
+    /**
+     * @return the total time spent writing batches, in nanoseconds.
+     */
+    public long getTotalCommitNanos() {
+        return commitNanos.sum();
+    }
+
+    /**
+     * @return the longest time spent writing a single batch, in nanoseconds.
+     */
+    public long getMaxCommitNanos() {
+        return maxCommitNanos.get();
+    }
+
+    @Override
+    public String toString() {
+        long count = getCommitCount();
+        return "MessageWriteQueue[depth=" + getQueueDepth() + ", commits=" + count
+                + ", messages=" + getCommittedMessageCount()
+                + ", avgCommitMicros=" + (count == 0 ? 0 : getTotalCommitNanos() / count / 1000) + "]";
+    }
+
+    /**
+     * The committer loop: collects a batch and writes it, until the thread is interrupted.
+     */
+    private void run() {
+        List<PendingMessage> batch = new ArrayList<>(maxBatchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                batch.add(queue.take());
+                long deadline = System.nanoTime() + maxWaitNanos;
+                while (batch.size() < maxBatchSize) {
+                    // take whatever is already queued without waiting, then wait only for the remainder.
+                    if (queue.drainTo(batch, maxBatchSize - batch.size()) > 0) continue;
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) break;
+                    PendingMessage next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (!batch.isEmpty()) commit(batch);
+            batch.clear();
+        }
+    }
+
+    /**
+     * Writes batch in one transaction and completes each message's future with its result.
+     */
+    private void commit(List<PendingMessage> batch) {
+        List<Message> messages = new ArrayList<>(batch.size());
+        for (PendingMessage pending : batch) messages.add(pending.message);
+
+        long start = System.nanoTime();
+        List<Message> newMessages;
+        try {
+            newMessages = messageDAO.addMessages(messages);
+        } catch (RuntimeException e) {
+            logger.error("Group commit of {} messages failed", batch.size(), e);
+            for (PendingMessage pending : batch) pending.future.completeExceptionally(e);
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        commits.increment();
+        committedMessages.add(batch.size());
+        commitNanos.add(elapsed);
+        maxCommitNanos.accumulateAndGet(elapsed, Math::max);
+        batchSizeCounts[bucketFor(batch.size())].increment();
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(newMessages.get(i));
+        }
+    }
+
+    private int bucketFor(int batchSize) {
+        for (int i = 0; i < batchSizeBounds.length; i++) {
+            if (batchSize <= batchSizeBounds[i]) return i;
+        }
+        return batchSizeBounds.length - 1;
+    }
+
+    private static class PendingMessage {
+        final Message message;
+        final CompletableFuture<Message> future = new CompletableFuture<>();
+
+        PendingMessage(Message message) {
+            this.message = message;
+        }
+    }
+}
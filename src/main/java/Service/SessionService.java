@@ -0,0 +1,161 @@
+package Service;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Issues and checks stateless session tokens, so an authenticated request is verified in memory without reading the
+ * account from the database.
+ *
+ * A token is the Base64url payload (account_id, expiry in epoch seconds and a random token id) followed by a '.' and
+ * the Base64url HMAC-SHA256 of the payload under a key that lives in this process, or that is given in Base64 by the
+ * auth.tokenKey system property so tokens survive restarts. Tokens expire auth.tokenTtlSeconds (default 3600) after
+ * they are issued. Revoked tokens go into a deny-list until they would have expired anyway, which keeps it small.
+ */
+public class SessionService {
+
+    /**
+     * Returned by verify() for a token that is malformed, forged, expired or revoked.
+     */
+    public static final int INVALID = -1;
+
+    private static final int PAYLOAD_BYTES = Integer.BYTES + Long.BYTES + Long.BYTES;
+    private static final int SIGNATURE_BYTES = 32;
+    /**
+     * The deny-list is swept for expired entries whenever it grows past this size.
+     */
+    private static final int DENY_LIST_SWEEP_SIZE = 1024;
+
+    private final SecretKeySpec key;
+    private final long ttlSeconds;
+    private final SecureRandom random = new SecureRandom();
+    private final ThreadLocal<Mac> macs;
+    /**
+     * Revoked token ids and the epoch second each token expires at.
+     */
+    private final Map<Long, Long> denyList = new ConcurrentHashMap<>();
+
+    public SessionService(){
+        this(keyFromSystemProperties(), Long.getLong("auth.tokenTtlSeconds", 3600));
+    }
+
+    /**
+     * @param key The HMAC key tokens are signed with.
+     * @param ttlSeconds How long a token stays valid after it is issued.
+     */
+    public SessionService(byte[] key, long ttlSeconds){
+        if (ttlSeconds < 1) throw new IllegalArgumentException("ttlSeconds must be positive");
+        this.key = new SecretKeySpec(key, "HmacSHA256");
+        this.ttlSeconds = ttlSeconds;
+        macs = ThreadLocal.withInitial(() -> {
+            try {
+                Mac mac = Mac.getInstance("HmacSHA256");
+                mac.init(this.key);
+                return mac;
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("HmacSHA256 is unavailable", e);
+            }
+        });
+    }
+
+    /**
+     * @param account_id The account_id of the account that just logged in.
+     * @return a signed token carrying account_id.
+     */
+    public String issue(int account_id){
+        ByteBuffer payload = ByteBuffer.allocate(PAYLOAD_BYTES)
+                .putInt(account_id)
+                .putLong(System.currentTimeMillis() / 1000 + ttlSeconds)
+                .putLong(random.nextLong());
+        Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+        return encoder.encodeToString(payload.array()) + "." + encoder.encodeToString(sign(payload.array()));
+    }
+
+    /**
+     * Checks a token's signature, expiry and revocation, without touching the database.
+     * @param token The token presented by a client.
+     * @return the account_id the token was issued to, or INVALID.
+     */
+    public int verify(String token){
+        byte[] payload = decodePayload(token);
+        if (payload == null) return INVALID;
+        ByteBuffer fields = ByteBuffer.wrap(payload);
+        int account_id = fields.getInt();
+        long expires = fields.getLong();
+        long token_id = fields.getLong();
+        if (expires <= System.currentTimeMillis() / 1000) return INVALID;
+        if (!denyList.isEmpty() && denyList.containsKey(token_id)) return INVALID;
+        return account_id;
+    }
+
+    /**
+     * Revokes a token, so verify() rejects it from now on.
+     * @param token The token to revoke.
+     * @return true if the token was valid until now.
+     */
+    public boolean revoke(String token){
+        byte[] payload = decodePayload(token);
+        if (payload == null) return false;
+        ByteBuffer fields = ByteBuffer.wrap(payload);
+        fields.getInt();
+        long expires = fields.getLong();
+        long token_id = fields.getLong();
+        long now = System.currentTimeMillis() / 1000;
+        if (expires <= now) return false;
+        if (denyList.size() >= DENY_LIST_SWEEP_SIZE) {
+            Iterator<Long> expiries = denyList.values().iterator();
+            while (expiries.hasNext()) {
+                if (expiries.next() <= now) expiries.remove();
+            }
+        }
+        return denyList.putIfAbsent(token_id, expires) == null;
+    }
+
+    /**
+     * @return the number of revoked tokens that have not expired yet, or that have not been swept since they did.
+     */
+    public int getDenyListSize(){
+        return denyList.size();
+    }
+
+    /**
+     * @return the token's payload if its signature is valid, otherwise null.
+     */
+    private byte[] decodePayload(String token){
+        if (token == null) return null;
+        int separator = token.indexOf('.');
+        if (separator < 0) return null;
+        byte[] payload;
+        byte[] signature;
+        try {
+            Base64.Decoder decoder = Base64.getUrlDecoder();
+            payload = decoder.decode(token.substring(0, separator));
+            signature = decoder.decode(token.substring(separator + 1));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        if (payload.length != PAYLOAD_BYTES || signature.length != SIGNATURE_BYTES) return null;
+        return MessageDigest.isEqual(signature, sign(payload)) ? payload : null;
+    }
+
+    private byte[] sign(byte[] payload){
+        return macs.get().doFinal(payload);
+    }
+
+    private static byte[] keyFromSystemProperties(){
+        String configured = System.getProperty("auth.tokenKey");
+        if (configured != null) return Base64.getDecoder().decode(configured);
+        byte[] key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+}
@@ -0,0 +1,462 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of physical database connections. Connections handed out by getConnection() are proxies whose
+ * close() returns the underlying connection to the pool instead of closing it, so callers should always close
+ * them (ideally with try-with-resources).
+ *
+ * At most maxSize connections are ever borrowed at once; callers beyond that wait up to acquireTimeoutMillis
+ * for one to be returned. Idle connections are validated before being handed out, and a background task logs
+ * the borrowing stack trace of any connection held longer than leakDetectionMillis. The same task opens connections
+ * until minSize are live, taking a permit for each like a borrower does, and closes connections above minSize that
+ * have been idle longer than idleTimeoutMillis, so the pool shrinks back after a burst.
+ *
+ * Each physical connection keeps up to statementCacheSize PreparedStatements open in a StatementCache, so the DAOs'
+ * prepareStatement(sql) and prepareStatement(sql, autoGeneratedKeys) calls reuse an already parsed and planned
+ * statement when the connection has prepared the same SQL before. Cached statements are closed along with their
+ * connection when it is discarded.
+ *
+ * Every getConnection() call is recorded as a FlightEvents.ConnectionAcquire event while that event is enabled, and
+ * in the caller's ServerTiming when the request is being timed.
+ */
+public class ConnectionPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(ConnectionPool.class);
+
+    /**
+     * Seconds to wait for Connection.isValid() when validating an idle connection on borrow.
+     */
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+    /**
+     * Statements cached per connection when no size is given; comfortably more than the DAOs' distinct SQL strings.
+     */
+    private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+    /**
+     * How long a connection above minSize may sit idle before it is closed, when no timeout is given.
+     */
+    private static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 600_000;
+
+    private final DataSource dataSource;
+    private final int minSize;
+    private final int maxSize;
+    private final long acquireTimeoutMillis;
+    private final long leakDetectionMillis;
+    private final int statementCacheSize;
+    private final long idleTimeoutMillis;
+
+    /**
+     * One permit per connection that may be borrowed. Connections are only opened while holding a permit, by a
+     * borrower that found no idle connection or by housekeeping, so this also bounds the number of physical
+     * connections.
+     */
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PhysicalConnection> idle = new LinkedBlockingDeque<>();
+    private final Set<Lease> borrowed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger live = new AtomicInteger();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final ScheduledExecutorService housekeeper;
+
+    private final LongAdder statementHits = new LongAdder();
+    private final LongAdder statementMisses = new LongAdder();
+    private final LongAdder statementEvictions = new LongAdder();
+
+    /**
+     * Creates a pool that caches up to 64 statements per connection and closes connections above minSize after 10
+     * minutes idle.
+     * @param dataSource The source of physical connections.
+     * @param minSize The number of connections opened up front and kept open while idle.
+     * @param maxSize The maximum number of connections that may be borrowed at the same time.
+     * @param acquireTimeoutMillis How long getConnection() waits for a free connection before failing.
+     * @param leakDetectionMillis How long a connection may be borrowed before it is reported as leaked. 0 disables
+     *                            leak detection, which also skips capturing the borrower's stack trace.
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis, long leakDetectionMillis) {
+        this(dataSource, minSize, maxSize, acquireTimeoutMillis, leakDetectionMillis, DEFAULT_STATEMENT_CACHE_SIZE);
+    }
+
+    /**
+     * @param dataSource The source of physical connections.
+     * @param minSize The number of connections opened up front and kept open while idle.
+     * @param maxSize The maximum number of connections that may be borrowed at the same time.
+     * @param acquireTimeoutMillis How long getConnection() waits for a free connection before failing.
+     * @param leakDetectionMillis How long a connection may be borrowed before it is reported as leaked. 0 disables
+     *                            leak detection, which also skips capturing the borrower's stack trace.
+     * @param statementCacheSize The most PreparedStatements kept open per connection. 0 disables statement caching.
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis, long leakDetectionMillis,
+            int statementCacheSize) {
+        this(dataSource, minSize, maxSize, acquireTimeoutMillis, leakDetectionMillis, statementCacheSize,
+                DEFAULT_IDLE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param dataSource The source of physical connections.
+     * @param minSize The number of connections opened up front and kept open while idle.
+     * @param maxSize The maximum number of connections that may be borrowed at the same time.
+     * @param acquireTimeoutMillis How long getConnection() waits for a free connection before failing.
+     * @param leakDetectionMillis How long a connection may be borrowed before it is reported as leaked. 0 disables
+     *                            leak detection, which also skips capturing the borrower's stack trace.
+     * @param statementCacheSize The most PreparedStatements kept open per connection. 0 disables statement caching.
+     * @param idleTimeoutMillis How long a connection above minSize may sit idle before it is closed. 0 keeps idle
+     *                          connections open.
+     */
+    public ConnectionPool(DataSource dataSource, int minSize, int maxSize, long acquireTimeoutMillis, long leakDetectionMillis,
+            int statementCacheSize, long idleTimeoutMillis) {
+        if (maxSize < 1 || minSize < 0 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size: min=" + minSize + ", max=" + maxSize);
+        }
+        if (statementCacheSize < 0) {
+            throw new IllegalArgumentException("Invalid statement cache size: " + statementCacheSize);
+        }
+        this.dataSource = dataSource;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.leakDetectionMillis = leakDetectionMillis;
+        this.statementCacheSize = statementCacheSize;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+
+        housekeeper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = 5000;
+        if (leakDetectionMillis > 0) period = Math.min(period, Math.max(leakDetectionMillis / 2, 100));
+        if (idleTimeoutMillis > 0) period = Math.min(period, Math.max(idleTimeoutMillis / 2, 100));
+        housekeeper.scheduleWithFixedDelay(this::housekeep, 0, period, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Borrows a connection from the pool, opening a new one if no valid idle connection is available.
+     * @return a pooled connection. Closing it returns it to the pool.
+     * @throws SQLTimeoutException if no connection became available within the acquire timeout.
+     * @throws SQLException if a new physical connection could not be opened.
+     */
+    public Connection getConnection() throws SQLException {
+        long start = System.nanoTime();
+        FlightEvents.ConnectionAcquire event = new FlightEvents.ConnectionAcquire();
+        event.begin();
+        waiting.incrementAndGet();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finishAcquire(event, start, false);
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        if (!acquired) {
+            finishAcquire(event, start, false);
+            throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection " + this);
+        }
+
+        try {
+            Lease lease = new Lease(takeIdleOrOpen());
+            borrowed.add(lease);
+            Connection connection = (Connection) Proxy.newProxyInstance(ConnectionPool.class.getClassLoader(),
+                    new Class<?>[] { Connection.class }, lease);
+            finishAcquire(event, start, true);
+            return connection;
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            finishAcquire(event, start, false);
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of connections currently borrowed.
+     */
+    public int getActiveCount() {
+        return borrowed.size();
+    }
+
+    /**
+     * @return the number of open connections waiting in the pool to be borrowed.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    /**
+     * @return the number of physical connections currently open, borrowed or idle.
+     */
+    public int getLiveCount() {
+        return live.get();
+    }
+
+    /**
+     * @return the number of threads currently blocked in getConnection().
+     */
+    public int getWaitingCount() {
+        return waiting.get();
+    }
+
+    /**
+     * @return the maximum number of connections that may be borrowed at the same time.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of prepareStatement calls answered with an already open statement.
+     */
+    public long getStatementCacheHitCount() {
+        return statementHits.sum();
+    }
+
+    /**
+     * @return the number of prepareStatement calls that had to prepare a new statement.
+     */
+    public long getStatementCacheMissCount() {
+        return statementMisses.sum();
+    }
+
+    /**
+     * @return the number of cached statements closed to make room for others.
+     */
+    public long getStatementCacheEvictionCount() {
+        return statementEvictions.sum();
+    }
+
+    /**
+     * @return the fraction of prepareStatement calls answered from the statement cache, or 0 before the first call.
+     */
+    public double getStatementCacheHitRatio() {
+        long hits = getStatementCacheHitCount();
+        long total = hits + getStatementCacheMissCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool{" +
+                "live=" + getLiveCount() +
+                ", active=" + getActiveCount() +
+                ", idle=" + getIdleCount() +
+                ", waiting=" + getWaitingCount() +
+                ", max=" + maxSize +
+                ", statementHitRatio=" + String.format("%.3f", getStatementCacheHitRatio()) +
+                '}';
+    }
+
+    private void finishAcquire(FlightEvents.ConnectionAcquire event, long start, boolean acquired) {
+        ServerTiming timing = ServerTiming.current();
+        if (timing != null) timing.record(ServerTiming.Phase.ACQUIRE, start);
+        if (!event.shouldCommit()) return;
+        event.acquired = acquired;
+        event.activeConnections = getActiveCount();
+        event.waitingThreads = getWaitingCount();
+        event.commit();
+    }
+
+    private PhysicalConnection takeIdleOrOpen() throws SQLException {
+        PhysicalConnection physical;
+        while ((physical = idle.pollFirst()) != null) {
+            if (isValid(physical.connection)) return physical;
+            discard(physical);
+        }
+        return open();
+    }
+
+    private PhysicalConnection open() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        live.incrementAndGet();
+        return new PhysicalConnection(connection, statementCacheSize == 0 ? null
+                : new StatementCache(connection, statementCacheSize, statementHits, statementMisses, statementEvictions));
+    }
+
+    private boolean isValid(Connection connection) {
+        try {
+            return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private void discard(PhysicalConnection physical) {
+        live.decrementAndGet();
+        if (physical.statements != null) physical.statements.close();
+        try {
+            physical.connection.close();
+        } catch (SQLException e) {
+            logger.debug("Failed to close discarded connection", e);
+        }
+    }
+
+    /**
+     * Puts a physical connection back into the pool after its lease has been closed. Any transaction left open by
+     * the borrower is rolled back; connections that can't be reset are discarded.
+     */
+    private void release(Lease lease) {
+        if (!borrowed.remove(lease)) return;
+        PhysicalConnection physical = lease.physical;
+        Connection connection = physical.connection;
+        try {
+            if (physical.statements != null) physical.statements.checkInAll();
+            if (!connection.isClosed()) {
+                if (!connection.getAutoCommit()) {
+                    connection.rollback();
+                    connection.setAutoCommit(true);
+                }
+                connection.clearWarnings();
+                physical.idleSince = System.nanoTime();
+                idle.offerFirst(physical);
+            } else {
+                discard(physical);
+            }
+        } catch (SQLException e) {
+            discard(physical);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Reports leaked connections, keeps at least minSize connections open and closes idle connections above minSize
+     * once they have timed out.
+     */
+    private void housekeep() {
+        try {
+            if (leakDetectionMillis > 0) {
+                long now = System.nanoTime();
+                for (Lease lease : borrowed) {
+                    if (!lease.leakReported && now - lease.borrowedAt > TimeUnit.MILLISECONDS.toNanos(leakDetectionMillis)) {
+                        lease.leakReported = true;
+                        logger.warn("Connection borrowed by thread '{}' has not been returned after {}ms, possible leak",
+                                lease.borrower, TimeUnit.NANOSECONDS.toMillis(now - lease.borrowedAt), lease.borrowedFrom);
+                    }
+                }
+            }
+            while (live.get() < minSize && permits.tryAcquire()) {
+                try {
+                    PhysicalConnection physical = open();
+                    physical.idleSince = System.nanoTime();
+                    idle.offerLast(physical);
+                } finally {
+                    permits.release();
+                }
+            }
+            if (idleTimeoutMillis > 0) retireIdle();
+        } catch (SQLException | RuntimeException e) {
+            logger.warn("Connection pool housekeeping failed", e);
+        }
+    }
+
+    /**
+     * Closes idle connections that have timed out, oldest first, while more than minSize are live. Returned
+     * connections go to the front of the idle queue, so the back holds the ones idle the longest.
+     */
+    private void retireIdle() {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        PhysicalConnection physical;
+        while (live.get() > minSize && (physical = idle.peekLast()) != null
+                && System.nanoTime() - physical.idleSince > timeout) {
+            if (idle.removeLastOccurrence(physical)) discard(physical);
+        }
+    }
+
+    /**
+     * A physical connection and the statements cached on it.
+     */
+    private static class PhysicalConnection {
+        final Connection connection;
+        /**
+         * Null when statement caching is disabled.
+         */
+        final StatementCache statements;
+        /**
+         * When the connection last went back into the idle queue, from System.nanoTime().
+         */
+        volatile long idleSince;
+
+        PhysicalConnection(Connection connection, StatementCache statements) {
+            this.connection = connection;
+            this.statements = statements;
+        }
+    }
+
+    /**
+     * Backs a single borrowed connection. Every call is forwarded to the physical connection until close() is
+     * called, after which the connection is back in the pool and this lease refuses further use. Statements prepared
+     * without result set options go through the connection's StatementCache.
+     */
+    private class Lease implements InvocationHandler {
+        final PhysicalConnection physical;
+        final Connection connection;
+        final long borrowedAt = System.nanoTime();
+        final String borrower = Thread.currentThread().getName();
+        final Throwable borrowedFrom = leakDetectionMillis > 0 ? new Throwable("Connection borrowed here") : null;
+        volatile boolean closed;
+        volatile boolean leakReported;
+
+        Lease(PhysicalConnection physical) {
+            this.physical = physical;
+            this.connection = physical.connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        release(this);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed || connection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled" + connection;
+                case "prepareStatement":
+                    if (closed) throw new SQLException("Connection has already been returned to the pool");
+                    if (physical.statements != null && args.length == 1) {
+                        return physical.statements.prepare((Connection) proxy, (String) args[0], Statement.NO_GENERATED_KEYS);
+                    }
+                    if (physical.statements != null && args.length == 2 && args[1] instanceof Integer) {
+                        return physical.statements.prepare((Connection) proxy, (String) args[0], (Integer) args[1]);
+                    }
+                    // fall through for statements prepared with result set options or key columns.
+                default:
+                    if (closed) throw new SQLException("Connection has already been returned to the pool");
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
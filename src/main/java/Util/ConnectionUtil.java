@@ -1,27 +1,40 @@
 package Util;
 
-import java.io.FileNotFoundException;
 import java.io.FileReader;
+import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import org.h2.jdbcx.JdbcDataSource;
 import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The ConnectionUtil class will be utilized to create an active connection to
  * our database. This class utilizes the singleton design pattern. We will be
  * utilizing an in-memory called h2database for the sql demos.
  *
- * DO NOT CHANGE ANYTHING IN THIS CLASS
+ * Connections are handed out by a bounded ConnectionPool, so callers must close every connection they obtain to
+ * return it to the pool. The pool can be tuned with the db.pool.minSize, db.pool.maxSize,
+ * db.pool.acquireTimeoutMillis, db.pool.leakDetectionMillis, db.pool.statementCacheSize and db.pool.idleTimeoutMillis
+ * system properties.
+ *
+ * When db.profile is true, connections are also wrapped by a SqlProfiler that times every statement and logs those
+ * taking db.slowQueryMillis (default 250, negative to disable) or longer with their plan. Profiling is off by default,
+ * as it adds a proxy call to every JDBC call.
  */
 public class ConnectionUtil {
 
+	private static final Logger logger = LoggerFactory.getLogger(ConnectionUtil.class);
+
 	/**
 	 * url will represent our connection string. Since this is an in-memory db, we
-	 * will represent a file location to store the data
+	 * will represent a file location to store the data. The db.url system property
+	 * points the application at a different database, e.g. for benchmarks.
 	 */
-	private static String url = "jdbc:h2:./h2/db;";
+	private static String url = System.getProperty("db.url", "jdbc:h2:./h2/db;");
 	/**
 	 * Default username for connecting to h2
 	 */
@@ -32,43 +45,109 @@ public class ConnectionUtil {
 	private static String password = "sa";
 
 	/**
-	 * DataSource for pooling. Pooling enables the creation of multiple connections when connections are closed.
+	 * DataSource used by the pool to open new physical connections.
 	 */
-	private static JdbcDataSource pool = new JdbcDataSource();
+	private static JdbcDataSource dataSource = new JdbcDataSource();
 
 	/**
-	 * static initialization block to establish credentials for DataSoure Pool
+	 * Pool of reusable connections to the database.
+	 */
+	private static ConnectionPool pool;
+
+	/**
+	 * Times the statements run on pooled connections, or null if profiling is disabled.
+	 */
+	private static SqlProfiler profiler;
+
+	/**
+	 * static initialization block to establish credentials for the DataSource and start the pool
 	 */
 	static {
-		pool.setURL(url);
-		pool.setUser(username);
-		pool.setPassword(password);
+		dataSource.setURL(url);
+		dataSource.setUser(username);
+		dataSource.setPassword(password);
+		pool = new ConnectionPool(dataSource,
+				Integer.getInteger("db.pool.minSize", 2),
+				Integer.getInteger("db.pool.maxSize", 10),
+				Long.getLong("db.pool.acquireTimeoutMillis", 5000),
+				Long.getLong("db.pool.leakDetectionMillis", 10000),
+				Integer.getInteger("db.pool.statementCacheSize", 64),
+				Long.getLong("db.pool.idleTimeoutMillis", 600_000));
+		registerMetrics();
+		if (Boolean.getBoolean("db.profile")) {
+			profiler = new SqlProfiler(Long.getLong("db.slowQueryMillis", 250),
+					Long.getLong("db.slowQueryPlanIntervalMillis", 60_000),
+					Integer.getInteger("db.profile.maxStatements", 500), pool);
+		}
+	}
+
+	/**
+	 * @return an active connection to the database, which must be closed to return it to the pool
+	 * @throws SQLException if no connection could be obtained, e.g. because the pool timed out
+	 */
+	public static Connection getConnection() throws SQLException {
+		Connection connection = pool.getConnection();
+		return profiler == null ? connection : profiler.wrap(connection);
 	}
 
 	/**
-	 * @return an active connection to the database
+	 * @return the pool backing getConnection(), for reporting its live/idle/waiting counts
 	 */
-	public static Connection getConnection() {
-		try {
-			return pool.getConnection();
+	public static ConnectionPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Reports the pool's connection counts and statement cache activity through Metrics.
+	 */
+	private static void registerMetrics() {
+		Metrics.gauge("db_pool_connections", "Pooled connections, by state.", "state=\"active\"", () -> pool.getActiveCount());
+		Metrics.gauge("db_pool_connections", "Pooled connections, by state.", "state=\"idle\"", () -> pool.getIdleCount());
+		Metrics.gauge("db_pool_max_connections", "Most connections the pool will open.", "", () -> pool.getMaxSize());
+		Metrics.gauge("db_pool_waiting_threads", "Threads waiting for a connection.", "", () -> pool.getWaitingCount());
+		Metrics.counterFunction("db_statement_cache_hits_total", "Prepared statements reused from a connection's cache.", "",
+				() -> pool.getStatementCacheHitCount());
+		Metrics.counterFunction("db_statement_cache_misses_total", "Prepared statements that had to be prepared.", "",
+				() -> pool.getStatementCacheMissCount());
+		Metrics.counterFunction("db_statement_cache_evictions_total", "Prepared statements evicted from a connection's cache.", "",
+				() -> pool.getStatementCacheEvictionCount());
+	}
+
+	/**
+	 * @return the profiler timing statements run through getConnection(), or null if profiling is disabled
+	 */
+	public static SqlProfiler getProfiler() {
+		return profiler;
+	}
+
+	/**
+	 * Brings the database schema up to date by applying any pending migrations. This
+	 * should run once at startup, before any requests are served.
+	 */
+	public static void migrate() {
+		try (Connection connection = getConnection()) {
+			SchemaMigrator.migrate(connection);
 		} catch (SQLException e) {
-			e.printStackTrace();
+			logger.error("Schema migration failed", e);
 		}
-
-		return null;
 	}
 
 	/**
 	 * For the purpose of testing, we will need to drop and recreate our database
-	 * tables to keep it consistent across all tests. The method will read the sql
-	 * file in resources. This will be performed before every test.
+	 * tables to keep it consistent across all tests. The method drops every object,
+	 * rebuilds the schema through the migrations, then loads the test data from the
+	 * sql file in resources. This will be performed before every test.
 	 */
 	public static void resetTestDatabase() {
-		try {
-			FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql");
-			RunScript.execute(getConnection(), sqlReader);
-		} catch (SQLException | FileNotFoundException e) {
-			e.printStackTrace();
+		try (Connection connection = getConnection();
+				FileReader sqlReader = new FileReader("src/main/resources/SocialMedia.sql")) {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("DROP ALL OBJECTS");
+			}
+			SchemaMigrator.migrate(connection);
+			RunScript.execute(connection, sqlReader);
+		} catch (SQLException | IOException e) {
+			logger.error("Resetting the test database failed", e);
 		}
 	}
 }
@@ -0,0 +1,47 @@
+package Util;
+
+/**
+ * Times the calls to one DAO method, both into its dao_call_seconds histogram in Metrics and, while the event is
+ * enabled, as FlightEvents.DaoCall events.
+ *
+ * A DAO method calls start() on entry and stop() in a finally block.
+ */
+public class DaoTimer {
+
+    private final String dao;
+    private final String method;
+    private final LatencyHistogram histogram;
+
+    /**
+     * @param dao The DAO class.
+     * @param method The name of the timed method.
+     */
+    public DaoTimer(Class<?> dao, String method) {
+        this.dao = dao.getSimpleName();
+        this.method = method;
+        this.histogram = Metrics.daoTimer(dao, method);
+    }
+
+    /**
+     * @return the call being timed, to pass to stop().
+     */
+    public FlightEvents.DaoCall start() {
+        FlightEvents.DaoCall call = new FlightEvents.DaoCall();
+        call.begin();
+        call.startNanos = System.nanoTime();
+        return call;
+    }
+
+    /**
+     * Records a call that has finished.
+     * @param call The call returned by start().
+     */
+    public void stop(FlightEvents.DaoCall call) {
+        histogram.recordSince(call.startNanos);
+        if (call.shouldCommit()) {
+            call.dao = dao;
+            call.method = method;
+            call.commit();
+        }
+    }
+}
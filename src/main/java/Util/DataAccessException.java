@@ -0,0 +1,19 @@
+package Util;
+
+import java.sql.SQLException;
+
+/**
+ * Thrown by a DAO method when the database fails for a reason other than the caller's input, e.g. the pool timing
+ * out or the connection being lost, so the failure surfaces as a server error instead of looking like a rejected
+ * request.
+ */
+public class DataAccessException extends RuntimeException {
+
+    /**
+     * @param operation The DAO method that failed.
+     * @param cause The exception the database threw.
+     */
+    public DataAccessException(String operation, SQLException cause) {
+        super(operation + " failed: " + cause.getMessage(), cause);
+    }
+}
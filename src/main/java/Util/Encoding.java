@@ -0,0 +1,166 @@
+package Util;
+
+import java.util.List;
+import java.util.Locale;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import Model.Account;
+import Model.BatchResult;
+import Model.Message;
+
+/**
+ * The body encodings the API speaks: JSON, and the binary Smile and CBOR encodings of the same data model, which are
+ * smaller and cheaper to produce and parse for service-to-service callers. Each encoding holds readers and writers
+ * pre-built for the model types; JSON's are JsonUtil's own.
+ *
+ * Responses are encoded as negotiated by forAccept() from the request's Accept header, and request bodies decoded as
+ * named by their Content-Type (see forContentType()). JSON is the default in both directions.
+ */
+public enum Encoding {
+
+    JSON("application/json", JsonUtil.ACCOUNT_READER, JsonUtil.ACCOUNT_WRITER, JsonUtil.MESSAGE_READER,
+            JsonUtil.MESSAGE_WRITER, JsonUtil.MESSAGE_LIST_READER, JsonUtil.MESSAGE_LIST_WRITER,
+            JsonUtil.BATCH_RESULT_LIST_WRITER),
+    SMILE("application/x-jackson-smile", new ObjectMapper(new SmileFactory())
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET)),
+    CBOR("application/cbor", new ObjectMapper(new CBORFactory())
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET));
+
+    private static final Encoding[] ENCODINGS = values();
+
+    private final String contentType;
+    private final ObjectReader accountReader;
+    private final ObjectWriter accountWriter;
+    private final ObjectReader messageReader;
+    private final ObjectWriter messageWriter;
+    private final ObjectReader messageListReader;
+    private final ObjectWriter messageListWriter;
+    private final ObjectWriter batchResultListWriter;
+
+    Encoding(String contentType, ObjectMapper mapper) {
+        this(contentType, mapper.readerFor(Account.class), mapper.writerFor(Account.class),
+                mapper.readerFor(Message.class), mapper.writerFor(Message.class),
+                mapper.readerFor(listOf(mapper, Message.class)), mapper.writerFor(listOf(mapper, Message.class)),
+                mapper.writerFor(listOf(mapper, BatchResult.class)));
+    }
+
+    Encoding(String contentType, ObjectReader accountReader, ObjectWriter accountWriter, ObjectReader messageReader,
+            ObjectWriter messageWriter, ObjectReader messageListReader, ObjectWriter messageListWriter,
+            ObjectWriter batchResultListWriter) {
+        this.contentType = contentType;
+        this.accountReader = accountReader;
+        this.accountWriter = accountWriter;
+        this.messageReader = messageReader;
+        this.messageWriter = messageWriter;
+        this.messageListReader = messageListReader;
+        this.messageListWriter = messageListWriter;
+        this.batchResultListWriter = batchResultListWriter;
+    }
+
+    /**
+     * Picks the encoding a client prefers from its Accept header, by quality value and then by order. Media ranges
+     * other than the three encodings are ignored, except that wildcards stand for JSON.
+     * @param accept The request's Accept header, or null.
+     * @return the preferred encoding, or JSON if the client accepts none of them.
+     */
+    public static Encoding forAccept(String accept) {
+        if (accept == null) return JSON;
+        Encoding best = JSON;
+        double bestQuality = 0;
+        for (String range : accept.split(",")) {
+            int parameters = range.indexOf(';');
+            String mediaType = (parameters < 0 ? range : range.substring(0, parameters)).trim().toLowerCase(Locale.ROOT);
+            Encoding encoding = mediaType.equals("*/*") || mediaType.equals("application/*") ? JSON : forMediaType(mediaType);
+            if (encoding == null) continue;
+            double quality = parameters < 0 ? 1 : quality(range.substring(parameters + 1));
+            if (quality > bestQuality) {
+                best = encoding;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @param contentType The request's Content-Type header, or null.
+     * @return the encoding of a request body with that Content-Type, or JSON for any other or missing type.
+     */
+    public static Encoding forContentType(String contentType) {
+        if (contentType == null) return JSON;
+        int parameters = contentType.indexOf(';');
+        Encoding encoding = forMediaType((parameters < 0 ? contentType : contentType.substring(0, parameters)).trim()
+                .toLowerCase(Locale.ROOT));
+        return encoding == null ? JSON : encoding;
+    }
+
+    /**
+     * @return the encoding's media type, sent as the Content-Type of responses in it.
+     */
+    public String getContentType() {
+        return contentType;
+    }
+
+    public ObjectReader getAccountReader() {
+        return accountReader;
+    }
+
+    public ObjectWriter getAccountWriter() {
+        return accountWriter;
+    }
+
+    public ObjectReader getMessageReader() {
+        return messageReader;
+    }
+
+    public ObjectWriter getMessageWriter() {
+        return messageWriter;
+    }
+
+    public ObjectReader getMessageListReader() {
+        return messageListReader;
+    }
+
+    public ObjectWriter getMessageListWriter() {
+        return messageListWriter;
+    }
+
+    public ObjectWriter getBatchResultListWriter() {
+        return batchResultListWriter;
+    }
+
+    private static JavaType listOf(ObjectMapper mapper, Class<?> elementType) {
+        return mapper.getTypeFactory().constructCollectionType(List.class, elementType);
+    }
+
+    private static Encoding forMediaType(String mediaType) {
+        for (Encoding encoding : ENCODINGS) {
+            if (encoding.contentType.equals(mediaType)) return encoding;
+        }
+        return null;
+    }
+
+    /**
+     * @param parameters The parameters following a media range, such as "q=0.5".
+     * @return the range's quality value, 1 if it has none, or 0 if it is malformed.
+     */
+    private static double quality(String parameters) {
+        for (String parameter : parameters.split(";")) {
+            parameter = parameter.trim();
+            if (parameter.startsWith("q=") || parameter.startsWith("Q=")) {
+                try {
+                    return Double.parseDouble(parameter.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+}
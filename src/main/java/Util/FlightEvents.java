@@ -0,0 +1,104 @@
+package Util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The application's Java Flight Recorder events, recorded without any agent by starting the JVM with
+ * -XX:StartFlightRecording=settings=src/main/resources/jfr/social-media.jfc,filename=recording.jfr (or with jcmd
+ * JFR.start on a running server).
+ *
+ * Every request is a Request event; the DaoCall events of the DAO methods it called, the Statement events of the
+ * SQL those ran and the ConnectionAcquire events of their connections nest inside it on the same thread, so a
+ * recording shows where each request's time went.
+ *
+ * Events follow JFR's usual pattern: the event object is created and begun unconditionally, and only filled in and
+ * committed when shouldCommit() says it is enabled and over its threshold. While an event is disabled, begin() and
+ * shouldCommit() compile down to almost nothing and the JIT usually removes the allocation.
+ */
+public class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    @Name("socialmedia.Request")
+    @Label("HTTP Request")
+    @Category({"Social Media", "HTTP"})
+    @Description("An HTTP request, from its arrival to its response, including time spent suspended on a future.")
+    @StackTrace(false)
+    public static class Request extends Event {
+        @Label("Method")
+        public String method;
+        @Label("Route")
+        @Description("The path pattern of the matched route, or unmatched.")
+        public String route;
+        @Label("Path")
+        public String path;
+        @Label("Status")
+        public int status;
+        @Label("Bytes Written")
+        @DataAmount
+        public long bytesWritten;
+    }
+
+    @Name("socialmedia.DaoCall")
+    @Label("DAO Call")
+    @Category({"Social Media", "Database"})
+    @Description("A call to a DAO method, including waiting for a connection.")
+    @StackTrace(false)
+    public static class DaoCall extends Event {
+        @Label("DAO")
+        public String dao;
+        @Label("Method")
+        public String method;
+        /**
+         * The System.nanoTime() at which the call began, for DaoTimer's histogram. Not recorded.
+         */
+        transient long startNanos;
+    }
+
+    @Name("socialmedia.Statement")
+    @Label("SQL Statement")
+    @Category({"Social Media", "Database"})
+    @Description("One execution of a SQL statement, from its execute call until its result set was closed.")
+    @StackTrace(false)
+    public static class Statement extends Event {
+        @Label("SQL")
+        public String sql;
+        @Label("Rows")
+        public long rows;
+        @Label("Prepare Time")
+        @Timespan
+        public long prepareNanos;
+        @Label("Execute Time")
+        @Timespan
+        public long executeNanos;
+        @Label("Fetch Time")
+        @Timespan
+        public long fetchNanos;
+        @Label("Failed")
+        public boolean failed;
+    }
+
+    @Name("socialmedia.ConnectionAcquire")
+    @Label("Connection Acquire")
+    @Category({"Social Media", "Database"})
+    @Description("Borrowing a connection from the pool, including waiting for one to be returned.")
+    @StackTrace(false)
+    public static class ConnectionAcquire extends Event {
+        @Label("Acquired")
+        public boolean acquired;
+        @Label("Active Connections")
+        @Description("Connections borrowed once this one was acquired.")
+        public int activeConnections;
+        @Label("Waiting Threads")
+        @Description("Other threads waiting for a connection when this one was acquired.")
+        public int waitingThreads;
+    }
+}
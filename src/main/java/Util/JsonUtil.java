@@ -0,0 +1,45 @@
+package Util;
+
+import java.util.List;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import Model.Account;
+import Model.BatchResult;
+import Model.Message;
+
+/**
+ * Holds the application's single ObjectMapper along with readers and writers pre-built for each model type.
+ * ObjectMapper, ObjectReader and ObjectWriter are thread-safe once configured, so sharing them lets Jackson
+ * build its serializer caches once instead of on every request. Encoding.JSON hands out these same instances.
+ */
+public class JsonUtil {
+
+    /**
+     * The shared mapper, also registered as Javalin's JSON mapper. Generators leave the target stream open so
+     * handlers can write straight into the response without committing it.
+     */
+    public static final ObjectMapper MAPPER = new ObjectMapper()
+            .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+
+    public static final ObjectReader ACCOUNT_READER = MAPPER.readerFor(Account.class);
+    public static final ObjectWriter ACCOUNT_WRITER = MAPPER.writerFor(Account.class);
+
+    public static final ObjectReader MESSAGE_READER = MAPPER.readerFor(Message.class);
+    public static final ObjectWriter MESSAGE_WRITER = MAPPER.writerFor(Message.class);
+    /**
+     * Writes one Message into a generator shared across many values, leaving flushing to the generator's buffer.
+     */
+    public static final ObjectWriter MESSAGE_STREAM_WRITER = MESSAGE_WRITER.without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    public static final ObjectReader MESSAGE_LIST_READER = MAPPER.readerFor(new TypeReference<List<Message>>(){});
+    public static final ObjectWriter MESSAGE_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<Message>>(){});
+
+    public static final ObjectWriter BATCH_RESULT_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<BatchResult>>(){});
+
+    public static final ObjectWriter SQL_STATS_LIST_WRITER = MAPPER.writerFor(new TypeReference<List<SqlProfiler.StatementStats>>(){});
+}
@@ -0,0 +1,129 @@
+package Util;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations with log-linear buckets in the style of HdrHistogram: every power of two from about a
+ * microsecond to about a minute is split into SUB_BUCKETS linear sub-buckets, so a recorded value lands in a bucket at
+ * most 1/SUB_BUCKETS of its magnitude wide, and the whole range takes a fixed, preallocated array of buckets.
+ *
+ * Each bucket, the count and the sum are LongAdders, so record() neither locks nor allocates once a counter's stripes
+ * exist, and concurrent recorders update different cells. Reads add the stripes up and may miss concurrent records.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /**
+     * Durations up to 2^MIN_MAGNITUDE ns (about 1us) share the first bucket.
+     */
+    private static final int MIN_MAGNITUDE = 10;
+    /**
+     * Durations of 2^(MAX_MAGNITUDE + 1) ns (about 69s) or more land in the overflow bucket.
+     */
+    private static final int MAX_MAGNITUDE = 35;
+    private static final int BUCKETS = (MAX_MAGNITUDE - MIN_MAGNITUDE + 1) * SUB_BUCKETS + 1;
+    private static final long[] UPPER_BOUNDS = new long[BUCKETS - 1];
+
+    static {
+        for (int i = 0; i < UPPER_BOUNDS.length; i++) {
+            int magnitude = MIN_MAGNITUDE + (i >> SUB_BUCKET_BITS);
+            long subBucket = i & (SUB_BUCKETS - 1);
+            UPPER_BOUNDS[i] = (SUB_BUCKETS + subBucket + 1) << (magnitude - SUB_BUCKET_BITS);
+        }
+    }
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sumNanos = new LongAdder();
+
+    public LatencyHistogram() {
+        for (int i = 0; i < BUCKETS; i++) buckets[i] = new LongAdder();
+    }
+
+    /**
+     * Records one duration.
+     * @param nanos The duration in nanoseconds. Negative durations are recorded as 0.
+     */
+    public void record(long nanos) {
+        if (nanos < 0) nanos = 0;
+        buckets[bucket(nanos)].increment();
+        count.increment();
+        sumNanos.add(nanos);
+    }
+
+    /**
+     * Records the time elapsed since start.
+     * @param startNanos A System.nanoTime() reading taken when the measured operation began.
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * @return the inclusive upper bound of every bucket except the overflow bucket, in nanoseconds, in increasing order.
+     */
+    public static long[] getUpperBounds() {
+        return UPPER_BOUNDS.clone();
+    }
+
+    /**
+     * @return the number of durations in each bucket, the last being the overflow bucket; bucket i holds durations
+     * above bound i-1 up to and including bound i.
+     */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) counts[i] = buckets[i].sum();
+        return counts;
+    }
+
+    /**
+     * @return the number of durations recorded.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * @return the sum of the durations recorded, in nanoseconds.
+     */
+    public long getSumNanos() {
+        return sumNanos.sum();
+    }
+
+    /**
+     * @return an estimate of the duration below which a fraction quantile of the recorded durations fall, as the upper
+     * bound of the bucket holding it, in nanoseconds; 0 if nothing has been recorded.
+     */
+    public long getQuantileNanos(double quantile) {
+        long[] counts = getBucketCounts();
+        long total = 0;
+        for (long bucketCount : counts) total += bucketCount;
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < UPPER_BOUNDS.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) return UPPER_BOUNDS[i];
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram[count=" + getCount() + ", p50Micros=" + getQuantileNanos(0.5) / 1000
+                + ", p99Micros=" + getQuantileNanos(0.99) / 1000 + "]";
+    }
+
+    /**
+     * @return the index of the bucket holding nanos: its power of two, then the next SUB_BUCKET_BITS bits below the
+     * leading one.
+     */
+    private static int bucket(long nanos) {
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        if (magnitude < MIN_MAGNITUDE) return 0;
+        if (magnitude > MAX_MAGNITUDE) return BUCKETS - 1;
+        int subBucket = (int) (nanos >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return ((magnitude - MIN_MAGNITUDE) << SUB_BUCKET_BITS) + subBucket;
+    }
+}
@@ -0,0 +1,225 @@
+package Util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread-safe, in-process read-through cache.
+ *
+ * Entries are spread over independently locked segments, each evicting its least recently used entry once it is
+ * full, and may optionally expire a fixed time after they were written. Concurrent misses on the same key are
+ * coalesced so only one caller runs the loader while the others wait for its result. Null values are never cached.
+ *
+ * Writers must update the backing store first and then call put() or invalidate(); a load that was already in
+ * flight when the key was written or invalidated is never stored, so it can't overwrite the newer value.
+ */
+public class LoadingCache<K, V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment<K, V>[] segments;
+    private final long ttlNanos;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maximumSize The maximum number of entries to hold.
+     * @param ttl How long an entry stays valid after it is written, or 0 for no expiry.
+     * @param unit The unit of ttl.
+     */
+    @SuppressWarnings("unchecked")
+    public LoadingCache(int maximumSize, long ttl, TimeUnit unit) {
+        if (maximumSize < SEGMENTS) throw new IllegalArgumentException("maximumSize must be at least " + SEGMENTS);
+        this.ttlNanos = unit.toNanos(ttl);
+        this.segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment<>(maximumSize / SEGMENTS, evictions);
+        }
+    }
+
+    /**
+     * Returns the cached value for key, loading it with loader on a miss. If another thread is already loading the
+     * same key, waits for that load instead of starting another.
+     * @param key The key to look up.
+     * @param loader Loads the value from the backing store. May return null, which is returned but not cached.
+     * @return the cached or freshly loaded value.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V cached = getIfPresent(key);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+        misses.increment();
+
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> inFlight = loading.putIfAbsent(key, future);
+        if (inFlight != null) {
+            try {
+                return inFlight.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+
+        V value;
+        try {
+            value = loader.apply(key);
+        } catch (RuntimeException e) {
+            loading.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            // a put() or invalidate() while we were loading removes our future, and its value must win.
+            if (loading.remove(key, future) && value != null) {
+                segment.insert(key, value);
+            }
+        } finally {
+            segment.lock.unlock();
+        }
+        future.complete(value);
+        return value;
+    }
+
+    /**
+     * @param key The key to look up.
+     * @return the cached value for key, or null if it is absent or expired. Does not count as a hit or miss.
+     */
+    public V getIfPresent(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            CacheEntry<V> entry = segment.entries.get(key);
+            if (entry == null) return null;
+            if (ttlNanos > 0 && System.nanoTime() - entry.writtenAt > ttlNanos) {
+                segment.entries.remove(key);
+                return null;
+            }
+            return entry.value;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Stores value for key after the backing store has been written, discarding any load of key still in flight.
+     * @param key The key to store.
+     * @param value The new value. Must not be null.
+     */
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            loading.remove(key);
+            segment.insert(key, value);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * Removes key after the backing store has been written, discarding any load of key still in flight.
+     * @param key The key to remove.
+     */
+    public void invalidate(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        segment.lock.lock();
+        try {
+            loading.remove(key);
+            segment.entries.remove(key);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of lookups answered from the cache.
+     */
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to load, or wait for another thread's load.
+     */
+    public long missCount() {
+        return misses.sum();
+    }
+
+    /**
+     * @return the number of entries removed to make room for new ones.
+     */
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return the number of entries currently held, including any that have expired but not yet been removed.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.entries.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        return segments[hash & (SEGMENTS - 1)];
+    }
+
+    private static class CacheEntry<V> {
+        final V value;
+        final long writtenAt = System.nanoTime();
+
+        CacheEntry(V value) {
+            this.value = value;
+        }
+    }
+
+    /**
+     * An access-ordered map guarded by its own lock, so lookups on different segments never contend.
+     */
+    private static class Segment<K, V> {
+        final ReentrantLock lock = new ReentrantLock();
+        final LinkedHashMap<K, CacheEntry<V>> entries;
+
+        Segment(int capacity, LongAdder evictions) {
+            entries = new LinkedHashMap<>(capacity * 4 / 3 + 1, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, CacheEntry<V>> eldest) {
+                    if (size() <= capacity) return false;
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+
+        /**
+         * Must be called while holding lock.
+         */
+        void insert(K key, V value) {
+            entries.put(key, new CacheEntry<>(value));
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package Util;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory index from each author's account_id to the message_ids they have posted, ordered by time_posted_epoch
+ * and then message_id. Keys and postings are held in primitive arrays (a hand-rolled open-addressing int map over
+ * per-author int[]/long[] lists), so an indexed message costs roughly 12 bytes plus array growth slack, and lookups
+ * never box.
+ *
+ * The index is safe for concurrent use; writers are serialized and readers receive copies.
+ */
+public class MessageIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+    /**
+     * Approximate size of an object header, and of an array header including its length.
+     */
+    private static final int OBJECT_HEADER_BYTES = 16;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final IntObjectMap<PostingList> postings = new IntObjectMap<>();
+    private long size;
+
+    /**
+     * Adds a message to its author's postings.
+     * @param posted_by The account_id of the author.
+     * @param message_id The message_id of the new message.
+     * @param time_posted_epoch The time the message was posted.
+     */
+    public void add(int posted_by, int message_id, long time_posted_epoch) {
+        lock.writeLock().lock();
+        try {
+            PostingList list = postings.get(posted_by);
+            if (list == null) {
+                list = new PostingList();
+                postings.put(posted_by, list);
+            }
+            if (list.add(message_id, time_posted_epoch)) size++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a message from its author's postings.
+     * @param posted_by The account_id of the author.
+     * @param message_id The message_id of the removed message.
+     * @param time_posted_epoch The time the message was posted.
+     * @return true if the message was indexed.
+     */
+    public boolean remove(int posted_by, int message_id, long time_posted_epoch) {
+        lock.writeLock().lock();
+        try {
+            PostingList list = postings.get(posted_by);
+            if (list == null || !list.remove(message_id, time_posted_epoch)) return false;
+            size--;
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @param posted_by The account_id of the author.
+     * @return a copy of the author's message_ids, oldest first. Empty if the author has no messages.
+     */
+    public int[] messageIDs(int posted_by) {
+        lock.readLock().lock();
+        try {
+            PostingList list = postings.get(posted_by);
+            return list == null ? new int[0] : Arrays.copyOf(list.ids, list.size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @param posted_by The account_id of the author.
+     * @return the number of messages the author has posted.
+     */
+    public int count(int posted_by) {
+        lock.readLock().lock();
+        try {
+            PostingList list = postings.get(posted_by);
+            return list == null ? 0 : list.size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of messages indexed.
+     */
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the approximate heap used by the index, in bytes, including unused array capacity.
+     */
+    public long estimatedBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = postings.estimatedBytes();
+            for (Object value : postings.values) {
+                if (value == null) continue;
+                PostingList list = (PostingList) value;
+                bytes += OBJECT_HEADER_BYTES + 16
+                        + OBJECT_HEADER_BYTES + 4L * list.ids.length
+                        + OBJECT_HEADER_BYTES + 8L * list.epochs.length;
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        long messages = size();
+        long bytes = estimatedBytes();
+        return "MessageIndex[messages=" + messages + ", authors=" + postings.size + ", bytes=" + bytes
+                + ", bytesPerMessage=" + (messages == 0 ? 0 : bytes / messages) + "]";
+    }
+
+    /**
+     * One author's message_ids and their time_posted_epochs in parallel arrays, sorted by (epoch, id).
+     */
+    private static class PostingList {
+        int[] ids = new int[4];
+        long[] epochs = new long[4];
+        int size;
+
+        /**
+         * @return false if the message was already present.
+         */
+        boolean add(int message_id, long time_posted_epoch) {
+            int index = search(message_id, time_posted_epoch);
+            if (index >= 0) return false;
+            index = -index - 1;
+            if (size == ids.length) {
+                int capacity = size + (size >> 1) + 1;
+                ids = Arrays.copyOf(ids, capacity);
+                epochs = Arrays.copyOf(epochs, capacity);
+            }
+            // messages almost always arrive newest last, so this rarely moves anything.
+            System.arraycopy(ids, index, ids, index + 1, size - index);
+            System.arraycopy(epochs, index, epochs, index + 1, size - index);
+            ids[index] = message_id;
+            epochs[index] = time_posted_epoch;
+            size++;
+            return true;
+        }
+
+        boolean remove(int message_id, long time_posted_epoch) {
+            int index = search(message_id, time_posted_epoch);
+            if (index < 0) return false;
+            System.arraycopy(ids, index + 1, ids, index, size - index - 1);
+            System.arraycopy(epochs, index + 1, epochs, index, size - index - 1);
+            size--;
+            return true;
+        }
+
+        /**
+         * @return the index of the message, or (-(insertion point) - 1) if it is absent, as Arrays.binarySearch does.
+         */
+        int search(int message_id, long time_posted_epoch) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = epochs[mid] != time_posted_epoch
+                        ? Long.compare(epochs[mid], time_posted_epoch)
+                        : Integer.compare(ids[mid], message_id);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+    }
+
+    /**
+     * An open-addressing hash map from int keys to non-null values, using linear probing. Entries are never removed.
+     */
+    private static class IntObjectMap<V> {
+        int[] keys = new int[INITIAL_CAPACITY];
+        Object[] values = new Object[INITIAL_CAPACITY];
+        int size;
+
+        @SuppressWarnings("unchecked")
+        V get(int key) {
+            int mask = keys.length - 1;
+            for (int slot = mix(key) & mask; values[slot] != null; slot = (slot + 1) & mask) {
+                if (keys[slot] == key) return (V) values[slot];
+            }
+            return null;
+        }
+
+        void put(int key, V value) {
+            // keep the load factor at or below 1/2 so probe sequences stay short.
+            if ((size + 1) * 2 > keys.length) resize(keys.length * 2);
+            int mask = keys.length - 1;
+            int slot = mix(key) & mask;
+            while (values[slot] != null) {
+                if (keys[slot] == key) {
+                    values[slot] = value;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = key;
+            values[slot] = value;
+            size++;
+        }
+
+        long estimatedBytes() {
+            return OBJECT_HEADER_BYTES + 8 + OBJECT_HEADER_BYTES + 4L * keys.length + OBJECT_HEADER_BYTES + 4L * values.length;
+        }
+
+        private void resize(int capacity) {
+            int[] oldKeys = keys;
+            Object[] oldValues = values;
+            keys = new int[capacity];
+            values = new Object[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] == null) continue;
+                int slot = mix(oldKeys[i]) & mask;
+                while (values[slot] != null) slot = (slot + 1) & mask;
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+
+        /**
+         * Spreads sequential account_ids across the table.
+         */
+        private static int mix(int key) {
+            int hash = key * 0x9E3779B9;
+            return hash ^ (hash >>> 16);
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package Util;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * The process-wide registry of metrics, written out in the Prometheus text exposition format by writeTo().
+ *
+ * A metric family has a name, help text and type, and one series per label set. Counters and histograms are owned
+ * here and handed out once, so callers keep a reference and record into it without a lookup; gauges and counters that
+ * other classes already keep (pool sizes, cache hits) are registered as suppliers and read only when the metrics are
+ * written. Registering the same name and labels again returns the existing counter or histogram, and replaces a
+ * supplier, so a component constructed twice reports its newest instance.
+ *
+ * Label sets are given preformatted, e.g. route="/messages",method="GET", and must be escaped by the caller.
+ */
+public class Metrics {
+
+    private static final Map<String, Family> families = new ConcurrentSkipListMap<>();
+    private static final double[] LATENCY_BOUNDS_SECONDS = latencyBoundsSeconds();
+
+    static {
+        registerJvmMetrics();
+    }
+
+    private Metrics() {
+    }
+
+    /**
+     * @return the counter with this name and labels, created at 0 if it doesn't exist yet.
+     */
+    public static LongAdder counter(String name, String help, String labels) {
+        return (LongAdder) family(name, help, "counter").series.computeIfAbsent(labels, key -> new LongAdder());
+    }
+
+    /**
+     * @return the histogram with this name and labels, created empty if it doesn't exist yet. It is written in seconds.
+     */
+    public static LatencyHistogram histogram(String name, String help, String labels) {
+        return (LatencyHistogram) family(name, help, "histogram").series.computeIfAbsent(labels, key -> new LatencyHistogram());
+    }
+
+    /**
+     * @return the histogram timing calls to one DAO method, reported as dao_call_seconds.
+     */
+    public static LatencyHistogram daoTimer(Class<?> dao, String method) {
+        return histogram("dao_call_seconds", "Time spent in each DAO method, including waiting for a connection.",
+                "dao=\"" + dao.getSimpleName() + "\",method=\"" + method + "\"");
+    }
+
+    /**
+     * Registers a gauge read from value whenever the metrics are written.
+     */
+    public static void gauge(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "gauge").series.put(labels, value);
+    }
+
+    /**
+     * Registers a counter kept elsewhere, read from value whenever the metrics are written.
+     */
+    public static void counterFunction(String name, String help, String labels, DoubleSupplier value) {
+        family(name, help, "counter").series.put(labels, value);
+    }
+
+    /**
+     * Registers a histogram kept elsewhere, read from counts and sum whenever the metrics are written.
+     * @param upperBounds The inclusive upper bound of each bucket, in increasing order.
+     * @param counts Supplies the number of observations in each bucket, with one more trailing overflow bucket if
+     * observations can exceed the last bound.
+     * @param sum Supplies the sum of all observations.
+     */
+    public static void histogramFunction(String name, String help, String labels, double[] upperBounds,
+            Supplier<long[]> counts, DoubleSupplier sum) {
+        family(name, help, "histogram").series.put(labels, new HistogramFunction(upperBounds.clone(), counts, sum));
+    }
+
+    /**
+     * Writes every metric in the Prometheus text exposition format (version 0.0.4), families in name order.
+     * @param out The StringBuilder to append to.
+     */
+    public static void writeTo(StringBuilder out) {
+        for (Family family : families.values()) {
+            out.append("# HELP ").append(family.name).append(' ').append(family.help).append('\n');
+            out.append("# TYPE ").append(family.name).append(' ').append(family.type).append('\n');
+            for (Map.Entry<String, Object> series : family.series.entrySet()) {
+                String labels = series.getKey();
+                Object value = series.getValue();
+                if (value instanceof LatencyHistogram) {
+                    LatencyHistogram histogram = (LatencyHistogram) value;
+                    writeHistogram(out, family.name, labels, LATENCY_BOUNDS_SECONDS, histogram.getBucketCounts(),
+                            histogram.getSumNanos() / 1e9);
+                } else if (value instanceof HistogramFunction) {
+                    HistogramFunction histogram = (HistogramFunction) value;
+                    writeHistogram(out, family.name, labels, histogram.upperBounds, histogram.counts.get(),
+                            histogram.sum.getAsDouble());
+                } else if (value instanceof LongAdder) {
+                    writeSample(out, family.name, labels, ((LongAdder) value).sum());
+                } else {
+                    writeSample(out, family.name, labels, ((DoubleSupplier) value).getAsDouble());
+                }
+            }
+        }
+    }
+
+    /**
+     * Escapes a label value: backslash, double quote and newline.
+     */
+    public static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+
+    private static Family family(String name, String help, String type) {
+        Family family = families.computeIfAbsent(name, key -> new Family(name, help, type));
+        if (!family.type.equals(type)) {
+            throw new IllegalArgumentException(name + " is already registered as a " + family.type);
+        }
+        return family;
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, double[] bounds, long[] counts,
+            double sum) {
+        String prefix = labels.isEmpty() ? "" : labels + ",";
+        long cumulative = 0;
+        for (int i = 0; i < bounds.length; i++) {
+            cumulative += counts[i];
+            writeSample(out, name + "_bucket", prefix + "le=\"" + bounds[i] + "\"", cumulative);
+        }
+        if (counts.length > bounds.length) cumulative += counts[bounds.length];
+        writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", cumulative);
+        writeSample(out, name + "_sum", labels, sum);
+        // the count is taken from the buckets so it always matches the +Inf bucket, even while records race this read.
+        writeSample(out, name + "_count", labels, cumulative);
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, double value) {
+        out.append(name);
+        if (!labels.isEmpty()) out.append('{').append(labels).append('}');
+        out.append(' ');
+        if (value == (long) value) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static double[] latencyBoundsSeconds() {
+        long[] nanos = LatencyHistogram.getUpperBounds();
+        double[] seconds = new double[nanos.length];
+        for (int i = 0; i < nanos.length; i++) seconds[i] = nanos[i] / 1e9;
+        return seconds;
+    }
+
+    private static void registerJvmMetrics() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        gauge("jvm_memory_used_bytes", "Memory in use.", "area=\"heap\"", () -> memory.getHeapMemoryUsage().getUsed());
+        gauge("jvm_memory_used_bytes", "Memory in use.", "area=\"nonheap\"", () -> memory.getNonHeapMemoryUsage().getUsed());
+        gauge("jvm_memory_committed_bytes", "Memory committed by the JVM.", "area=\"heap\"",
+                () -> memory.getHeapMemoryUsage().getCommitted());
+        gauge("jvm_memory_committed_bytes", "Memory committed by the JVM.", "area=\"nonheap\"",
+                () -> memory.getNonHeapMemoryUsage().getCommitted());
+        gauge("jvm_memory_max_bytes", "Largest heap the JVM will use, or -1 if undefined.", "area=\"heap\"",
+                () -> memory.getHeapMemoryUsage().getMax());
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            String labels = "gc=\"" + escape(collector.getName()) + "\"";
+            counterFunction("jvm_gc_collections_total", "Garbage collections run.", labels, collector::getCollectionCount);
+            counterFunction("jvm_gc_collection_seconds_total", "Time spent in garbage collection.", labels,
+                    () -> collector.getCollectionTime() / 1e3);
+        }
+        gauge("jvm_threads_live", "Live threads, including daemon threads.", "",
+                ManagementFactory.getThreadMXBean()::getThreadCount);
+        gauge("process_uptime_seconds", "Time since the JVM started.", "",
+                () -> ManagementFactory.getRuntimeMXBean().getUptime() / 1e3);
+    }
+
+    /**
+     * A histogram registered by histogramFunction().
+     */
+    private static class HistogramFunction {
+        final double[] upperBounds;
+        final Supplier<long[]> counts;
+        final DoubleSupplier sum;
+
+        HistogramFunction(double[] upperBounds, Supplier<long[]> counts, DoubleSupplier sum) {
+            this.upperBounds = upperBounds;
+            this.counts = counts;
+            this.sum = sum;
+        }
+    }
+
+    /**
+     * One metric name: its help, type and every series, keyed by label set.
+     */
+    private static class Family {
+        final String name;
+        final String help;
+        final String type;
+        final Map<String, Object> series = new ConcurrentSkipListMap<>();
+
+        Family(String name, String help, String type) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+        }
+    }
+}
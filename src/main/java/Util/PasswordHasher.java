@@ -0,0 +1,140 @@
+package Util;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Salted, deliberately slow password hashing with the JDK's PBKDF2WithHmacSHA256.
+ *
+ * Hashes are stored as pbkdf2-sha256$iterations$salt$hash, with the salt and hash in Base64, so the iteration count
+ * can be raised later without invalidating existing hashes; needsRehash() reports hashes made with a different count.
+ * A stored password not in that format is a plaintext row from before hashing was introduced, and is compared as-is
+ * so it can be upgraded on the account's next successful login.
+ *
+ * Also computes credential fingerprints: an HMAC-SHA256 of a username and password under a random key that only
+ * lives in this process, used to remember recently verified logins without keeping the passwords themselves.
+ */
+public class PasswordHasher {
+
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+
+    private final int iterations;
+    private final SecureRandom random = new SecureRandom();
+    private final SecretKeySpec fingerprintKey;
+    /**
+     * A hash of a random password, verified against when a username doesn't exist so that the response takes as long
+     * as for a wrong password.
+     */
+    private final String dummyHash;
+
+    /**
+     * @param iterations The PBKDF2 iteration count used for new hashes.
+     */
+    public PasswordHasher(int iterations) {
+        if (iterations < 1) throw new IllegalArgumentException("iterations must be positive");
+        this.iterations = iterations;
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        fingerprintKey = new SecretKeySpec(key, "HmacSHA256");
+        byte[] password = new byte[SALT_BYTES];
+        random.nextBytes(password);
+        dummyHash = hash(Base64.getEncoder().encodeToString(password));
+    }
+
+    /**
+     * @param password The plaintext password.
+     * @return the encoded salted hash of password, to be stored in place of it.
+     */
+    public String hash(String password) {
+        byte[] salt = new byte[SALT_BYTES];
+        random.nextBytes(salt);
+        Base64.Encoder encoder = Base64.getEncoder().withoutPadding();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$"
+                + encoder.encodeToString(pbkdf2(password, salt, iterations));
+    }
+
+    /**
+     * Checks password against a stored value in constant time.
+     * @param password The plaintext password submitted.
+     * @param stored The value stored for the account: an encoded hash, a legacy plaintext password, or null if there
+     *               is no such account, in which case a dummy hash is checked so the call costs the same.
+     * @return true if password matches.
+     */
+    public boolean verify(String password, String stored) {
+        if (stored == null) {
+            verify(password, dummyHash);
+            return false;
+        }
+        if (!isHash(stored)) {
+            return MessageDigest.isEqual(password.getBytes(StandardCharsets.UTF_8), stored.getBytes(StandardCharsets.UTF_8));
+        }
+        String[] parts = stored.split("\\$");
+        if (parts.length != 4) return false;
+        try {
+            Base64.Decoder decoder = Base64.getDecoder();
+            byte[] expected = decoder.decode(parts[3]);
+            return MessageDigest.isEqual(expected, pbkdf2(password, decoder.decode(parts[2]), Integer.parseInt(parts[1])));
+        } catch (IllegalArgumentException e) {
+            // a corrupt stored hash never matches.
+            return false;
+        }
+    }
+
+    /**
+     * @param stored The value stored for an account.
+     * @return true if stored is plaintext or was hashed with a different iteration count, so should be replaced by
+     * hash() once the password has been verified.
+     */
+    public boolean needsRehash(String stored) {
+        return !stored.startsWith(PREFIX + iterations + "$");
+    }
+
+    /**
+     * @param stored The value stored for an account.
+     * @return true if stored is an encoded hash rather than a legacy plaintext password.
+     */
+    public static boolean isHash(String stored) {
+        return stored.startsWith(PREFIX);
+    }
+
+    /**
+     * @param username The username submitted.
+     * @param password The password submitted.
+     * @return a Base64 HMAC identifying this exact pair of credentials, which reveals nothing about the password
+     * outside this process.
+     */
+    public String fingerprint(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(fingerprintKey);
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            // separates the fields, so ("ab", "c") and ("a", "bc") differ.
+            mac.update((byte) 0);
+            return Base64.getEncoder().encodeToString(mac.doFinal(password.getBytes(StandardCharsets.UTF_8)));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is unavailable", e);
+        }
+    }
+
+    private static byte[] pbkdf2(String password, byte[] salt, int iterations) {
+        PBEKeySpec spec = new PBEKeySpec(password.toCharArray(), salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(ALGORITHM + " is unavailable", e);
+        } finally {
+            spec.clearPassword();
+        }
+    }
+}
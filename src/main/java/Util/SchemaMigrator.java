@@ -0,0 +1,116 @@
+package Util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.h2.tools.RunScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Brings the database schema up to date by applying versioned SQL scripts from src/main/resources/db/migration.
+ * Each script is applied at most once; applied versions are recorded in the schema_version table along with a
+ * checksum of the script, so an existing ./h2/db file only receives the migrations it hasn't seen yet.
+ *
+ * To change the schema, add a new V{n}__{description}.sql script and append its file name to MIGRATIONS.
+ * Never edit a script that has already been released.
+ */
+public class SchemaMigrator {
+
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrator.class);
+
+    private static final String MIGRATION_PATH = "db/migration/";
+
+    /**
+     * Every migration script, in the order they must be applied. Script n is version n.
+     */
+    private static final String[] MIGRATIONS = {
+            "V1__create_tables.sql",
+            "V2__message_indexes.sql",
+            "V3__follow.sql",
+    };
+
+    /**
+     * Applies every migration newer than the database's current version.
+     * @param connection The connection to run the migrations on.
+     * @return The number of migrations applied.
+     * @throws SQLException if a migration fails. Migrations before the failing one stay applied.
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("CREATE TABLE IF NOT EXISTS schema_version (" +
+                    "version int primary key, " +
+                    "description varchar(255), " +
+                    "checksum bigint, " +
+                    "installed_on timestamp default current_timestamp)");
+        }
+        Map<Integer, Long> applied = appliedVersions(connection);
+
+        int count = 0;
+        for (int i = 0; i < MIGRATIONS.length; i++) {
+            int version = i + 1;
+            String name = MIGRATIONS[i];
+            String script = load(name);
+            long checksum = checksum(script);
+
+            if (applied.containsKey(version)) {
+                if (applied.get(version) != checksum) {
+                    logger.warn("Migration {} has changed since it was applied to this database", name);
+                }
+                continue;
+            }
+
+            logger.info("Applying migration {}", name);
+            RunScript.execute(connection, new StringReader(script));
+            try (PreparedStatement preparedStatement = connection.prepareStatement(
+                    "INSERT INTO schema_version (version, description, checksum) VALUES (?, ?, ?);")) {
+                preparedStatement.setInt(1, version);
+                preparedStatement.setString(2, name);
+                preparedStatement.setLong(3, checksum);
+                preparedStatement.executeUpdate();
+            }
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * @return the version of every migration already applied, mapped to the checksum it had when applied.
+     */
+    private static Map<Integer, Long> appliedVersions(Connection connection) throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        try (Statement statement = connection.createStatement();
+                ResultSet rs = statement.executeQuery("SELECT version, checksum FROM schema_version;")) {
+            while (rs.next()) {
+                applied.put(rs.getInt(1), rs.getLong(2));
+            }
+        }
+        return applied;
+    }
+
+    private static String load(String name) throws SQLException {
+        InputStream in = SchemaMigrator.class.getClassLoader().getResourceAsStream(MIGRATION_PATH + name);
+        if (in == null) throw new SQLException("Migration script not found on classpath: " + MIGRATION_PATH + name);
+        try (in) {
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new SQLException("Could not read migration script " + name, e);
+        }
+    }
+
+    private static long checksum(String script) {
+        CRC32 crc = new CRC32();
+        crc.update(script.getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
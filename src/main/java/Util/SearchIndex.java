@@ -0,0 +1,702 @@
+package Util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An in-memory full-text index over message_text: each term maps to the message_ids containing it, with the number of
+ * times it occurs in each. Each indexed version of a message is a document with its own number, handed out in
+ * increasing order, so posting lists only ever grow at their end. They are compressed as varint-encoded document
+ * number gaps and term frequencies, so a posting usually takes two or three bytes. Document lengths and times are
+ * kept in arrays indexed by document number.
+ *
+ * Removing or replacing a message never rewrites its postings: its document is marked deleted, search() skips it, and
+ * a replacement is indexed as a new document. Once deleted documents outnumber live ones, the next write compacts
+ * the index, renumbering the live documents and dropping the deleted postings in one pass.
+ *
+ * replace() and remove() name the text they expect to be indexed for the message. Concurrent writes to the same
+ * message can reach the index out of order, so a write whose expected text isn't indexed yet is held back until the
+ * write that indexes that text arrives, keeping the index in step with the order of the writes to the database.
+ *
+ * Text is split into terms at every character that is not a letter or digit, and lowercased. search() ranks every
+ * message containing at least one query term by its BM25 score plus a recency boost of recencyWeight that halves every
+ * recencyHalfLifeSeconds before the newest indexed message.
+ *
+ * The index is safe for concurrent use; writers are serialized.
+ */
+public class SearchIndex {
+
+    /**
+     * BM25 term frequency saturation.
+     */
+    private static final double K1 = 1.2;
+    /**
+     * BM25 document length normalization.
+     */
+    private static final double B = 0.75;
+    /**
+     * Terms longer than this are truncated, so one pathological message can't grow the dictionary without bound.
+     */
+    private static final int MAX_TERM_LENGTH = 64;
+    /**
+     * Deleted documents are never compacted away while there are fewer than this many.
+     */
+    private static final int MIN_COMPACTION_DOCUMENTS = 4096;
+    /**
+     * The most messages with held-back writes. Beyond it the oldest are dropped, since their expected text can no
+     * longer arrive.
+     */
+    private static final int MAX_HELD_BACK = 10_000;
+    /**
+     * The largest ScoreMap a search thread keeps for its next query. Bigger ones, sized for an unusually common set of
+     * terms, are dropped after the query rather than pinned to the thread.
+     */
+    private static final int MAX_RETAINED_SCORE_SLOTS = 1 << 16;
+
+    /**
+     * Each searching thread's ScoreMap, reused across queries so scoring several terms doesn't allocate arrays sized
+     * to their postings every time.
+     */
+    private static final ThreadLocal<ScoreMap> scoreMaps = ThreadLocal.withInitial(ScoreMap::new);
+
+    private final double recencyWeight;
+    private final double recencyHalfLifeSeconds;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PostingList> postings = new HashMap<>();
+    /**
+     * The document currently indexing each message, by message_id, 0 if it isn't indexed.
+     */
+    private int[] documentsByID = new int[1024];
+    /**
+     * The message_id of each document, by document number.
+     */
+    private int[] messageIDs = new int[1024];
+    /**
+     * Number of terms in each document, 0 once it is deleted.
+     */
+    private int[] lengths = new int[1024];
+    private long[] epochs = new long[1024];
+    /**
+     * The hashCode() of each document's text, which replace() and remove() check their expected text against.
+     */
+    private int[] textHashes = new int[1024];
+    /**
+     * The number the next document gets. Document 0 is never used.
+     */
+    private int nextDocument = 1;
+    private long documents;
+    private long deletedDocuments;
+    private long totalLength;
+    private long newestEpoch = Long.MIN_VALUE;
+    /**
+     * Writes held back until the text they expect is indexed, by message_id, oldest message first.
+     */
+    private final LinkedHashMap<Integer, List<HeldBack>> heldBack = new LinkedHashMap<>();
+
+    /**
+     * @param recencyWeight The score added to a message posted at the same time as the newest indexed message.
+     * @param recencyHalfLifeSeconds How much older a message must be for its recency boost to halve.
+     */
+    public SearchIndex(double recencyWeight, double recencyHalfLifeSeconds) {
+        if (recencyWeight < 0 || recencyHalfLifeSeconds <= 0) {
+            throw new IllegalArgumentException("Invalid recency settings: weight=" + recencyWeight
+                    + ", halfLifeSeconds=" + recencyHalfLifeSeconds);
+        }
+        this.recencyWeight = recencyWeight;
+        this.recencyHalfLifeSeconds = recencyHalfLifeSeconds;
+    }
+
+    /**
+     * Splits text into lowercase terms.
+     * @param text The text to split.
+     * @return the terms of text, in order, including repeats.
+     */
+    public static List<String> tokenize(String text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) return terms;
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean termChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (termChar && start < 0) {
+                start = i;
+            } else if (!termChar && start >= 0) {
+                terms.add(text.substring(start, Math.min(i, start + MAX_TERM_LENGTH)).toLowerCase());
+                start = -1;
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * Indexes a new message. Does nothing if message_id is already indexed.
+     * @param message_id The message_id of the message.
+     * @param text The message_text of the message.
+     * @param time_posted_epoch The time the message was posted.
+     */
+    public void add(int message_id, String text, long time_posted_epoch) {
+        if (message_id < 0) return;
+        List<String> terms = tokenize(text);
+        Map<String, Integer> frequencies = frequencies(terms);
+        lock.writeLock().lock();
+        try {
+            if (isIndexed(message_id)) return;
+            index(message_id, text, terms.size(), frequencies, time_posted_epoch);
+            applyHeldBack(message_id);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Replaces the text of an indexed message, as one step. If the message isn't indexed with oldText yet, because
+     * the write that set it hasn't reached the index, the replacement is held back until it has.
+     * @param message_id The message_id of the message.
+     * @param oldText The message_text the write replaced.
+     * @param newText The message_text the write set.
+     * @return true if the replacement was applied now, false if it was held back.
+     */
+    public boolean replace(int message_id, String oldText, String newText) {
+        if (message_id < 0) return false;
+        List<String> terms = tokenize(newText);
+        Map<String, Integer> frequencies = frequencies(terms);
+        Set<String> oldTerms = new LinkedHashSet<>(tokenize(oldText));
+        lock.writeLock().lock();
+        try {
+            if (!isIndexedWith(message_id, oldText)) {
+                holdBack(message_id, new HeldBack(oldText, newText));
+                return false;
+            }
+            long time_posted_epoch = epochs[documentsByID[message_id]];
+            unindex(message_id, oldTerms);
+            index(message_id, newText, terms.size(), frequencies, time_posted_epoch);
+            applyHeldBack(message_id);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Removes a message from the index. If the message isn't indexed with text yet, because the write that set it
+     * hasn't reached the index, the removal is held back until it has.
+     * @param message_id The message_id of the message.
+     * @param text The message_text the message had when it was deleted.
+     * @return true if the message was removed now, false if the removal was held back.
+     */
+    public boolean remove(int message_id, String text) {
+        if (message_id < 0) return false;
+        Set<String> terms = new LinkedHashSet<>(tokenize(text));
+        lock.writeLock().lock();
+        try {
+            if (!isIndexedWith(message_id, text)) {
+                holdBack(message_id, new HeldBack(text, null));
+                return false;
+            }
+            unindex(message_id, terms);
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the best matching messages for a query.
+     * @param query The search text, split into terms the same way as message text.
+     * @param limit The most message_ids to return.
+     * @return the message_ids of up to limit messages containing any query term, best match first.
+     */
+    public int[] search(String query, int limit) {
+        Set<String> terms = new LinkedHashSet<>(tokenize(query));
+        if (terms.isEmpty() || limit <= 0) return new int[0];
+
+        TopScores best = new TopScores(limit);
+        lock.readLock().lock();
+        try {
+            if (documents == 0) return new int[0];
+            List<PostingList> lists = new ArrayList<>(terms.size());
+            int candidates = 0;
+            for (String term : terms) {
+                PostingList list = postings.get(term);
+                if (list == null) continue;
+                lists.add(list);
+                candidates += list.count;
+            }
+            double averageLength = (double) totalLength / documents;
+            double decay = -Math.log(2) / recencyHalfLifeSeconds;
+            if (lists.size() == 1) {
+                // a single term scores each message once, so messages go straight into the top scores.
+                PostingList list = lists.get(0);
+                double idf = idf(list);
+                list.forEach((document, frequency) -> {
+                    if (lengths[document] != 0) {
+                        best.offer(messageIDs[document], bm25(idf, frequency, document, averageLength) + recency(document, decay));
+                    }
+                });
+            } else if (!lists.isEmpty()) {
+                ScoreMap scores = scoreMaps.get();
+                scores.ensureCapacity(candidates);
+                try {
+                    for (PostingList list : lists) {
+                        double idf = idf(list);
+                        list.forEach((document, frequency) -> {
+                            if (lengths[document] != 0) scores.add(document, bm25(idf, frequency, document, averageLength));
+                        });
+                    }
+                    for (int i = 0; i < scores.count; i++) {
+                        int slot = scores.used[i];
+                        int document = scores.keys[slot];
+                        best.offer(messageIDs[document], scores.values[slot] + recency(document, decay));
+                    }
+                } finally {
+                    scores.clear();
+                    if (scores.keys.length > MAX_RETAINED_SCORE_SLOTS) scoreMaps.remove();
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return best.toArray();
+    }
+
+    /**
+     * @return the number of messages indexed.
+     */
+    public long size() {
+        lock.readLock().lock();
+        try {
+            return documents;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of distinct terms indexed.
+     */
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the bytes used by the compressed posting lists, excluding unused capacity.
+     */
+    public long postingBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = 0;
+            for (PostingList list : postings.values()) bytes += list.size;
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the number of deleted documents whose postings are still held, until the next compaction.
+     */
+    public long deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deletedDocuments;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "SearchIndex[messages=" + size() + ", terms=" + termCount() + ", postingBytes=" + postingBytes()
+                + ", deleted=" + deletedCount() + "]";
+    }
+
+    private boolean isIndexed(int message_id) {
+        return message_id < documentsByID.length && documentsByID[message_id] != 0;
+    }
+
+    private boolean isIndexedWith(int message_id, String text) {
+        return isIndexed(message_id) && textHashes[documentsByID[message_id]] == String.valueOf(text).hashCode();
+    }
+
+    /**
+     * Indexes text as a new document for message_id, which must not be indexed.
+     */
+    private void index(int message_id, String text, int length, Map<String, Integer> frequencies, long time_posted_epoch) {
+        int document = nextDocument++;
+        ensureDocumentCapacity(document);
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            postings.computeIfAbsent(entry.getKey(), term -> new PostingList()).append(document, entry.getValue());
+        }
+        if (message_id >= documentsByID.length) {
+            documentsByID = Arrays.copyOf(documentsByID, Math.max(message_id + 1, documentsByID.length + (documentsByID.length >> 1)));
+        }
+        documentsByID[message_id] = document;
+        messageIDs[document] = message_id;
+        // an empty message still counts as a document, with the length of one term.
+        lengths[document] = Math.max(1, length);
+        epochs[document] = time_posted_epoch;
+        textHashes[document] = String.valueOf(text).hashCode();
+        documents++;
+        totalLength += lengths[document];
+        newestEpoch = Math.max(newestEpoch, time_posted_epoch);
+    }
+
+    /**
+     * Marks message_id's document deleted. terms must be the distinct terms of the text it was indexed with.
+     */
+    private void unindex(int message_id, Set<String> terms) {
+        int document = documentsByID[message_id];
+        for (String term : terms) {
+            PostingList list = postings.get(term);
+            if (list != null && ++list.deleted == list.count) postings.remove(term);
+        }
+        documents--;
+        deletedDocuments++;
+        totalLength -= lengths[document];
+        lengths[document] = 0;
+        documentsByID[message_id] = 0;
+    }
+
+    private void holdBack(int message_id, HeldBack write) {
+        heldBack.computeIfAbsent(message_id, key -> new ArrayList<>()).add(write);
+        if (heldBack.size() > MAX_HELD_BACK) {
+            Iterator<Integer> eldest = heldBack.keySet().iterator();
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Applies the writes held back for message_id that now find their expected text indexed, in turn.
+     */
+    private void applyHeldBack(int message_id) {
+        List<HeldBack> writes = heldBack.get(message_id);
+        while (writes != null) {
+            HeldBack next = null;
+            for (HeldBack write : writes) {
+                if (isIndexedWith(message_id, write.oldText)) {
+                    next = write;
+                    break;
+                }
+            }
+            if (next == null) return;
+            writes.remove(next);
+            if (writes.isEmpty()) {
+                heldBack.remove(message_id);
+                writes = null;
+            }
+            long time_posted_epoch = epochs[documentsByID[message_id]];
+            unindex(message_id, new LinkedHashSet<>(tokenize(next.oldText)));
+            if (next.newText != null) {
+                List<String> terms = tokenize(next.newText);
+                index(message_id, next.newText, terms.size(), frequencies(terms), time_posted_epoch);
+            }
+        }
+    }
+
+    /**
+     * Renumbers the live documents from 1 and re-encodes every posting list without the deleted documents, once they
+     * outnumber the live ones. The cost of a compaction is paid for by the deletions since the last one.
+     */
+    private void compactIfNeeded() {
+        if (deletedDocuments < Math.max(MIN_COMPACTION_DOCUMENTS, documents)) return;
+        int[] renumbered = new int[nextDocument];
+        int live = 1;
+        for (int document = 1; document < nextDocument; document++) {
+            if (lengths[document] != 0) renumbered[document] = live++;
+        }
+        int capacity = Math.max(1024, live + (live >> 1));
+        int[] newMessageIDs = new int[capacity];
+        int[] newLengths = new int[capacity];
+        long[] newEpochs = new long[capacity];
+        int[] newTextHashes = new int[capacity];
+        for (int document = 1; document < nextDocument; document++) {
+            int target = renumbered[document];
+            if (target == 0) continue;
+            newMessageIDs[target] = messageIDs[document];
+            newLengths[target] = lengths[document];
+            newEpochs[target] = epochs[document];
+            newTextHashes[target] = textHashes[document];
+            documentsByID[messageIDs[document]] = target;
+        }
+        for (PostingList list : postings.values()) list.compact(renumbered);
+        messageIDs = newMessageIDs;
+        lengths = newLengths;
+        epochs = newEpochs;
+        textHashes = newTextHashes;
+        nextDocument = live;
+        deletedDocuments = 0;
+    }
+
+    private static Map<String, Integer> frequencies(List<String> terms) {
+        Map<String, Integer> frequencies = new HashMap<>();
+        for (String term : terms) frequencies.merge(term, 1, Integer::sum);
+        return frequencies;
+    }
+
+    private double idf(PostingList list) {
+        int live = list.count - list.deleted;
+        return Math.log(1 + (documents - live + 0.5) / (live + 0.5));
+    }
+
+    private double bm25(double idf, int frequency, int document, double averageLength) {
+        double norm = K1 * (1 - B + B * lengths[document] / averageLength);
+        return idf * frequency * (K1 + 1) / (frequency + norm);
+    }
+
+    private double recency(int document, double decay) {
+        return recencyWeight * Math.exp((newestEpoch - epochs[document]) * decay);
+    }
+
+    private void ensureDocumentCapacity(int document) {
+        if (document < lengths.length) return;
+        int capacity = Math.max(document + 1, lengths.length + (lengths.length >> 1));
+        messageIDs = Arrays.copyOf(messageIDs, capacity);
+        lengths = Arrays.copyOf(lengths, capacity);
+        epochs = Arrays.copyOf(epochs, capacity);
+        textHashes = Arrays.copyOf(textHashes, capacity);
+    }
+
+    /**
+     * A replace() or remove() waiting for the message to be indexed with oldText.
+     */
+    private static class HeldBack {
+        final String oldText;
+        /**
+         * The text to index in its place, or null to remove the message.
+         */
+        final String newText;
+
+        HeldBack(String oldText, String newText) {
+            this.oldText = oldText;
+            this.newText = newText;
+        }
+    }
+
+    /**
+     * An open-addressing hash map from document number to score, grown up front to fit the number of postings being
+     * scored so that scoring a common term neither boxes nor resizes. It remembers which slots it filled, so clear()
+     * and iteration only touch those rather than the whole table, and it can be reused for the next query.
+     */
+    private static class ScoreMap {
+        static final int EMPTY = -1;
+
+        int[] keys = new int[0];
+        double[] values = new double[0];
+        /**
+         * The slots filled since the last clear(), in the order they were filled.
+         */
+        int[] used = new int[0];
+        int count;
+
+        /**
+         * Grows the empty map, if needed, to hold expected documents at most half full.
+         */
+        void ensureCapacity(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            if (keys.length >= capacity) return;
+            keys = new int[capacity];
+            values = new double[capacity];
+            used = new int[capacity / 2];
+            Arrays.fill(keys, EMPTY);
+        }
+
+        void add(int document, double score) {
+            int mask = keys.length - 1;
+            int hash = document * 0x9E3779B9;
+            int slot = (hash ^ (hash >>> 16)) & mask;
+            while (keys[slot] != EMPTY && keys[slot] != document) slot = (slot + 1) & mask;
+            if (keys[slot] == EMPTY) {
+                keys[slot] = document;
+                used[count++] = slot;
+            }
+            values[slot] += score;
+        }
+
+        /**
+         * Empties the filled slots.
+         */
+        void clear() {
+            for (int i = 0; i < count; i++) {
+                keys[used[i]] = EMPTY;
+                values[used[i]] = 0;
+            }
+            count = 0;
+        }
+    }
+
+    /**
+     * The limit best scoring messages offered so far, kept in a min-heap whose root is the worst of them.
+     */
+    private static class TopScores {
+        final int[] message_ids;
+        final double[] scores;
+        int size;
+
+        TopScores(int limit) {
+            message_ids = new int[limit];
+            scores = new double[limit];
+        }
+
+        void offer(int message_id, double score) {
+            if (size < message_ids.length) {
+                message_ids[size] = message_id;
+                scores[size] = score;
+                siftUp(size++);
+            } else if (isBetter(score, message_id, scores[0], message_ids[0])) {
+                message_ids[0] = message_id;
+                scores[0] = score;
+                siftDown();
+            }
+        }
+
+        /**
+         * Empties the heap.
+         * @return the message_ids offered with the highest scores, highest first; ties go to the newer message_id.
+         */
+        int[] toArray() {
+            int[] best = new int[size];
+            while (size > 0) {
+                best[--size] = message_ids[0];
+                message_ids[0] = message_ids[size];
+                scores[0] = scores[size];
+                siftDown();
+            }
+            return best;
+        }
+
+        private static boolean isBetter(double score, int message_id, double otherScore, int other_id) {
+            return score != otherScore ? score > otherScore : message_id > other_id;
+        }
+
+        private boolean isBetter(int index, int other) {
+            return isBetter(scores[index], message_ids[index], scores[other], message_ids[other]);
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (!isBetter(parent, index)) return;
+                swap(parent, index);
+                index = parent;
+            }
+        }
+
+        private void siftDown() {
+            int index = 0;
+            while (true) {
+                int worst = index;
+                int left = 2 * index + 1;
+                if (left < size && isBetter(worst, left)) worst = left;
+                if (left + 1 < size && isBetter(worst, left + 1)) worst = left + 1;
+                if (worst == index) return;
+                swap(worst, index);
+                index = worst;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int message_id = message_ids[a];
+            message_ids[a] = message_ids[b];
+            message_ids[b] = message_id;
+            double score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+        }
+    }
+
+    /**
+     * Receives one posting at a time from PostingList.forEach.
+     */
+    private interface PostingConsumer {
+        void accept(int document, int frequency);
+    }
+
+    /**
+     * One term's postings, in increasing document order, as varint pairs: the gap from the previous document, then
+     * the term's frequency in that document. Postings of deleted documents stay until the next compaction.
+     */
+    private static class PostingList {
+        byte[] data = new byte[8];
+        int size;
+        /**
+         * Postings held, including those of deleted documents.
+         */
+        int count;
+        /**
+         * Postings held for deleted documents.
+         */
+        int deleted;
+        int lastDocument = 0;
+
+        void append(int document, int frequency) {
+            if (size + 10 > data.length) data = Arrays.copyOf(data, data.length + (data.length >> 1) + 10);
+            size = writeVarint(frequency, writeVarint(document - lastDocument, size));
+            lastDocument = document;
+            count++;
+        }
+
+        void forEach(PostingConsumer consumer) {
+            int position = 0;
+            int document = 0;
+            while (position < size) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+                    gap |= (b & 0x7F) << shift;
+                    if (b >= 0) break;
+                }
+                int frequency = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = data[position++];
+                    frequency |= (b & 0x7F) << shift;
+                    if (b >= 0) break;
+                }
+                document += gap;
+                consumer.accept(document, frequency);
+            }
+        }
+
+        /**
+         * Re-encodes the postings under their new document numbers, dropping those of deleted documents.
+         * @param renumbered The new number of each document, 0 for deleted documents.
+         */
+        void compact(int[] renumbered) {
+            PostingList compacted = new PostingList();
+            compacted.data = new byte[Math.max(8, size)];
+            forEach((document, frequency) -> {
+                if (renumbered[document] != 0) compacted.append(renumbered[document], frequency);
+            });
+            data = compacted.data;
+            size = compacted.size;
+            count = compacted.count;
+            deleted = 0;
+            lastDocument = compacted.lastDocument;
+        }
+
+        private int writeVarint(int value, int position) {
+            while ((value & ~0x7F) != 0) {
+                data[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[position++] = (byte) value;
+            return position;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package Util;
+
+/**
+ * The time one request spent in each phase of its handling, reported back to the client in a Server-Timing response
+ * header so a slow request can be explained from the client side.
+ *
+ * A ServerTiming is created for each request when the http.serverTiming system property is set. All of its storage
+ * is allocated up front, so recording a phase only adds to an array slot. While a handler runs its ServerTiming is
+ * bound to the handler's thread, where the connection pool, the SQL profiler and the services find it through
+ * current(); code running elsewhere, such as the password hashing pool, is handed it explicitly. Only one thread
+ * records into a request's ServerTiming at a time, with each hand-off ordered by the future that passes the request
+ * on, so it needs no locking.
+ *
+ * Statement timings come from SqlProfiler, so they are only reported while db.profile is on.
+ */
+public class ServerTiming {
+
+    /**
+     * The name of the response header.
+     */
+    public static final String HEADER = "Server-Timing";
+    /**
+     * The number of SQL executions reported individually. Any further executions are summed into one sql-other entry.
+     */
+    public static final int MAX_STATEMENTS = 16;
+
+    /**
+     * The phases of a request, in the order they are reported. SQL executions are reported separately.
+     */
+    public enum Phase {
+        PARSE("parse", "Body parse"),
+        VALIDATE("validate", "Validation"),
+        ACQUIRE("db-acquire", "Connection acquire"),
+        SERIALIZE("serialize", "Body serialization");
+
+        private final String metric;
+        private final String description;
+
+        Phase(String metric, String description) {
+            this.metric = metric;
+            this.description = description;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final ThreadLocal<ServerTiming> current = new ThreadLocal<>();
+
+    private final long startNanos = System.nanoTime();
+    private final long[] phaseNanos = new long[PHASES.length];
+    private final long[] statementNanos = new long[MAX_STATEMENTS];
+    private int statements;
+    private long otherStatementNanos;
+
+    /**
+     * @return the ServerTiming bound to this thread, or null if the current request is not being timed.
+     */
+    public static ServerTiming current() {
+        return current.get();
+    }
+
+    /**
+     * Binds timing to this thread until unbind() is called.
+     * @param timing The ServerTiming of the request this thread is about to handle.
+     */
+    public static void bind(ServerTiming timing) {
+        current.set(timing);
+    }
+
+    /**
+     * Unbinds this thread's ServerTiming, if any.
+     */
+    public static void unbind() {
+        current.remove();
+    }
+
+    /**
+     * Adds the time since startNanos to a phase.
+     * @param phase The phase that just finished.
+     * @param startNanos The System.nanoTime() reading taken when the phase began.
+     */
+    public void record(Phase phase, long startNanos) {
+        phaseNanos[phase.ordinal()] += System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Records one SQL execution.
+     * @param nanos The execution's time from its execute call until its result set was closed.
+     */
+    public void statement(long nanos) {
+        if (statements < MAX_STATEMENTS) {
+            statementNanos[statements] = nanos;
+        } else {
+            otherStatementNanos += nanos;
+        }
+        statements++;
+    }
+
+    /**
+     * @return the value of the Server-Timing header, listing each phase that took any time, each SQL execution, and
+     * the total time since this ServerTiming was created, all in milliseconds.
+     */
+    public String toHeader() {
+        long total = System.nanoTime() - startNanos;
+        StringBuilder header = new StringBuilder(64 + 24 * Math.min(statements, MAX_STATEMENTS));
+        for (Phase phase : PHASES) {
+            long nanos = phaseNanos[phase.ordinal()];
+            if (nanos == 0) continue;
+            append(header, phase.metric, nanos).append(";desc=\"").append(phase.description).append('"');
+        }
+        for (int i = 0; i < Math.min(statements, MAX_STATEMENTS); i++) {
+            append(header, "sql-" + (i + 1), statementNanos[i]);
+        }
+        if (statements > MAX_STATEMENTS) {
+            append(header, "sql-other", otherStatementNanos)
+                    .append(";desc=\"").append(statements - MAX_STATEMENTS).append(" more statements\"");
+        }
+        return append(header, "total", total).toString();
+    }
+
+    /**
+     * Appends one metric with its duration, formatted as milliseconds with three decimal places.
+     */
+    private static StringBuilder append(StringBuilder header, String metric, long nanos) {
+        if (header.length() > 0) header.append(", ");
+        long micros = nanos / 1000;
+        long fraction = micros % 1000;
+        header.append(metric).append(";dur=").append(micros / 1000).append('.');
+        if (fraction < 100) header.append('0');
+        if (fraction < 10) header.append('0');
+        return header.append(fraction);
+    }
+}
@@ -0,0 +1,75 @@
+package Util;
+
+import java.sql.SQLException;
+
+import org.h2.api.ErrorCode;
+import org.slf4j.Logger;
+
+/**
+ * Classifies the SQLExceptions the DAOs catch, so constraint violations can be treated as the client errors they are
+ * rather than checked for with a query beforehand, and logs them consistently.
+ */
+public class SqlErrors {
+
+    /**
+     * H2's error code for a unique or primary key constraint violation, e.g. a username that is already taken.
+     */
+    public static final int UNIQUE_VIOLATION = ErrorCode.DUPLICATE_KEY_1;
+    /**
+     * H2's error code for a foreign key constraint violation on insert, e.g. posted_by naming an account that doesn't
+     * exist.
+     */
+    public static final int FOREIGN_KEY_VIOLATION = ErrorCode.REFERENTIAL_INTEGRITY_VIOLATED_PARENT_MISSING_1;
+
+    /**
+     * @param e The exception thrown by a statement.
+     * @return true if the statement violated a unique or primary key constraint.
+     */
+    public static boolean isUniqueViolation(SQLException e) {
+        return e.getErrorCode() == UNIQUE_VIOLATION;
+    }
+
+    /**
+     * @param e The exception thrown by a statement.
+     * @return true if the statement referenced a row that doesn't exist through a foreign key.
+     */
+    public static boolean isForeignKeyViolation(SQLException e) {
+        return e.getErrorCode() == FOREIGN_KEY_VIOLATION;
+    }
+
+    /**
+     * @param e The exception thrown by a statement.
+     * @return true if the statement violated a unique or foreign key constraint, i.e. was rejected for its input.
+     */
+    public static boolean isConstraintViolation(SQLException e) {
+        return isUniqueViolation(e) || isForeignKeyViolation(e);
+    }
+
+    /**
+     * Logs an exception caught by a DAO method that reports constraint violations as a failed result, and throws a
+     * DataAccessException for any other failure, which the caller's input did not cause.
+     * @param logger The DAO's logger.
+     * @param operation The DAO method that caught the exception.
+     * @param e The exception.
+     * @throws DataAccessException unless e is a constraint violation.
+     */
+    public static void logConstraintViolation(Logger logger, String operation, SQLException e) {
+        log(logger, operation, e);
+        if (!isConstraintViolation(e)) throw new DataAccessException(operation, e);
+    }
+
+    /**
+     * Logs an exception caught by a DAO method. Constraint violations are expected outcomes of bad input and are only
+     * logged at debug level; anything else is logged as an error with its stack trace.
+     * @param logger The DAO's logger.
+     * @param operation The DAO method that caught the exception.
+     * @param e The exception.
+     */
+    public static void log(Logger logger, String operation, SQLException e) {
+        if (isConstraintViolation(e)) {
+            logger.debug("{} rejected by constraint: {}", operation, e.getMessage());
+        } else {
+            logger.error("{} failed (SQLState {}, error code {})", operation, e.getSQLState(), e.getErrorCode(), e);
+        }
+    }
+}
@@ -0,0 +1,536 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Times every statement run through a wrapped connection and aggregates the timings per normalized SQL string, i.e.
+ * with literals replaced by ? and whitespace collapsed.
+ *
+ * Each execution is split into prepare (prepareStatement, including the statement cache lookup), execute (the
+ * execute call itself, where H2 plans and, for updates, runs the statement), fetch (time inside ResultSet.next()) and
+ * map (the rest of the time the result set stays open, i.e. the caller reading columns and building objects).
+ *
+ * An execution taking longer than slowQueryMillis in total is logged at warn together with the statement's plan:
+ * EXPLAIN ANALYZE for plain queries, which runs the query again with the same parameters, and EXPLAIN for statements
+ * that change data, which must not run twice. A statement is explained at most once per planIntervalMillis. Plans are
+ * read by a single background thread on a connection of its own from the pool, so the slow request neither waits for
+ * them nor has its connection used for them; while that thread is behind, further slow executions are logged without
+ * a plan. Parameter values are never logged, since statements bind password hashes among other things; only their
+ * types and lengths are.
+ *
+ * Every execution is also recorded as a FlightEvents.Statement event while that event is enabled, and in the
+ * executing thread's ServerTiming when its request is being timed.
+ *
+ * Wrapped connections, statements and result sets are proxies confined to the thread using them, like the objects
+ * they wrap; the statistics are shared and lock-free.
+ */
+public class SqlProfiler {
+
+    private static final Logger logger = LoggerFactory.getLogger(SqlProfiler.class);
+
+    /**
+     * Where executions of new statements are counted once maxStatements distinct statements have been seen.
+     */
+    static final String OTHER_STATEMENTS = "(other statements)";
+    /**
+     * The most plans waiting to be read.
+     */
+    private static final int MAX_PENDING_PLANS = 16;
+
+    private final long slowNanos;
+    private final long planIntervalNanos;
+    private final int maxStatements;
+    private final ConnectionPool planConnections;
+    private final ExecutorService planner;
+    private final Map<String, StatementStats> byNormalizedSql = new ConcurrentHashMap<>();
+    /**
+     * The same statistics keyed by the SQL as the DAOs wrote it, so most lookups skip normalize().
+     */
+    private final Map<String, StatementStats> bySql = new ConcurrentHashMap<>();
+
+    /**
+     * @param slowQueryMillis Executions taking at least this long are logged with their plan; negative to log none.
+     * @param planIntervalMillis The least time between two plans logged for the same statement.
+     * @param maxStatements The most distinct statements tracked separately.
+     * @param planConnections The pool slow statements are explained on. Its connections must not be wrapped by this
+     * profiler.
+     */
+    public SqlProfiler(long slowQueryMillis, long planIntervalMillis, int maxStatements, ConnectionPool planConnections) {
+        this.slowNanos = slowQueryMillis < 0 ? Long.MAX_VALUE : TimeUnit.MILLISECONDS.toNanos(slowQueryMillis);
+        this.planIntervalNanos = TimeUnit.MILLISECONDS.toNanos(planIntervalMillis);
+        this.maxStatements = maxStatements;
+        this.planConnections = planConnections;
+        this.planner = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_PENDING_PLANS), runnable -> {
+                    Thread thread = new Thread(runnable, "sql-profiler-planner");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    /**
+     * @param connection The connection to profile.
+     * @return a connection that forwards every call to connection, timing the statements created through it.
+     */
+    public Connection wrap(Connection connection) {
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] {Connection.class},
+                new ConnectionHandler(connection));
+    }
+
+    /**
+     * @param limit The most statements to return.
+     * @return a snapshot of the statements with the most total time, most first.
+     */
+    public List<StatementStats> top(int limit) {
+        List<StatementStats> all = new ArrayList<>(byNormalizedSql.values());
+        all.sort(Comparator.comparingLong(StatementStats::totalNanos).reversed());
+        return all.subList(0, Math.min(limit, all.size()));
+    }
+
+    /**
+     * Replaces string and numeric literals with ?, collapses whitespace and drops a trailing semicolon, so statements
+     * differing only in their literals are counted together.
+     * @param sql The SQL to normalize.
+     * @return the normalized SQL.
+     */
+    public static String normalize(String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                while (i < sql.length() && Character.isWhitespace(sql.charAt(i))) i++;
+                normalized.append(' ');
+            } else if (c == '\'') {
+                i++;
+                while (i < sql.length()) {
+                    // a quote inside a literal is written as two quotes.
+                    if (sql.charAt(i) == '\'' && (i + 1 == sql.length() || sql.charAt(i + 1) != '\'')) break;
+                    i += sql.charAt(i) == '\'' ? 2 : 1;
+                }
+                i++;
+                normalized.append('?');
+            } else if (Character.isDigit(c) && !isIdentifierPart(normalized)) {
+                while (i < sql.length() && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) i++;
+                normalized.append('?');
+            } else {
+                normalized.append(c);
+                i++;
+            }
+        }
+        String result = normalized.toString().trim();
+        if (result.endsWith(";")) result = result.substring(0, result.length() - 1).trim();
+        return result;
+    }
+
+    private static boolean isIdentifierPart(StringBuilder normalized) {
+        if (normalized.length() == 0) return false;
+        char previous = normalized.charAt(normalized.length() - 1);
+        return Character.isLetterOrDigit(previous) || previous == '_' || previous == '?';
+    }
+
+    private StatementStats stats(String sql) {
+        StatementStats stats = bySql.get(sql);
+        if (stats != null) return stats;
+        String normalized = normalize(sql);
+        stats = byNormalizedSql.get(normalized);
+        if (stats == null) {
+            stats = byNormalizedSql.size() < maxStatements
+                    ? byNormalizedSql.computeIfAbsent(normalized, StatementStats::new)
+                    : byNormalizedSql.computeIfAbsent(OTHER_STATEMENTS, StatementStats::new);
+        }
+        if (bySql.size() < maxStatements) bySql.putIfAbsent(sql, stats);
+        return stats;
+    }
+
+    /**
+     * Logs an execution that took totalNanos, handing its statement to the planner thread to be logged with its plan
+     * unless one was logged recently or the planner is too far behind.
+     */
+    private void slow(StatementStats stats, String sql, Object[] parameters, long totalNanos) {
+        long now = System.nanoTime();
+        long last = stats.lastPlanLogged.get();
+        if (last == 0 || now - last >= planIntervalNanos) {
+            if (stats.lastPlanLogged.compareAndSet(last, now)) {
+                try {
+                    planner.execute(() -> logger.warn("Slow statement took {} ms: {}\nparameters: {}\n{}",
+                            TimeUnit.NANOSECONDS.toMillis(totalNanos), stats.sql, describe(parameters),
+                            explain(sql, parameters)));
+                    return;
+                } catch (RejectedExecutionException e) {
+                    // let the statement be explained on its next slow execution instead.
+                    stats.lastPlanLogged.compareAndSet(now, last);
+                }
+            }
+        }
+        logger.warn("Slow statement took {} ms: {}", TimeUnit.NANOSECONDS.toMillis(totalNanos), stats.sql);
+    }
+
+    /**
+     * @return the types of parameters, with the length of strings and byte arrays, but not their values.
+     */
+    public static String describe(Object[] parameters) {
+        StringBuilder description = new StringBuilder("[");
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0) description.append(", ");
+            Object parameter = parameters[i];
+            if (parameter == null) {
+                description.append("null");
+            } else if (parameter instanceof CharSequence) {
+                description.append("String(").append(((CharSequence) parameter).length()).append(')');
+            } else if (parameter instanceof byte[]) {
+                description.append("byte[").append(((byte[]) parameter).length).append(']');
+            } else {
+                description.append(parameter.getClass().getSimpleName());
+            }
+        }
+        return description.append(']').toString();
+    }
+
+    /**
+     * @return the plan of sql with parameters, read on a connection of planConnections without being profiled.
+     */
+    private String explain(String sql, Object[] parameters) {
+        String trimmed = sql.trim().toUpperCase(Locale.ROOT);
+        // data change delta tables, e.g. SELECT * FROM OLD TABLE (DELETE ...), change data even though they're queries.
+        boolean readOnly = trimmed.startsWith("SELECT") && !trimmed.contains(" TABLE (") && !trimmed.contains(" TABLE(");
+        String explain = (readOnly ? "EXPLAIN ANALYZE " : "EXPLAIN ") + sql;
+        // prepared with result set options so the statement bypasses, and doesn't displace, the statement cache.
+        try (Connection connection = planConnections.getConnection();
+                PreparedStatement statement = connection.prepareStatement(explain, ResultSet.TYPE_FORWARD_ONLY,
+                        ResultSet.CONCUR_READ_ONLY)) {
+            for (int i = 0; i < parameters.length; i++) statement.setObject(i + 1, parameters[i]);
+            StringBuilder plan = new StringBuilder(readOnly ? "EXPLAIN ANALYZE:" : "EXPLAIN:");
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next()) plan.append('\n').append(rs.getString(1));
+            }
+            return plan.toString();
+        } catch (SQLException e) {
+            return "plan unavailable: " + e.getMessage();
+        }
+    }
+
+    private static void finished(FlightEvents.Statement event, StatementStats stats, long prepare, long execute,
+            long fetch, long rows, boolean failed) {
+        ServerTiming timing = ServerTiming.current();
+        if (timing != null) timing.statement(prepare + execute + fetch);
+        if (!event.shouldCommit()) return;
+        event.sql = stats.sql;
+        event.rows = rows;
+        event.prepareNanos = prepare;
+        event.executeNanos = execute;
+        event.fetchNanos = fetch;
+        event.failed = failed;
+        event.commit();
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Statistics for one normalized statement. Recording is lock-free; reads may miss executions recorded
+     * concurrently.
+     */
+    public static class StatementStats {
+        final String sql;
+        final LongAdder executions = new LongAdder();
+        final LongAdder errors = new LongAdder();
+        final LongAdder rows = new LongAdder();
+        final LongAdder prepareNanos = new LongAdder();
+        final LongAdder executeNanos = new LongAdder();
+        final LongAdder fetchNanos = new LongAdder();
+        final LongAdder mapNanos = new LongAdder();
+        final AtomicLong maxNanos = new AtomicLong();
+        /**
+         * The System.nanoTime() at which a plan was last logged, or 0 if none has been.
+         */
+        final AtomicLong lastPlanLogged = new AtomicLong();
+
+        StatementStats(String sql) {
+            this.sql = sql;
+        }
+
+        void record(long prepare, long execute, long fetch, long map, long rowCount, boolean failed) {
+            executions.increment();
+            if (failed) errors.increment();
+            if (rowCount > 0) rows.add(rowCount);
+            prepareNanos.add(prepare);
+            executeNanos.add(execute);
+            fetchNanos.add(fetch);
+            mapNanos.add(map);
+            maxNanos.accumulateAndGet(prepare + execute + fetch + map, Math::max);
+        }
+
+        long totalNanos() {
+            return prepareNanos.sum() + executeNanos.sum() + fetchNanos.sum() + mapNanos.sum();
+        }
+
+        public String getSql() {
+            return sql;
+        }
+
+        public long getExecutions() {
+            return executions.sum();
+        }
+
+        public long getErrors() {
+            return errors.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public double getTotalMillis() {
+            return totalNanos() / 1e6;
+        }
+
+        public double getMeanMicros() {
+            long count = executions.sum();
+            return count == 0 ? 0 : totalNanos() / 1e3 / count;
+        }
+
+        public double getMaxMicros() {
+            return maxNanos.get() / 1e3;
+        }
+
+        public double getPrepareMillis() {
+            return prepareNanos.sum() / 1e6;
+        }
+
+        public double getExecuteMillis() {
+            return executeNanos.sum() / 1e6;
+        }
+
+        public double getFetchMillis() {
+            return fetchNanos.sum() / 1e6;
+        }
+
+        public double getMapMillis() {
+            return mapNanos.sum() / 1e6;
+        }
+    }
+
+    /**
+     * Wraps the statements a connection creates.
+     */
+    private class ConnectionHandler implements InvocationHandler {
+        final Connection connection;
+
+        ConnectionHandler(Connection connection) {
+            this.connection = connection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "prepareStatement": {
+                    long start = System.nanoTime();
+                    Statement statement = (Statement) SqlProfiler.invoke(connection, method, args);
+                    String sql = (String) args[0];
+                    return wrapStatement(PreparedStatement.class,
+                            new StatementHandler(statement, sql, System.nanoTime() - start));
+                }
+                case "createStatement":
+                    return wrapStatement(Statement.class,
+                            new StatementHandler((Statement) SqlProfiler.invoke(connection, method, args), null, 0));
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return SqlProfiler.invoke(connection, method, args);
+            }
+        }
+
+        private Object wrapStatement(Class<? extends Statement> type, StatementHandler handler) {
+            return Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, handler);
+        }
+    }
+
+    /**
+     * Times the executions of one statement and remembers its parameters for explaining it.
+     */
+    private class StatementHandler implements InvocationHandler {
+        final Statement statement;
+        /**
+         * The prepared SQL, or null for a plain Statement, whose SQL comes with each execution.
+         */
+        final String preparedSql;
+        Object[] parameters = new Object[0];
+        /**
+         * Prepare time not yet attributed to an execution.
+         */
+        long prepareNanos;
+        ResultSetHandler open;
+
+        StatementHandler(Statement statement, String preparedSql, long prepareNanos) {
+            this.statement = statement;
+            this.preparedSql = preparedSql;
+            this.prepareNanos = prepareNanos;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) return execute(method, args);
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                setParameter((Integer) args[0], name.equals("setNull") ? null : args[1]);
+            } else if (name.equals("clearParameters")) {
+                Arrays.fill(parameters, null);
+            } else if (name.equals("getResultSet")) {
+                ResultSet rs = (ResultSet) SqlProfiler.invoke(statement, method, args);
+                return rs == null || open == null ? rs : wrapResultSet(rs);
+            } else if (name.equals("close")) {
+                finishOpen();
+            } else if (name.equals("equals")) {
+                return proxy == args[0];
+            } else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return SqlProfiler.invoke(statement, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            finishOpen();
+            String sql = preparedSql != null ? preparedSql : (String) args[0];
+            StatementStats stats = stats(sql);
+            long prepare = prepareNanos;
+            prepareNanos = 0;
+            FlightEvents.Statement event = new FlightEvents.Statement();
+            event.begin();
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = SqlProfiler.invoke(statement, method, args);
+            } catch (Throwable e) {
+                long execute = System.nanoTime() - start;
+                stats.record(prepare, execute, 0, 0, 0, true);
+                finished(event, stats, prepare, execute, 0, 0, true);
+                throw e;
+            }
+            long executed = System.nanoTime();
+            long execute = executed - start;
+            boolean hasResultSet = result instanceof ResultSet || Boolean.TRUE.equals(result);
+            if (hasResultSet) {
+                open = new ResultSetHandler(this, stats, sql, event, prepare, execute, executed);
+                if (result instanceof ResultSet) return wrapResultSet((ResultSet) result);
+                return result;
+            }
+            stats.record(prepare, execute, 0, 0, 0, false);
+            finished(event, stats, prepare, execute, 0, 0, false);
+            if (prepare + execute >= slowNanos) slow(stats, sql, parameters.clone(), prepare + execute);
+            return result;
+        }
+
+        private ResultSet wrapResultSet(ResultSet rs) {
+            open.rs = rs;
+            return (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(), new Class<?>[] {ResultSet.class}, open);
+        }
+
+        /**
+         * Records the open result set's execution, if any, e.g. when the statement is closed before it.
+         */
+        void finishOpen() {
+            if (open != null) open.finish();
+        }
+
+        private void setParameter(int index, Object value) {
+            if (index > parameters.length) parameters = Arrays.copyOf(parameters, Math.max(index, parameters.length * 2));
+            parameters[index - 1] = value;
+        }
+    }
+
+    /**
+     * Times the fetching and reading of one result set, recording its execution when it is closed.
+     */
+    private class ResultSetHandler implements InvocationHandler {
+        final StatementHandler owner;
+        final StatementStats stats;
+        final String sql;
+        final FlightEvents.Statement event;
+        final long prepare;
+        final long execute;
+        final long openedAt;
+        ResultSet rs;
+        long fetchNanos;
+        long rows;
+        boolean finished;
+
+        ResultSetHandler(StatementHandler owner, StatementStats stats, String sql, FlightEvents.Statement event, long prepare,
+                long execute, long openedAt) {
+            this.owner = owner;
+            this.stats = stats;
+            this.sql = sql;
+            this.event = event;
+            this.prepare = prepare;
+            this.execute = execute;
+            this.openedAt = openedAt;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next": {
+                    long start = System.nanoTime();
+                    Object hasRow = SqlProfiler.invoke(rs, method, args);
+                    fetchNanos += System.nanoTime() - start;
+                    if (Boolean.TRUE.equals(hasRow)) rows++;
+                    return hasRow;
+                }
+                case "close":
+                    finish();
+                    return SqlProfiler.invoke(rs, method, args);
+                case "getStatement":
+                    return rs.getStatement();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                default:
+                    return SqlProfiler.invoke(rs, method, args);
+            }
+        }
+
+        void finish() {
+            if (finished) return;
+            finished = true;
+            if (owner.open == this) owner.open = null;
+            long map = Math.max(0, System.nanoTime() - openedAt - fetchNanos);
+            stats.record(prepare, execute, fetchNanos, map, rows, false);
+            finished(event, stats, prepare, execute, fetchNanos, rows, false);
+            long total = prepare + execute + fetchNanos + map;
+            if (total >= slowNanos) slow(stats, sql, owner.parameters.clone(), total);
+        }
+    }
+}
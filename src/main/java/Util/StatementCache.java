@@ -0,0 +1,249 @@
+package Util;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The PreparedStatements opened on one physical connection, kept open after their borrower closes them so the next
+ * borrower preparing the same SQL skips H2's parse and plan. Holds at most capacity statements, evicting the least
+ * recently used one.
+ *
+ * Statements are handed out as proxies whose close() clears their parameters and returns them to the cache. A
+ * statement that is already handed out is never shared: preparing its SQL again before it is closed opens a
+ * separate, uncached statement. A statement whose fetch size, row limit or other settings were changed is closed for
+ * real rather than cached, so the next borrower always gets default settings.
+ *
+ * Only the borrower of the connection uses its cache, so it is not thread-safe.
+ */
+class StatementCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatementCache.class);
+
+    /**
+     * Statement methods that change how later executions behave, so a statement they were called on isn't reused.
+     */
+    private static final Set<String> SETTINGS = new HashSet<>(Arrays.asList("setFetchSize", "setFetchDirection",
+            "setMaxRows", "setLargeMaxRows", "setMaxFieldSize", "setQueryTimeout", "setEscapeProcessing",
+            "setCursorName", "setPoolable", "closeOnCompletion"));
+
+    private final Connection connection;
+    private final int capacity;
+    private final LongAdder hits;
+    private final LongAdder misses;
+    private final LongAdder evictions;
+    private final LinkedHashMap<Key, Entry> statements = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * @param connection The physical connection statements are prepared on.
+     * @param capacity The most statements kept open.
+     * @param hits Counts prepares answered from the cache.
+     * @param misses Counts prepares that opened a new statement.
+     * @param evictions Counts cached statements closed to make room.
+     */
+    StatementCache(Connection connection, int capacity, LongAdder hits, LongAdder misses, LongAdder evictions) {
+        this.connection = connection;
+        this.capacity = capacity;
+        this.hits = hits;
+        this.misses = misses;
+        this.evictions = evictions;
+    }
+
+    /**
+     * Hands out a statement for sql, reusing a cached one if it is free.
+     * @param owner The pooled connection the statement should report as its connection.
+     * @param sql The SQL to prepare.
+     * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS.
+     * @return a statement whose close() returns it to the cache.
+     * @throws SQLException if a new statement could not be prepared.
+     */
+    PreparedStatement prepare(Connection owner, String sql, int autoGeneratedKeys) throws SQLException {
+        Key key = new Key(sql, autoGeneratedKeys);
+        Entry entry = statements.get(key);
+        if (entry != null && entry.handle != null) {
+            misses.increment();
+            return connection.prepareStatement(sql, autoGeneratedKeys);
+        }
+        if (entry != null) {
+            hits.increment();
+        } else {
+            misses.increment();
+            entry = new Entry(key, connection.prepareStatement(sql, autoGeneratedKeys));
+            statements.put(key, entry);
+            evictEldest();
+        }
+        entry.handle = new Handle(owner, entry);
+        return (PreparedStatement) Proxy.newProxyInstance(StatementCache.class.getClassLoader(),
+                new Class<?>[] { PreparedStatement.class }, entry.handle);
+    }
+
+    /**
+     * Returns every statement still handed out, when the borrower returns the connection without closing them.
+     * Their proxies refuse further use.
+     */
+    void checkInAll() {
+        List<Entry> open = new ArrayList<>();
+        for (Entry entry : statements.values()) {
+            if (entry.handle != null) open.add(entry);
+        }
+        for (Entry entry : open) {
+            entry.handle.closed = true;
+            checkIn(entry, false);
+        }
+    }
+
+    /**
+     * Closes every cached statement, before the physical connection itself is closed.
+     */
+    void close() {
+        for (Entry entry : statements.values()) {
+            if (entry.handle != null) entry.handle.closed = true;
+            closeQuietly(entry.statement);
+        }
+        statements.clear();
+    }
+
+    /**
+     * @return the number of statements currently cached.
+     */
+    int size() {
+        return statements.size();
+    }
+
+    private void checkIn(Entry entry, boolean changedSettings) {
+        entry.handle = null;
+        if (statements.get(entry.key) != entry) {
+            // evicted while it was handed out.
+            closeQuietly(entry.statement);
+            return;
+        }
+        try {
+            if (changedSettings || entry.statement.isClosed()) throw new SQLException("Statement can't be reused");
+            entry.statement.clearParameters();
+            entry.statement.clearBatch();
+            entry.statement.clearWarnings();
+        } catch (SQLException e) {
+            statements.remove(entry.key);
+            closeQuietly(entry.statement);
+        }
+    }
+
+    private void evictEldest() {
+        Iterator<Entry> iterator = statements.values().iterator();
+        while (statements.size() > capacity && iterator.hasNext()) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            evictions.increment();
+            if (eldest.handle == null) closeQuietly(eldest.statement);
+        }
+    }
+
+    private static void closeQuietly(Statement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            logger.debug("Failed to close cached statement", e);
+        }
+    }
+
+    private static class Key {
+        final String sql;
+        final int autoGeneratedKeys;
+
+        Key(String sql, int autoGeneratedKeys) {
+            this.sql = sql;
+            this.autoGeneratedKeys = autoGeneratedKeys;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(sql, autoGeneratedKeys);
+        }
+    }
+
+    private static class Entry {
+        final Key key;
+        final PreparedStatement statement;
+        /**
+         * The proxy currently using the statement, or null if the statement is free.
+         */
+        Handle handle;
+
+        Entry(Key key, PreparedStatement statement) {
+            this.key = key;
+            this.statement = statement;
+        }
+    }
+
+    /**
+     * Backs one use of a cached statement, from prepare until close. Every call is forwarded to the statement until
+     * close() is called, after which it is back in the cache and this handle refuses further use.
+     */
+    private class Handle implements InvocationHandler {
+        final Connection owner;
+        final Entry entry;
+        boolean closed;
+        boolean changedSettings;
+
+        Handle(Connection owner, Entry entry) {
+            this.owner = owner;
+            this.entry = entry;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        checkIn(entry, changedSettings);
+                    }
+                    return null;
+                case "isClosed":
+                    return closed;
+                case "getConnection":
+                    if (closed) throw new SQLException("Statement has already been closed");
+                    return owner;
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Cached" + entry.statement;
+                default:
+                    if (closed) throw new SQLException("Statement has already been closed");
+                    if (SETTINGS.contains(method.getName())) changedSettings = true;
+                    try {
+                        return method.invoke(entry.statement, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+            }
+        }
+    }
+}
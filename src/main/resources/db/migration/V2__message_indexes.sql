@@ -0,0 +1,5 @@
+-- Serves newest-first pages of GET /accounts/{account_id}/messages. Queries must name it with USE INDEX, since H2
+-- otherwise picks the foreign key index on posted_by.
+create index if not exists message_posted_by_time_idx on message (posted_by, time_posted_epoch desc, message_id desc);
+-- Serves newest-first pages of GET /messages.
+create index if not exists message_time_idx on message (time_posted_epoch desc, message_id desc);
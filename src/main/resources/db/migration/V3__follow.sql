@@ -0,0 +1,10 @@
+-- Who follows whom. The primary key serves "who does this account follow"; follow_followee_idx serves
+-- "who follows this account", which the feed fan-out reads on every new message.
+create table if not exists follow (
+    follower_id int,
+    followee_id int,
+    primary key (follower_id, followee_id),
+    foreign key (follower_id) references account(account_id),
+    foreign key (followee_id) references account(account_id)
+);
+create index if not exists follow_followee_idx on follow (followee_id);
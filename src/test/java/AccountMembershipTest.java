@@ -0,0 +1,47 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountMembership;
+import Util.ConnectionUtil;
+
+public class AccountMembershipTest {
+
+    /**
+     * Before every test, reset the database.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Known accounts should be answered without querying the database.
+     */
+    @Test
+    public void commonLookupsSkipTheDatabase() {
+        AccountMembership membership = new AccountMembership();
+
+        Assert.assertTrue(membership.accountIDExists(1));
+        Assert.assertTrue(membership.accountIDExists(1));
+        Assert.assertEquals(0, membership.getQueryCount());
+
+        Assert.assertFalse(membership.accountIDExists(2));
+        Assert.assertEquals(1, membership.getQueryCount());
+    }
+
+    /**
+     * Accounts created without this AccountMembership seeing them should still be found through the database.
+     */
+    @Test
+    public void unseenAccountsFallBackToTheDatabase() {
+        AccountMembership membership = new AccountMembership();
+        Account newAccount = new AccountDAO().addAccount(new Account("testuser2", "password"));
+
+        Assert.assertTrue(membership.accountIDExists(newAccount.getAccount_id()));
+        Assert.assertTrue(membership.accountIDExists(newAccount.getAccount_id()));
+        Assert.assertEquals(1, membership.getQueryCount());
+    }
+}
@@ -0,0 +1,101 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConcurrentRegistrationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending many http requests to POST localhost:8080/register at once, all for the same new username
+     *
+     * Expected Response:
+     *  Exactly one request gets Status Code 200; every other request gets Status Code 400
+     */
+    @Test
+    public void parallelDuplicateRegistrationsCreateOneAccount() {
+        int requests = 20;
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < requests; i++) {
+            HttpRequest postRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/register"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{" +
+                            "\"username\": \"racer\", " +
+                            "\"password\": \"password\" }"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            responses.add(webClient.sendAsync(postRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        int created = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            int status = response.join().statusCode();
+            if (status == 200) {
+                created++;
+            } else {
+                Assert.assertEquals(400, status);
+                Assert.assertEquals("", response.join().body());
+            }
+        }
+        Assert.assertEquals(1, created);
+    }
+
+    /**
+     * Sending many http requests to POST localhost:8080/messages at once, all from a user that doesn't exist
+     *
+     * Expected Response:
+     *  Every request gets Status Code 400
+     */
+    @Test
+    public void parallelMessagesFromUnknownUserAreRejected() {
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            HttpRequest postRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{" +
+                            "\"posted_by\": 99, " +
+                            "\"message_text\": \"hello message\", " +
+                            "\"time_posted_epoch\": 1669947792 }"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            responses.add(webClient.sendAsync(postRequest, HttpResponse.BodyHandlers.ofString()));
+        }
+
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            Assert.assertEquals(400, response.join().statusCode());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Service.MessageVersions;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class ConditionalReadTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Re-polling GET localhost:8080/messages/1 with the ETag it returned should answer 304 until the message changes
+     *
+     * Expected Response:
+     *  Status Code: 304 with an empty body while unchanged, 200 with a new ETag after an update
+     */
+    @Test
+    public void messageIsNotModifiedUntilUpdated() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages/1", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        HttpResponse<String> unchanged = get("/messages/1", etag);
+        Assert.assertEquals(304, unchanged.statusCode());
+        Assert.assertEquals("", unchanged.body());
+        Assert.assertEquals(etag, unchanged.headers().firstValue("ETag").orElseThrow());
+        Assert.assertEquals(304, get("/messages/1", "\"other\", W/" + etag).statusCode());
+
+        send("PATCH", "/messages/1", "{\"message_text\":\"updated message\"}");
+        HttpResponse<String> updated = get("/messages/1", etag);
+        Assert.assertEquals(200, updated.statusCode());
+        Assert.assertTrue(updated.body().contains("updated message"));
+        Assert.assertNotEquals(etag, updated.headers().firstValue("ETag").orElseThrow());
+
+        send("DELETE", "/messages/1", null);
+        HttpResponse<String> deleted = get("/messages/1", updated.headers().firstValue("ETag").orElseThrow());
+        Assert.assertEquals(200, deleted.statusCode());
+        Assert.assertEquals("", deleted.body());
+    }
+
+    /**
+     * Re-polling GET localhost:8080/accounts/1/messages with the ETag it returned should answer 304 until the account
+     * posts, and be unaffected by other accounts' messages
+     *
+     * Expected Response:
+     *  Status Code: 304 while unchanged, 200 after account 1 posts
+     */
+    @Test
+    public void accountMessagesAreNotModifiedUntilTheAccountWrites() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/accounts/1/messages", null);
+        Assert.assertEquals(200, first.statusCode());
+        String etag = first.headers().firstValue("ETag").orElseThrow();
+
+        send("POST", "/register", "{\"username\":\"other\",\"password\":\"password\"}");
+        send("POST", "/messages", "{\"posted_by\":2,\"message_text\":\"not by account 1\",\"time_posted_epoch\":1669947793}");
+        Assert.assertEquals(304, get("/accounts/1/messages", etag).statusCode());
+
+        send("POST", "/messages", "{\"posted_by\":1,\"message_text\":\"by account 1\",\"time_posted_epoch\":1669947794}");
+        HttpResponse<String> posted = get("/accounts/1/messages", etag);
+        Assert.assertEquals(200, posted.statusCode());
+        Assert.assertTrue(posted.body().contains("by account 1"));
+    }
+
+    private HttpResponse<String> get(String path, String ifNoneMatch) throws IOException, InterruptedException {
+        HttpRequest.Builder getRequest = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path));
+        if (ifNoneMatch != null) getRequest.header("If-None-Match", ifNoneMatch);
+        return webClient.send(getRequest.build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private void send(String method, String path, String body) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        Assert.assertEquals(200, webClient.send(request, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    /**
+     * Once more messages have changed than are kept, the oldest versions should be dropped without any message's
+     * version going backwards.
+     */
+    @Test
+    public void messageVersionsAreBounded() {
+        MessageVersions versions = new MessageVersions(100);
+        long[] seen = new long[1000];
+        for (int message_id = 0; message_id < 1000; message_id++) {
+            versions.changed(message_id, 1);
+            for (int earlier = 0; earlier <= message_id; earlier++) {
+                long version = versions.messageVersion(earlier);
+                Assert.assertTrue(version >= seen[earlier]);
+                seen[earlier] = version;
+            }
+        }
+        Assert.assertTrue(versions.messageVersion(999) > versions.messageVersion(0));
+        Assert.assertTrue(versions.messageVersion(0) > 0);
+    }
+}
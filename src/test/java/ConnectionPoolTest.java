@@ -0,0 +1,192 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import org.h2.jdbcx.JdbcDataSource;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionPool;
+
+public class ConnectionPoolTest {
+    JdbcDataSource dataSource;
+
+    /**
+     * Before every test, point a fresh data source at a private in-memory database so pool counts are not
+     * affected by the connections the API tests hold.
+     */
+    @Before
+    public void setUp() {
+        dataSource = new JdbcDataSource();
+        dataSource.setURL("jdbc:h2:mem:pooltest;DB_CLOSE_DELAY=-1");
+        dataSource.setUser("sa");
+        dataSource.setPassword("sa");
+    }
+
+    /**
+     * Closing a borrowed connection should return it to the pool rather than closing the physical connection.
+     */
+    @Test
+    public void closedConnectionsAreReused() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 0, 2, 1000, 0);
+
+        Connection first = pool.getConnection();
+        Assert.assertEquals(1, pool.getActiveCount());
+        first.close();
+        Assert.assertTrue(first.isClosed());
+        Assert.assertEquals(0, pool.getActiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+
+        try (Connection second = pool.getConnection()) {
+            Assert.assertEquals(1, pool.getLiveCount());
+            Assert.assertTrue(second.isValid(1));
+        }
+    }
+
+    /**
+     * Borrowing more than maxSize connections should wait for the acquire timeout, then fail.
+     */
+    @Test
+    public void borrowingPastMaxSizeTimesOut() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 0, 1, 200, 0);
+
+        try (Connection held = pool.getConnection()) {
+            long start = System.nanoTime();
+            Assert.assertThrows(SQLTimeoutException.class, pool::getConnection);
+            Assert.assertTrue(System.nanoTime() - start >= 200_000_000L);
+            Assert.assertEquals(0, pool.getWaitingCount());
+        }
+        pool.getConnection().close();
+    }
+
+    /**
+     * A connection must not be usable after it has been returned to the pool.
+     */
+    @Test
+    public void returnedConnectionRejectsFurtherUse() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 0, 1, 1000, 0);
+
+        Connection connection = pool.getConnection();
+        connection.close();
+        Assert.assertThrows(SQLException.class, () -> connection.prepareStatement("SELECT 1"));
+    }
+
+    /**
+     * Transactions left open by a borrower are rolled back before the connection is handed out again.
+     */
+    @Test
+    public void openTransactionIsRolledBackOnReturn() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 0, 1, 1000, 0);
+
+        try (Connection connection = pool.getConnection()) {
+            connection.createStatement().execute("CREATE TABLE IF NOT EXISTS t (id INT)");
+            connection.setAutoCommit(false);
+            connection.createStatement().execute("INSERT INTO t VALUES (1)");
+        }
+        try (Connection connection = pool.getConnection()) {
+            Assert.assertTrue(connection.getAutoCommit());
+            Assert.assertFalse(connection.createStatement().executeQuery("SELECT * FROM t").next());
+        }
+    }
+
+    /**
+     * A statement closed by one borrower should be handed, with its parameters cleared, to the next borrower that
+     * prepares the same SQL on the same connection.
+     */
+    @Test
+    public void preparedStatementsAreReusedAcrossBorrows() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 0, 1, 1000, 0, 8);
+
+        for (int i = 0; i < 3; i++) {
+            try (Connection connection = pool.getConnection();
+                    PreparedStatement preparedStatement = connection.prepareStatement("SELECT ?")) {
+                Assert.assertSame(connection, preparedStatement.getConnection());
+                Assert.assertThrows(SQLException.class, preparedStatement::executeQuery);
+                preparedStatement.setInt(1, i);
+                try (ResultSet rs = preparedStatement.executeQuery()) {
+                    Assert.assertTrue(rs.next());
+                    Assert.assertEquals(i, rs.getInt(1));
+                }
+            }
+        }
+        Assert.assertEquals(1, pool.getStatementCacheMissCount());
+        Assert.assertEquals(2, pool.getStatementCacheHitCount());
+    }
+
+    /**
+     * A cached statement must never be shared: preparing SQL that is already in use opens a separate statement, and
+     * a closed statement refuses further use.
+     */
+    @Test
+    public void cachedStatementsAreNotShared() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 0, 1, 1000, 0, 8);
+
+        try (Connection connection = pool.getConnection()) {
+            PreparedStatement first = connection.prepareStatement("SELECT ?");
+            PreparedStatement second = connection.prepareStatement("SELECT ?");
+            first.setInt(1, 1);
+            second.setInt(1, 2);
+            try (ResultSet rs = first.executeQuery()) {
+                Assert.assertTrue(rs.next());
+                Assert.assertEquals(1, rs.getInt(1));
+            }
+            first.close();
+            second.close();
+            Assert.assertTrue(first.isClosed());
+            Assert.assertThrows(SQLException.class, () -> first.setInt(1, 3));
+        }
+        Assert.assertEquals(2, pool.getStatementCacheMissCount());
+    }
+
+    /**
+     * The least recently used statement is evicted once a connection holds more than the cache size, and a statement
+     * whose settings were changed is not reused.
+     */
+    @Test
+    public void statementCacheEvictsAndSkipsChangedStatements() throws SQLException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 0, 1, 1000, 0, 2);
+
+        try (Connection connection = pool.getConnection()) {
+            connection.prepareStatement("SELECT 1").close();
+            connection.prepareStatement("SELECT 2").close();
+            connection.prepareStatement("SELECT 3").close();
+            Assert.assertEquals(1, pool.getStatementCacheEvictionCount());
+            connection.prepareStatement("SELECT 3").close();
+            Assert.assertEquals(1, pool.getStatementCacheHitCount());
+
+            PreparedStatement changed = connection.prepareStatement("SELECT 2");
+            changed.setMaxRows(1);
+            changed.close();
+            connection.prepareStatement("SELECT 2").close();
+            Assert.assertEquals(2, pool.getStatementCacheHitCount());
+            Assert.assertEquals(4, pool.getStatementCacheMissCount());
+        }
+    }
+
+    /**
+     * Connections opened during a burst above minSize should be closed once they have been idle past the idle
+     * timeout, leaving minSize open.
+     */
+    @Test
+    public void idleConnectionsAboveMinSizeAreClosed() throws SQLException, InterruptedException {
+        ConnectionPool pool = new ConnectionPool(dataSource, 1, 3, 1000, 0, 8, 200);
+
+        Connection first = pool.getConnection();
+        Connection second = pool.getConnection();
+        Connection third = pool.getConnection();
+        Assert.assertEquals(3, pool.getLiveCount());
+        first.close();
+        second.close();
+        third.close();
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getLiveCount() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        Assert.assertEquals(1, pool.getLiveCount());
+        Assert.assertEquals(1, pool.getIdleCount());
+    }
+}
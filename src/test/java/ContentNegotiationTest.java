@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.Encoding;
+import io.javalin.Javalin;
+
+public class ContentNegotiationTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * The encoding with the highest quality value should win, with wildcards and unknown types falling back to JSON.
+     */
+    @Test
+    public void acceptHeaderPicksPreferredEncoding() {
+        Assert.assertEquals(Encoding.JSON, Encoding.forAccept(null));
+        Assert.assertEquals(Encoding.JSON, Encoding.forAccept("*/*"));
+        Assert.assertEquals(Encoding.JSON, Encoding.forAccept("text/html"));
+        Assert.assertEquals(Encoding.CBOR, Encoding.forAccept("application/cbor"));
+        Assert.assertEquals(Encoding.SMILE, Encoding.forAccept("application/json;q=0.5, application/x-jackson-smile"));
+        Assert.assertEquals(Encoding.JSON, Encoding.forAccept("application/cbor;q=0.2, */*;q=0.8"));
+        Assert.assertEquals(Encoding.CBOR, Encoding.forAccept("APPLICATION/CBOR, application/json"));
+        Assert.assertEquals(Encoding.SMILE, Encoding.forContentType("application/x-jackson-smile; charset=binary"));
+        Assert.assertEquals(Encoding.JSON, Encoding.forContentType("text/plain"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/1/messages with Accept: application/cbor should respond
+     * with the messages in CBOR, under a different ETag from the JSON representation
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Content-Type: application/cbor
+     *  Response Body: CBOR array containing the seeded message
+     */
+    @Test
+    public void getMessagesAsCbor() throws IOException, InterruptedException {
+        HttpRequest cborRequest = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                .header("Accept", "application/cbor").build();
+        HttpResponse<byte[]> response = webClient.send(cborRequest, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/cbor", response.headers().firstValue("Content-Type").orElseThrow());
+        Assert.assertEquals("Accept", response.headers().firstValue("Vary").orElseThrow());
+        List<Message> messages = Encoding.CBOR.getMessageListReader().readValue(response.body());
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792L)), messages);
+
+        HttpRequest jsonRequest = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/accounts/1/messages")).build();
+        HttpResponse<String> jsonResponse = webClient.send(jsonRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertTrue(jsonResponse.headers().firstValue("Content-Type").orElseThrow().startsWith("application/json"));
+        Assert.assertNotEquals(jsonResponse.headers().firstValue("ETag").orElseThrow(),
+                response.headers().firstValue("ETag").orElseThrow());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with a Smile body and Accept: application/x-jackson-smile
+     * should create the message and respond in Smile
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Smile encoding of the created message
+     */
+    @Test
+    public void createMessageFromSmile() throws IOException, InterruptedException {
+        byte[] body = Encoding.SMILE.getMessageWriter().writeValueAsBytes(new Message(1, "hello smile", 1669947792L));
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                .header("Content-Type", "application/x-jackson-smile")
+                .header("Accept", "application/x-jackson-smile")
+                .build();
+        HttpResponse<byte[]> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofByteArray());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("application/x-jackson-smile", response.headers().firstValue("Content-Type").orElseThrow());
+        Message created = Encoding.SMILE.getMessageReader().readValue(response.body());
+        Assert.assertEquals(new Message(2, 1, "hello smile", 1669947792L), created);
+    }
+}
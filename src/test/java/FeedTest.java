@@ -0,0 +1,224 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Model.MessagePage;
+import Service.FeedService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class FeedTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web. Registers testuser2 (account_id 2) to follow testuser1.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/register"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"username\": \"testuser2\", \"password\": \"password\"}"))
+                .header("Content-Type", "application/json"));
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Following testuser1 should put its existing messages in testuser2's feed, and messages it posts afterwards
+     * should be fanned out to the feed, newest first.
+     */
+    @Test
+    public void feedContainsFollowedMessages() throws IOException, InterruptedException {
+        Assert.assertEquals(200, send(follow("POST", 2, 1)).statusCode());
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), getFeed(2));
+
+        postMessage(1, "hello followers", 1669947793);
+        List<Message> expected = List.of(
+                new Message(2, 1, "hello followers", 1669947793),
+                new Message(1, 1, "test message 1", 1669947792));
+        // fan-out is asynchronous.
+        List<Message> feed = getFeed(2);
+        for (int i = 0; i < 20 && !feed.equals(expected); i++) {
+            Thread.sleep(100);
+            feed = getFeed(2);
+        }
+        Assert.assertEquals(expected, feed);
+    }
+
+    /**
+     * Unfollowing should remove the account's messages from the feed, and only followed accounts' messages should
+     * ever appear in it.
+     */
+    @Test
+    public void unfollowRemovesMessages() throws IOException, InterruptedException {
+        send(follow("POST", 2, 1));
+        postMessage(2, "my own message", 1669947793);
+        Assert.assertEquals(1, getFeed(2).size());
+
+        Assert.assertEquals(200, send(follow("DELETE", 2, 1)).statusCode());
+        Assert.assertEquals(List.of(), getFeed(2));
+    }
+
+    /**
+     * Deleting a message should remove it from the timelines it was fanned out to, so a page never comes back short
+     * or empty because of it.
+     */
+    @Test
+    public void deletedMessagesAreRemovedFromFeed() throws IOException, InterruptedException {
+        send(follow("POST", 2, 1));
+        getFeed(2);
+        postMessage(1, "soon deleted", 1669947793);
+        Thread.sleep(500);
+        Assert.assertEquals(200, send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2")).DELETE()).statusCode());
+
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)), getFeedPage(2, 1));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/accounts/1/follow/{target_id} for the account itself or an
+     * account that doesn't exist
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void followInvalidAccount() throws IOException, InterruptedException {
+        Assert.assertEquals(400, send(follow("POST", 1, 1)).statusCode());
+        Assert.assertEquals(400, send(follow("POST", 1, 99)).statusCode());
+    }
+
+    /**
+     * Pages of the feed should follow one another through the X-Next-Cursor header.
+     */
+    @Test
+    public void feedIsPaginated() throws IOException, InterruptedException {
+        send(follow("POST", 2, 1));
+        getFeed(2);
+        postMessage(1, "second", 1669947793);
+        postMessage(1, "third", 1669947794);
+        Thread.sleep(500);
+
+        HttpResponse<String> first = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/feed?limit=2")));
+        Assert.assertEquals(List.of(new Message(3, 1, "third", 1669947794), new Message(2, 1, "second", 1669947793)),
+                objectMapper.readValue(first.body(), new TypeReference<List<Message>>(){}));
+        String cursor = first.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).orElseThrow();
+
+        HttpResponse<String> second = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/2/feed?limit=2&before=" + cursor)));
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792)),
+                objectMapper.readValue(second.body(), new TypeReference<List<Message>>(){}));
+        Assert.assertTrue(second.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).isEmpty());
+    }
+
+    /**
+     * Messages from accounts with more followers than the fan-out threshold should be pulled at read time instead of
+     * being fanned out, with the same result.
+     */
+    @Test
+    public void popularAccountsArePulledAtReadTime() {
+        System.setProperty("feed.fanOutThreshold", "0");
+        FeedService feedService;
+        try {
+            feedService = new FeedService();
+        } finally {
+            System.clearProperty("feed.fanOutThreshold");
+        }
+        Assert.assertTrue(feedService.follow(2, 1));
+
+        // added without publishing, so only a read-time pull can find it.
+        Message newMessage = new MessageDAO().addMessage(new Message(1, "not fanned out", 1669947793));
+        MessagePage page = feedService.getFeed(2, Long.MAX_VALUE, Integer.MAX_VALUE, 10);
+        Assert.assertEquals(List.of(newMessage, new Message(1, 1, "test message 1", 1669947792)), page.getMessages());
+    }
+
+    /**
+     * Paging past the oldest message a full timeline holds should continue from the database instead of ending the
+     * feed.
+     */
+    @Test
+    public void pagesPastTheTimelineAreReadFromTheDatabase() {
+        System.setProperty("feed.timelineSize", "2");
+        FeedService feedService;
+        try {
+            feedService = new FeedService();
+        } finally {
+            System.clearProperty("feed.timelineSize");
+        }
+        Assert.assertTrue(feedService.follow(2, 1));
+        MessageDAO messageDAO = new MessageDAO();
+        Message second = messageDAO.addMessage(new Message(1, "second", 1669947793));
+        Message third = messageDAO.addMessage(new Message(1, "third", 1669947794));
+        Message fourth = messageDAO.addMessage(new Message(1, "fourth", 1669947795));
+
+        MessagePage first = feedService.getFeed(2, Long.MAX_VALUE, Integer.MAX_VALUE, 2);
+        Assert.assertEquals(List.of(fourth, third), first.getMessages());
+        Assert.assertTrue(first.hasMore());
+        MessagePage next = feedService.getFeed(2, third.getTime_posted_epoch(), third.getMessage_id(), 2);
+        Assert.assertEquals(List.of(second, new Message(1, 1, "test message 1", 1669947792)), next.getMessages());
+        Assert.assertFalse(next.hasMore());
+    }
+
+    private HttpRequest.Builder follow(String method, int account_id, int target_id) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + account_id + "/follow/" + target_id))
+                .method(method, HttpRequest.BodyPublishers.noBody());
+    }
+
+    private void postMessage(int posted_by, String message_text, long time_posted_epoch) throws IOException, InterruptedException {
+        send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\": " + posted_by + ", \"message_text\": \""
+                        + message_text + "\", \"time_posted_epoch\": " + time_posted_epoch + "}"))
+                .header("Content-Type", "application/json"));
+    }
+
+    private List<Message> getFeed(int account_id) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + account_id + "/feed")));
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private List<Message> getFeedPage(int account_id, int limit) throws IOException, InterruptedException {
+        HttpResponse<String> response = send(HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/accounts/" + account_id + "/feed?limit=" + limit)));
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+
+    private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+        return webClient.send(request.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
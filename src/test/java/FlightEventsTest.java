@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+import jdk.jfr.Configuration;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+public class FlightEventsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Recording with the bundled settings while sending GET localhost:8080/messages/1 should record the request, the
+     * DAO call it made, the statement that ran and the connection it borrowed.
+     */
+    @Test
+    public void requestIsRecordedWithItsDatabaseWork() throws IOException, InterruptedException, ParseException {
+        Configuration settings = Configuration.create(Paths.get("src/main/resources/jfr/social-media.jfc"));
+        Path file = Files.createTempFile("social-media", ".jfr");
+        try (Recording recording = new Recording(settings)) {
+            recording.start();
+            HttpRequest getRequest = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).build();
+            HttpResponse<String> response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                    .filter(event -> event.getEventType().getName().startsWith("socialmedia."))
+                    .collect(Collectors.toList());
+            RecordedEvent request = find(events, "socialmedia.Request");
+            Assert.assertEquals("GET", request.getString("method"));
+            Assert.assertEquals("/messages/{message_id}", request.getString("route"));
+            Assert.assertEquals("/messages/1", request.getString("path"));
+            Assert.assertEquals(200, request.getInt("status"));
+            Assert.assertEquals(response.body().length(), request.getLong("bytesWritten"));
+
+            RecordedEvent call = find(events, "socialmedia.DaoCall");
+            Assert.assertEquals("MessageDAO", call.getString("dao"));
+            Assert.assertEquals("getMessageByID", call.getString("method"));
+
+            RecordedEvent statement = find(events, "socialmedia.Statement");
+            Assert.assertTrue(statement.getString("sql").startsWith("SELECT"));
+            Assert.assertEquals(1, statement.getLong("rows"));
+            Assert.assertFalse(statement.getBoolean("failed"));
+
+            Assert.assertTrue(find(events, "socialmedia.ConnectionAcquire").getBoolean("acquired"));
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static RecordedEvent find(List<RecordedEvent> events, String name) {
+        return events.stream().filter(event -> event.getEventType().getName().equals(name)).findFirst()
+                .orElseThrow(() -> new AssertionError("no " + name + " event in " + events));
+    }
+}
@@ -0,0 +1,124 @@
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import Util.LoadingCache;
+
+public class LoadingCacheTest {
+
+    /**
+     * Repeated lookups should be served from the cache, and the least recently used entries evicted once full.
+     */
+    @Test
+    public void hitsMissesAndEvictionsAreCounted() {
+        LoadingCache<Integer, String> cache = new LoadingCache<>(16, 0, TimeUnit.SECONDS);
+
+        Assert.assertEquals("v1", cache.get(1, key -> "v" + key));
+        Assert.assertEquals("v1", cache.get(1, key -> "never"));
+        Assert.assertEquals(1, cache.hitCount());
+        Assert.assertEquals(1, cache.missCount());
+
+        // 16 entries over 16 segments leaves one slot per segment, so key 17 evicts key 1.
+        cache.get(17, key -> "v17");
+        Assert.assertEquals(1, cache.evictionCount());
+        Assert.assertNull(cache.getIfPresent(1));
+    }
+
+    /**
+     * Null results are returned to the caller but not cached.
+     */
+    @Test
+    public void nullValuesAreNotCached() {
+        LoadingCache<Integer, String> cache = new LoadingCache<>(16, 0, TimeUnit.SECONDS);
+        Assert.assertNull(cache.get(1, key -> null));
+        Assert.assertEquals("later", cache.get(1, key -> "later"));
+    }
+
+    /**
+     * Concurrent misses on the same key should run the loader only once.
+     */
+    @Test
+    public void concurrentMissesAreCoalesced() throws Exception {
+        LoadingCache<Integer, String> cache = new LoadingCache<>(16, 0, TimeUnit.SECONDS);
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoader = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<String> first = executor.submit(() -> cache.get(1, key -> {
+                loads.incrementAndGet();
+                loaderStarted.countDown();
+                await(releaseLoader);
+                return "loaded";
+            }));
+            loaderStarted.await();
+            Future<?>[] others = new Future<?>[7];
+            for (int i = 0; i < others.length; i++) {
+                others[i] = executor.submit(() -> cache.get(1, key -> {
+                    loads.incrementAndGet();
+                    return "duplicate";
+                }));
+            }
+            Thread.sleep(100);
+            releaseLoader.countDown();
+
+            Assert.assertEquals("loaded", first.get());
+            for (Future<?> other : others) Assert.assertEquals("loaded", other.get());
+            Assert.assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A value loaded before an invalidation must not be stored afterwards, or it would hide the newer write.
+     */
+    @Test
+    public void invalidationDiscardsInFlightLoad() throws Exception {
+        LoadingCache<Integer, String> cache = new LoadingCache<>(16, 0, TimeUnit.SECONDS);
+        CountDownLatch loaderStarted = new CountDownLatch(1);
+        CountDownLatch releaseLoader = new CountDownLatch(1);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<String> stale = executor.submit(() -> cache.get(1, key -> {
+                loaderStarted.countDown();
+                await(releaseLoader);
+                return "stale";
+            }));
+            loaderStarted.await();
+            cache.invalidate(1);
+            releaseLoader.countDown();
+
+            Assert.assertEquals("stale", stale.get());
+            Assert.assertNull(cache.getIfPresent(1));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Entries should stop being served once their time to live has passed.
+     */
+    @Test
+    public void entriesExpireAfterTtl() throws InterruptedException {
+        LoadingCache<Integer, String> cache = new LoadingCache<>(16, 50, TimeUnit.MILLISECONDS);
+        cache.put(1, "v1");
+        Assert.assertEquals("v1", cache.getIfPresent(1));
+        Thread.sleep(100);
+        Assert.assertNull(cache.getIfPresent(1));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
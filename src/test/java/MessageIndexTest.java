@@ -0,0 +1,144 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.MessageIndex;
+import io.javalin.Javalin;
+
+public class MessageIndexTest {
+
+    /**
+     * Messages should be listed per author in (time_posted_epoch, message_id) order, whatever order they were added in.
+     */
+    @Test
+    public void messagesAreOrderedByTime() {
+        MessageIndex index = new MessageIndex();
+        index.add(1, 3, 300);
+        index.add(1, 1, 100);
+        index.add(2, 2, 200);
+        index.add(1, 5, 100);
+        index.add(1, 1, 100);
+
+        Assert.assertArrayEquals(new int[] {1, 5, 3}, index.messageIDs(1));
+        Assert.assertEquals(3, index.count(1));
+        Assert.assertEquals(1, index.count(2));
+        Assert.assertEquals(0, index.count(3));
+        Assert.assertEquals(4, index.size());
+
+        Assert.assertTrue(index.remove(1, 5, 100));
+        Assert.assertFalse(index.remove(1, 5, 100));
+        Assert.assertArrayEquals(new int[] {1, 3}, index.messageIDs(1));
+    }
+
+    /**
+     * A large index should hold each message in a few dozen bytes at most.
+     */
+    @Test
+    public void memoryPerMessageIsSmall() {
+        MessageIndex index = new MessageIndex();
+        for (int message_id = 1; message_id <= 100_000; message_id++) {
+            index.add(message_id % 1000, message_id, 1669947792L + message_id);
+        }
+        for (int account_id = 0; account_id < 1000; account_id++) {
+            Assert.assertEquals(100, index.count(account_id));
+        }
+        long bytesPerMessage = index.estimatedBytes() / index.size();
+        Assert.assertTrue(index.toString(), bytesPerMessage <= 32);
+    }
+
+    /**
+     * With the index enabled, listing and counting a user's messages should reflect messages created and deleted
+     * through the API.
+     */
+    @Test
+    public void indexedListingFollowsWrites() throws IOException, InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("messages.index", "true");
+        Javalin app;
+        try {
+            app = new SocialMediaController().startAPI();
+        } finally {
+            System.clearProperty("messages.index");
+        }
+        app.start(8080);
+        try {
+            Thread.sleep(1000);
+            HttpClient webClient = HttpClient.newHttpClient();
+            ObjectMapper objectMapper = new ObjectMapper();
+            webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                            "\"message_text\": \"older\", \"time_posted_epoch\": 1669947791}"))
+                    .header("Content-Type", "application/json")
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/1"))
+                    .DELETE()
+                    .build(), HttpResponse.BodyHandlers.ofString());
+
+            HttpResponse<String> listResponse = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(List.of(new Message(2, 1, "older", 1669947791)),
+                    objectMapper.readValue(listResponse.body(), new TypeReference<List<Message>>(){}));
+
+            HttpResponse<String> countResponse = webClient.send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/accounts/1/messages/count"))
+                    .build(), HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, countResponse.statusCode());
+            Assert.assertEquals(1, objectMapper.readTree(countResponse.body()).get("count").asInt());
+        } finally {
+            app.stop();
+        }
+    }
+
+    /**
+     * A user's messages should be listed oldest first by time_posted_epoch, whether or not the index is enabled.
+     */
+    @Test
+    public void listingOrderDoesNotDependOnTheIndex() throws IOException, InterruptedException {
+        for (boolean indexed : new boolean[] { false, true }) {
+            ConnectionUtil.resetTestDatabase();
+            System.setProperty("messages.index", Boolean.toString(indexed));
+            Javalin app;
+            try {
+                app = new SocialMediaController().startAPI();
+            } finally {
+                System.clearProperty("messages.index");
+            }
+            app.start(8080);
+            try {
+                Thread.sleep(1000);
+                HttpClient webClient = HttpClient.newHttpClient();
+                ObjectMapper objectMapper = new ObjectMapper();
+                webClient.send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/messages"))
+                        .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1, " +
+                                "\"message_text\": \"older\", \"time_posted_epoch\": 1669947791}"))
+                        .header("Content-Type", "application/json")
+                        .build(), HttpResponse.BodyHandlers.ofString());
+
+                HttpResponse<String> listResponse = webClient.send(HttpRequest.newBuilder()
+                        .uri(URI.create("http://localhost:8080/accounts/1/messages"))
+                        .build(), HttpResponse.BodyHandlers.ofString());
+                Assert.assertEquals("indexed=" + indexed,
+                        List.of(new Message(2, 1, "older", 1669947791), new Message(1, 1, "test message 1", 1669947792)),
+                        objectMapper.readValue(listResponse.body(), new TypeReference<List<Message>>(){}));
+            } finally {
+                app.stop();
+            }
+        }
+    }
+}
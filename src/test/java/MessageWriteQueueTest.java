@@ -0,0 +1,146 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import DAO.MessageDAO;
+import Model.Message;
+import Service.MessageWriteQueue;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class MessageWriteQueueTest {
+
+    /**
+     * Before every test, reset the database.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Messages submitted together should be written in fewer transactions than messages, each future completing with
+     * its own generated message_id.
+     */
+    @Test
+    public void messagesAreGroupCommitted() throws Exception {
+        MessageWriteQueue queue = new MessageWriteQueue(new MessageDAO(), 1000, 64, 50);
+        List<CompletableFuture<Message>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(queue.submit(new Message(1, "queued " + i, 1669947793L + i)));
+        }
+
+        Set<Integer> message_ids = new HashSet<>();
+        for (int i = 0; i < futures.size(); i++) {
+            Message newMessage = futures.get(i).get(5, TimeUnit.SECONDS);
+            Assert.assertEquals("queued " + i, newMessage.getMessage_text());
+            message_ids.add(newMessage.getMessage_id());
+        }
+        Assert.assertEquals(200, message_ids.size());
+        Assert.assertEquals(200, queue.getCommittedMessageCount());
+        Assert.assertTrue(queue.toString(), queue.getCommitCount() < 200);
+        Assert.assertEquals(queue.getCommitCount(), sum(queue.getBatchSizeCounts()));
+    }
+
+    /**
+     * Once the queue is full, further messages should be rejected immediately rather than waiting.
+     */
+    @Test
+    public void fullQueueRejectsMessages() throws Exception {
+        CountDownLatch committing = new CountDownLatch(1);
+        CountDownLatch releaseCommit = new CountDownLatch(1);
+        MessageDAO blockingDAO = new MessageDAO() {
+            @Override
+            public List<Message> addMessages(List<Message> messages) {
+                committing.countDown();
+                try {
+                    releaseCommit.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.addMessages(messages);
+            }
+        };
+        MessageWriteQueue queue = new MessageWriteQueue(blockingDAO, 1, 1, 0);
+
+        CompletableFuture<Message> first = queue.submit(new Message(1, "first", 1669947793));
+        committing.await();
+        CompletableFuture<Message> second = queue.submit(new Message(1, "second", 1669947794));
+        try {
+            queue.submit(new Message(1, "third", 1669947795));
+            Assert.fail("expected the full queue to reject the message");
+        } catch (RejectedExecutionException expected) {
+        }
+        releaseCommit.countDown();
+
+        Assert.assertEquals("first", first.get(5, TimeUnit.SECONDS).getMessage_text());
+        Assert.assertEquals("second", second.get(5, TimeUnit.SECONDS).getMessage_text());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages with write-behind enabled should respond with the
+     * committed message, exactly as the synchronous path does, and the commit should be reported in the batch size
+     * histogram.
+     */
+    @Test
+    public void createMessageThroughWriteBehind() throws IOException, InterruptedException {
+        System.setProperty("messages.writeBehind", "true");
+        Javalin app;
+        try {
+            app = new SocialMediaController().startAPI();
+        } finally {
+            System.clearProperty("messages.writeBehind");
+        }
+        app.start(8080);
+        try {
+            Thread.sleep(1000);
+            HttpRequest postMessageRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages"))
+                    .POST(HttpRequest.BodyPublishers.ofString("{"+
+                            "\"posted_by\":1, " +
+                            "\"message_text\": \"hello message\", " +
+                            "\"time_posted_epoch\": 1669947792}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+            HttpResponse<String> response = HttpClient.newHttpClient().send(postMessageRequest, HttpResponse.BodyHandlers.ofString());
+
+            Assert.assertEquals(200, response.statusCode());
+            Assert.assertEquals(new Message(2, 1, "hello message", 1669947792),
+                    new ObjectMapper().readValue(response.body(), Message.class));
+
+            String metrics = HttpClient.newHttpClient().send(HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/metrics"))
+                    .header(SocialMediaController.MANAGEMENT_TOKEN_HEADER, System.getProperty("management.token"))
+                    .build(), HttpResponse.BodyHandlers.ofString()).body();
+            Assert.assertTrue(metrics.contains("# TYPE message_write_queue_batch_size histogram\n"));
+            Assert.assertTrue(metrics.contains("message_write_queue_batch_size_bucket{le=\"1.0\"} 1\n"));
+            Assert.assertTrue(metrics.contains("message_write_queue_batch_size_count 1\n"));
+            Assert.assertTrue(metrics.contains("message_write_queue_commit_max_seconds "));
+        } finally {
+            app.stop();
+        }
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long count : counts) total += count;
+        return total;
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.LatencyHistogram;
+import io.javalin.Javalin;
+
+public class MetricsTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Durations should land in log-linear buckets, each at most an eighth of its magnitude wide.
+     */
+    @Test
+    public void histogramBucketsAreLogLinear() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(10));
+
+        Assert.assertEquals(100, histogram.getCount());
+        long p50 = histogram.getQuantileNanos(0.5);
+        long p100 = histogram.getQuantileNanos(1.0);
+        Assert.assertTrue(p50 >= 100_000 && p50 < 150_000);
+        Assert.assertTrue(p100 >= 10_000_000 && p100 < 15_000_000);
+
+        long[] bounds = LatencyHistogram.getUpperBounds();
+        for (int i = 1; i < bounds.length; i++) {
+            Assert.assertTrue(bounds[i] > bounds[i - 1] && bounds[i] <= bounds[i - 1] * 9 / 8 + 1);
+        }
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics should report the requests served so far, by route and
+     * status, and the DAO calls they made
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: Prometheus text format
+     */
+    @Test
+    public void metricsReportRoutesAndDaoCalls() throws IOException, InterruptedException {
+        get("/messages/1");
+        get("/no/such/route");
+        HttpResponse<String> response = get("/metrics");
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertTrue(response.headers().firstValue("Content-Type").orElseThrow().startsWith("text/plain"));
+        String metrics = response.body();
+        Assert.assertTrue(metrics.contains("# TYPE http_request_duration_seconds histogram\n"));
+        Assert.assertTrue(metrics.matches("(?s).*\nhttp_requests_total\\{method=\"GET\",route=\"/messages/\\{message_id\\}\",status=\"200\"} [1-9].*"));
+        Assert.assertTrue(metrics.matches("(?s).*\nhttp_requests_total\\{method=\"\\*\",route=\"unmatched\",status=\"404\"} [1-9].*"));
+        Assert.assertTrue(metrics.contains("http_request_duration_seconds_bucket{method=\"GET\",route=\"/messages/{message_id}\",le=\"+Inf\"}"));
+        Assert.assertTrue(metrics.matches("(?s).*\ndao_call_seconds_count\\{dao=\"MessageDAO\",method=\"getMessageByID\"} [1-9].*"));
+        Assert.assertTrue(metrics.contains("\ndb_pool_connections{state=\"active\"} "));
+        Assert.assertTrue(metrics.contains("\ncache_hits_total{cache=\"messages\"} "));
+        Assert.assertTrue(metrics.contains("\njvm_memory_used_bytes{area=\"heap\"} "));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/metrics without the management token, or with the wrong one,
+     * should be rejected
+     *
+     * Expected Response:
+     *  Status Code: 401
+     */
+    @Test
+    public void metricsRequireTheManagementToken() throws IOException, InterruptedException {
+        HttpRequest withoutToken = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/metrics")).build();
+        Assert.assertEquals(401, webClient.send(withoutToken, HttpResponse.BodyHandlers.ofString()).statusCode());
+        HttpRequest wrongToken = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/admin/sql-stats"))
+                .header(SocialMediaController.MANAGEMENT_TOKEN_HEADER, "wrong").build();
+        Assert.assertEquals(401, webClient.send(wrongToken, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080" + path))
+                .header(SocialMediaController.MANAGEMENT_TOKEN_HEADER, System.getProperty("management.token")).build();
+        return webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+    }
+}
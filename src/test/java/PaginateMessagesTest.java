@@ -0,0 +1,162 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class PaginateMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, add a few more messages, restart the Javalin app, and create a new
+     * webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        addMessages();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?limit=2, then following the X-Next-Cursor header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: messages 1-2 with a cursor, then messages 3-4 with a cursor, then message 5 with no cursor
+     */
+    @Test
+    public void pageThroughMessagesById() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages?limit=2");
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(List.of(1, 2), ids(first));
+        String cursor = first.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).orElseThrow();
+
+        HttpResponse<String> second = get("/messages?limit=2&after=" + cursor);
+        Assert.assertEquals(List.of(3, 4), ids(second));
+        cursor = second.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).orElseThrow();
+
+        HttpResponse<String> last = get("/messages?limit=2&after=" + cursor);
+        Assert.assertEquals(List.of(5), ids(last));
+        Assert.assertTrue(last.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).isEmpty());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages?order=recent&limit=2, then following the X-Next-Cursor header
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: messages ordered by time_posted_epoch descending, ties broken by message_id descending
+     */
+    @Test
+    public void pageThroughMessagesNewestFirst() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/messages?order=recent&limit=2");
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(List.of(5, 4), ids(first));
+        String cursor = first.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).orElseThrow();
+
+        HttpResponse<String> second = get("/messages?order=recent&limit=2&before=" + cursor);
+        Assert.assertEquals(List.of(3, 2), ids(second));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/accounts/2/messages?limit=1
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: only the first message posted by account 2, with a cursor to the next one
+     */
+    @Test
+    public void pageThroughMessagesByUser() throws IOException, InterruptedException {
+        HttpResponse<String> first = get("/accounts/2/messages?limit=1");
+        Assert.assertEquals(200, first.statusCode());
+        Assert.assertEquals(List.of(4), ids(first));
+        String cursor = first.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).orElseThrow();
+
+        HttpResponse<String> second = get("/accounts/2/messages?limit=1&after=" + cursor);
+        Assert.assertEquals(List.of(5), ids(second));
+        Assert.assertTrue(second.headers().firstValue(SocialMediaController.NEXT_CURSOR_HEADER).isEmpty());
+    }
+
+    /**
+     * Sending http requests to GET localhost:8080/messages with malformed pagination parameters
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void malformedPaginationParameters() throws IOException, InterruptedException {
+        Assert.assertEquals(400, get("/messages?limit=0").statusCode());
+        Assert.assertEquals(400, get("/messages?limit=abc").statusCode());
+        Assert.assertEquals(400, get("/messages?order=sideways").statusCode());
+        Assert.assertEquals(400, get("/messages?order=recent&before=12").statusCode());
+        Assert.assertEquals(400, get("/messages?before=1:1").statusCode());
+    }
+
+    private HttpResponse<String> get(String path) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080" + path))
+                .build();
+        return webClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private List<Integer> ids(HttpResponse<String> response) throws IOException {
+        List<Message> messages = objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+        List<Integer> ids = new ArrayList<>();
+        for (Message message : messages) ids.add(message.getMessage_id());
+        return ids;
+    }
+
+    /**
+     * Adds a second account and messages 2-5. Messages 2 and 3 share a timestamp to exercise the tie-breaker.
+     */
+    private void addMessages() {
+        try (Connection conn = ConnectionUtil.getConnection()) {
+            conn.prepareStatement("insert into account (username, password) values ('testuser2', 'password')").executeUpdate();
+            PreparedStatement ps = conn.prepareStatement(
+                    "insert into message (posted_by, message_text, time_posted_epoch) values (?, ?, ?)");
+            int[] postedBy = {1, 1, 2, 2};
+            long[] postedAt = {1669947800, 1669947800, 1669947900, 1669948000};
+            for (int i = 0; i < postedBy.length; i++) {
+                ps.setInt(1, postedBy[i]);
+                ps.setString(2, "paged message " + (i + 2));
+                ps.setLong(3, postedAt[i]);
+                ps.executeUpdate();
+            }
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+}
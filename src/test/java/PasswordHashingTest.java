@@ -0,0 +1,85 @@
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import DAO.AccountDAO;
+import Model.Account;
+import Service.AccountService;
+import Util.ConnectionUtil;
+import Util.PasswordHasher;
+
+public class PasswordHashingTest {
+    AccountDAO accountDAO;
+
+    /**
+     * Before every test, reset the database.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+        accountDAO = new AccountDAO();
+    }
+
+    /**
+     * Hashing the same password twice should give different salted hashes that both verify, and nothing else should.
+     */
+    @Test
+    public void hashesAreSaltedAndVerify() {
+        PasswordHasher hasher = new PasswordHasher(1000);
+        String first = hasher.hash("password");
+        String second = hasher.hash("password");
+
+        Assert.assertNotEquals(first, second);
+        Assert.assertTrue(hasher.verify("password", first));
+        Assert.assertTrue(hasher.verify("password", second));
+        Assert.assertFalse(hasher.verify("passwort", first));
+        Assert.assertFalse(hasher.verify("password", null));
+        Assert.assertFalse(hasher.needsRehash(first));
+        Assert.assertTrue(new PasswordHasher(2000).needsRehash(first));
+    }
+
+    /**
+     * A registered account's password should be stored hashed, while the response still holds the submitted password.
+     */
+    @Test
+    public void registeredPasswordsAreStoredHashed() {
+        AccountService accountService = new AccountService();
+        Account newAccount = accountService.addAccount(new Account("user", "password"));
+
+        Assert.assertEquals(new Account(2, "user", "password"), newAccount);
+        String stored = accountDAO.getAccountByUsername("user").getPassword();
+        Assert.assertTrue(PasswordHasher.isHash(stored));
+        Assert.assertEquals(newAccount, accountService.verifyAccount(new Account("user", "password")));
+        Assert.assertNull(accountService.verifyAccount(new Account("user", "wrong password")));
+    }
+
+    /**
+     * A plaintext password from before hashing should still log in, and be replaced by a hash when it does.
+     */
+    @Test
+    public void plaintextPasswordsAreUpgradedOnLogin() {
+        AccountService accountService = new AccountService();
+        Assert.assertEquals("password", accountDAO.getAccountByUsername("testuser1").getPassword());
+
+        Assert.assertEquals(new Account(1, "testuser1", "password"),
+                accountService.verifyAccount(new Account("testuser1", "password")));
+        Assert.assertTrue(PasswordHasher.isHash(accountDAO.getAccountByUsername("testuser1").getPassword()));
+        Assert.assertEquals(new Account(1, "testuser1", "password"),
+                new AccountService().verifyAccount(new Account("testuser1", "password")));
+    }
+
+    /**
+     * Logging in again with the same credentials should be answered from the verified credential cache.
+     */
+    @Test
+    public void repeatedLoginsSkipTheHash() {
+        AccountService accountService = new AccountService();
+        Account credentials = new Account("testuser1", "password");
+
+        accountService.verifyAccount(credentials);
+        Assert.assertEquals(1, accountService.getVerifiedCredentials().size());
+        Assert.assertEquals(new Account(1, "testuser1", "password"), accountService.verifyAccount(credentials));
+        Assert.assertNull(accountService.verifyAccount(new Account("testuser1", "other password")));
+        Assert.assertEquals(1, accountService.getVerifiedCredentials().size());
+    }
+}
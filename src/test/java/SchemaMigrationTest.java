@@ -0,0 +1,88 @@
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Util.ConnectionUtil;
+import Util.SchemaMigrator;
+
+public class SchemaMigrationTest {
+
+    /**
+     * Before every test, reset the database, which rebuilds the schema through the migrations.
+     */
+    @Before
+    public void setUp() {
+        ConnectionUtil.resetTestDatabase();
+    }
+
+    /**
+     * Running the migrations against an up-to-date database should apply nothing and leave the data intact.
+     */
+    @Test
+    public void migrationsAreAppliedOnlyOnce() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            Assert.assertEquals(0, SchemaMigrator.migrate(connection));
+            try (ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM message")) {
+                rs.next();
+                Assert.assertEquals(1, rs.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * A database created before the migrations existed should be adopted without losing data, then receive
+     * the newer migrations.
+     */
+    @Test
+    public void existingDatabaseIsMigratedInPlace() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection()) {
+            connection.createStatement().execute("DROP TABLE schema_version");
+            connection.createStatement().execute("DROP INDEX message_posted_by_time_idx");
+            connection.createStatement().execute("DROP INDEX message_time_idx");
+
+            Assert.assertEquals(3, SchemaMigrator.migrate(connection));
+            try (ResultSet rs = connection.createStatement().executeQuery("SELECT COUNT(*) FROM message")) {
+                rs.next();
+                Assert.assertEquals(1, rs.getInt(1));
+            }
+        }
+    }
+
+    /**
+     * Newest-first pages of a user's messages should be read in order from the composite index, with no sort step.
+     */
+    @Test
+    public void messagesByUserUseCompositeIndex() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+                ResultSet rs = connection.createStatement().executeQuery(
+                        "EXPLAIN SELECT * FROM message USE INDEX (message_posted_by_time_idx) WHERE posted_by = 1 " +
+                        "AND (time_posted_epoch < 5 OR (time_posted_epoch = 5 AND message_id < 5)) " +
+                        "ORDER BY posted_by, time_posted_epoch DESC, message_id DESC LIMIT 10")) {
+            rs.next();
+            String plan = rs.getString(1);
+            Assert.assertTrue(plan, plan.contains("MESSAGE_POSTED_BY_TIME_IDX: POSTED_BY = 1"));
+            Assert.assertTrue(plan, plan.contains("index sorted"));
+        }
+    }
+
+    /**
+     * Newest-first pages of all messages should be read in order from the time index, with no sort step.
+     */
+    @Test
+    public void recentMessagesUseTimeIndex() throws SQLException {
+        try (Connection connection = ConnectionUtil.getConnection();
+                ResultSet rs = connection.createStatement().executeQuery(
+                        "EXPLAIN SELECT * FROM message WHERE time_posted_epoch < 5 " +
+                        "OR (time_posted_epoch = 5 AND message_id < 5) " +
+                        "ORDER BY time_posted_epoch DESC, message_id DESC LIMIT 10")) {
+            rs.next();
+            String plan = rs.getString(1);
+            Assert.assertTrue(plan, plan.contains("MESSAGE_TIME_IDX"));
+            Assert.assertTrue(plan, plan.contains("index sorted"));
+        }
+    }
+}
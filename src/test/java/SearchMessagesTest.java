@@ -0,0 +1,181 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Model.Message;
+import Util.ConnectionUtil;
+import Util.SearchIndex;
+import io.javalin.Javalin;
+
+public class SearchMessagesTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, enable the in-memory search index, reset the database, restart the Javalin app, and create a
+     * new webClient and ObjectMapper for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("messages.search", "true");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("messages.search");
+    }
+
+    /**
+     * Messages matching more, and rarer, query terms should rank first; among equal matches the newer message wins.
+     */
+    @Test
+    public void resultsAreRankedByRelevanceThenRecency() {
+        SearchIndex index = new SearchIndex(0.5, 100);
+        index.add(1, "coffee and cake", 1000);
+        index.add(2, "Coffee, coffee!", 1000);
+        index.add(3, "tea and cake", 1000);
+        index.add(4, "tea and cake", 1100);
+        index.add(6, "nothing to see", 1100);
+
+        Assert.assertArrayEquals(new int[] {2, 1}, index.search("coffee", 10));
+        Assert.assertArrayEquals(new int[] {1, 2, 4, 3}, index.search("COFFEE cake", 10));
+        Assert.assertArrayEquals(new int[] {4, 3}, index.search("tea", 10));
+        Assert.assertArrayEquals(new int[] {4}, index.search("tea", 1));
+        Assert.assertArrayEquals(new int[0], index.search("juice", 10));
+
+        index.add(5, "more tea", 1100);
+        Assert.assertTrue(index.remove(4, "tea and cake"));
+        Assert.assertFalse(index.remove(4, "tea and cake"));
+        Assert.assertArrayEquals(new int[] {5, 3}, index.search("tea", 10));
+        Assert.assertEquals(5, index.size());
+    }
+
+    /**
+     * Writes to the same message reaching the index out of order should be applied in the order they were made, each
+     * waiting for the text it replaced.
+     */
+    @Test
+    public void outOfOrderWritesAreAppliedInOrder() {
+        SearchIndex index = new SearchIndex(0.5, 100);
+        index.add(1, "original text", 1000);
+
+        Assert.assertFalse(index.replace(1, "first edit", "second edit"));
+        Assert.assertArrayEquals(new int[] {1}, index.search("original", 10));
+        Assert.assertTrue(index.replace(1, "original text", "first edit"));
+        Assert.assertArrayEquals(new int[0], index.search("original first", 10));
+        Assert.assertArrayEquals(new int[] {1}, index.search("second", 10));
+
+        Assert.assertFalse(index.remove(2, "not yet added"));
+        index.add(2, "not yet added", 1000);
+        Assert.assertArrayEquals(new int[0], index.search("added", 10));
+        Assert.assertEquals(1, index.size());
+    }
+
+    /**
+     * Replaced and removed messages should be compacted away once they outnumber the live ones, without changing
+     * results.
+     */
+    @Test
+    public void deletedDocumentsAreCompacted() {
+        SearchIndex index = new SearchIndex(0.5, 100);
+        int messages = 5000;
+        for (int i = 1; i <= messages; i++) index.add(i, "common word " + i, 1000 + i);
+        long bytes = index.postingBytes();
+        for (int i = 1; i <= messages; i++) Assert.assertTrue(index.replace(i, "common word " + i, "common text " + i));
+        for (int i = 1; i <= messages; i++) Assert.assertTrue(index.replace(i, "common text " + i, "common word " + i));
+
+        Assert.assertTrue(index.deletedCount() < messages);
+        Assert.assertTrue(index.postingBytes() < 2 * bytes);
+        Assert.assertArrayEquals(new int[] {messages, messages - 1}, index.search("common word", 2));
+        Assert.assertArrayEquals(new int[] {42}, index.search("42", 10));
+        Assert.assertArrayEquals(new int[0], index.search("text", 10));
+        Assert.assertEquals(messages, index.size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search?q=... should find created and updated messages,
+     * and stop finding deleted ones
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON representation of the matching messages, best match first
+     */
+    @Test
+    public void searchFollowsWrites() throws IOException, InterruptedException {
+        post("{\"posted_by\":1,\"message_text\":\"searching for treasure\",\"time_posted_epoch\":1669947793}");
+        Assert.assertEquals(List.of(new Message(2, 1, "searching for treasure", 1669947793L)), search("Treasure"));
+        Assert.assertEquals(List.of(new Message(1, 1, "test message 1", 1669947792L)), search("message"));
+
+        HttpRequest patchRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/2"))
+                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"message_text\":\"found the message\"}"))
+                .build();
+        webClient.send(patchRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(List.of(), search("treasure"));
+        Assert.assertEquals(2, search("message").size());
+
+        HttpRequest deleteRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/1"))
+                .DELETE()
+                .build();
+        webClient.send(deleteRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(List.of(new Message(2, 1, "found the message", 1669947793L)), search("message"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/search without search terms
+     *
+     * Expected Response:
+     *  Status Code: 400
+     */
+    @Test
+    public void searchWithoutTermsIsRejected() throws IOException, InterruptedException {
+        for (String query : new String[] {"", "?q=", "?q=%20%21", "?q=test&limit=0"}) {
+            HttpRequest getRequest = HttpRequest.newBuilder()
+                    .uri(URI.create("http://localhost:8080/messages/search" + query))
+                    .build();
+            Assert.assertEquals(query, 400, webClient.send(getRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        }
+    }
+
+    private void post(String body) throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .header("Content-Type", "application/json")
+                .build();
+        Assert.assertEquals(200, webClient.send(postRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private List<Message> search(String query) throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages/search?q=" + query))
+                .build();
+        HttpResponse<String> response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return objectMapper.readValue(response.body(), new TypeReference<List<Message>>(){});
+    }
+}
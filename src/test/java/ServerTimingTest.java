@@ -0,0 +1,105 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.ServerTiming;
+import io.javalin.Javalin;
+
+public class ServerTimingTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with Server-Timing enabled, and create a new
+     * webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        System.setProperty("http.serverTiming", "true");
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+        System.clearProperty("http.serverTiming");
+    }
+
+    /**
+     * Each SQL execution should be listed on its own, with the ones beyond MAX_STATEMENTS summed together.
+     */
+    @Test
+    public void headerListsPhasesAndStatements() {
+        ServerTiming timing = new ServerTiming();
+        timing.record(ServerTiming.Phase.PARSE, System.nanoTime() - 1_234_567);
+        for (int i = 0; i < ServerTiming.MAX_STATEMENTS + 2; i++) timing.statement(2_000);
+
+        String header = timing.toHeader();
+        Assert.assertTrue(header, header.startsWith("parse;dur=1.2"));
+        Assert.assertTrue(header, header.contains(", sql-1;dur=0.002, "));
+        Assert.assertTrue(header, header.contains(", sql-" + ServerTiming.MAX_STATEMENTS + ";dur=0.002, "));
+        Assert.assertTrue(header, header.contains(", sql-other;dur=0.004;desc=\"2 more statements\", total;dur="));
+        Assert.assertFalse(header, header.contains("validate"));
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/messages/1 should break the response time down by phase
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Server-Timing: connection acquire, each SQL execution, serialization and total
+     */
+    @Test
+    public void readReportsDatabaseAndSerialization() throws IOException, InterruptedException {
+        HttpRequest getRequest = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/messages/1")).build();
+        HttpResponse<String> response = webClient.send(getRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("{\"message_id\":1,\"posted_by\":1,\"message_text\":\"test message 1\",\"time_posted_epoch\":1669947792}",
+                response.body());
+        String header = response.headers().firstValue(ServerTiming.HEADER).orElseThrow();
+        Assert.assertTrue(header, header.contains("db-acquire;dur="));
+        Assert.assertTrue(header, header.contains("sql-1;dur="));
+        Assert.assertTrue(header, header.contains("serialize;dur="));
+        Assert.assertTrue(header, header.contains("total;dur="));
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/messages should also report parsing and validation
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Server-Timing: parse and validate among the phases
+     */
+    @Test
+    public void writeReportsParseAndValidation() throws IOException, InterruptedException {
+        HttpRequest postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{\"posted_by\":1,\"message_text\":\"hello message\",\"time_posted_epoch\":1669947792}"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(postRequest, HttpResponse.BodyHandlers.ofString());
+
+        Assert.assertEquals(200, response.statusCode());
+        String header = response.headers().firstValue(ServerTiming.HEADER).orElseThrow();
+        Assert.assertTrue(header, header.startsWith("parse;dur="));
+        Assert.assertTrue(header, header.contains("validate;dur="));
+        Assert.assertTrue(header, header.contains("sql-1;dur="));
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import Controller.SocialMediaController;
+import Service.SessionService;
+import Util.ConnectionUtil;
+import io.javalin.Javalin;
+
+public class SessionTokenTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app with tokens required for writes, and create a new
+     * webClient.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        System.setProperty("auth.required", "true");
+        socialMediaController = new SocialMediaController();
+        System.clearProperty("auth.required");
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * A token should carry its account_id, and any change to it should invalidate it.
+     */
+    @Test
+    public void forgedTokensAreRejected() {
+        SessionService sessionService = new SessionService(new byte[32], 60);
+        String token = sessionService.issue(7);
+
+        Assert.assertEquals(7, sessionService.verify(token));
+        Assert.assertEquals(SessionService.INVALID, sessionService.verify(token.substring(1)));
+        Assert.assertEquals(SessionService.INVALID, new SessionService(new byte[] {1}, 60).verify(token));
+        Assert.assertEquals(SessionService.INVALID, sessionService.verify("not a token"));
+    }
+
+    /**
+     * Logging in should return a token in the X-Auth-Token header that lets the account post messages
+     *
+     * Expected Response:
+     *  Status Code: 401 without a token, 200 with it
+     */
+    @Test
+    public void loginTokenAuthorizesWrites() throws IOException, InterruptedException {
+        String token = login();
+        Assert.assertEquals(401, postMessage(1, null).statusCode());
+        Assert.assertEquals(200, postMessage(1, token).statusCode());
+    }
+
+    /**
+     * A token should only let its own account act
+     *
+     * Expected Response:
+     *  Status Code: 403 for posting as another account, 401 for an invalid token
+     */
+    @Test
+    public void tokenForAnotherAccountIsForbidden() throws IOException, InterruptedException {
+        String token = login();
+        Assert.assertEquals(403, postMessage(2, token).statusCode());
+        Assert.assertEquals(401, postMessage(1, token + "x").statusCode());
+    }
+
+    /**
+     * Sending an http request to POST localhost:8080/logout should revoke the token
+     *
+     * Expected Response:
+     *  Status Code: 200, then 401 for any further use of the token
+     */
+    @Test
+    public void logoutRevokesToken() throws IOException, InterruptedException {
+        String token = login();
+        HttpRequest logoutRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/logout"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .header("Authorization", "Bearer " + token)
+                .build();
+        Assert.assertEquals(200, webClient.send(logoutRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+        Assert.assertEquals(401, postMessage(1, token).statusCode());
+        Assert.assertEquals(401, webClient.send(logoutRequest, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+
+    private String login() throws IOException, InterruptedException {
+        HttpRequest loginRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/login"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"username\": \"testuser1\", " +
+                        "\"password\": \"password\" }"))
+                .header("Content-Type", "application/json")
+                .build();
+        HttpResponse<String> response = webClient.send(loginRequest, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        return response.headers().firstValue(SocialMediaController.AUTH_TOKEN_HEADER).orElseThrow();
+    }
+
+    private HttpResponse<String> postMessage(int posted_by, String token) throws IOException, InterruptedException {
+        HttpRequest.Builder postRequest = HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:8080/messages"))
+                .POST(HttpRequest.BodyPublishers.ofString("{" +
+                        "\"posted_by\": " + posted_by + ", " +
+                        "\"message_text\": \"hello message\", " +
+                        "\"time_posted_epoch\": 1669947792 }"))
+                .header("Content-Type", "application/json");
+        if (token != null) postRequest.header("Authorization", "Bearer " + token);
+        return webClient.send(postRequest.build(), HttpResponse.BodyHandlers.ofString());
+    }
+}
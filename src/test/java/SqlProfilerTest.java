@@ -0,0 +1,132 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import Controller.SocialMediaController;
+import Util.ConnectionUtil;
+import Util.SqlProfiler;
+import io.javalin.Javalin;
+
+public class SqlProfilerTest {
+    SocialMediaController socialMediaController;
+    HttpClient webClient;
+    ObjectMapper objectMapper;
+    Javalin app;
+
+    /**
+     * Before every test, reset the database, restart the Javalin app, and create a new webClient and ObjectMapper
+     * for interacting locally on the web.
+     * @throws InterruptedException
+     */
+    @Before
+    public void setUp() throws InterruptedException {
+        ConnectionUtil.resetTestDatabase();
+        socialMediaController = new SocialMediaController();
+        app = socialMediaController.startAPI();
+        webClient = HttpClient.newHttpClient();
+        objectMapper = new ObjectMapper();
+        app.start(8080);
+        Thread.sleep(1000);
+    }
+
+    @After
+    public void tearDown() {
+        app.stop();
+    }
+
+    /**
+     * Statements differing only in literals and whitespace should normalize to the same SQL.
+     */
+    @Test
+    public void literalsAreNormalized() {
+        Assert.assertEquals("SELECT * FROM message WHERE message_id = ? AND message_text = ?",
+                SqlProfiler.normalize("SELECT *  FROM message\n WHERE message_id = 12 AND message_text = 'it''s';"));
+        Assert.assertEquals("SELECT col1 FROM t2 WHERE x = ?", SqlProfiler.normalize("SELECT col1 FROM t2 WHERE x = 1.5"));
+    }
+
+    /**
+     * The parameters of a slow statement should be logged by type and length only, never by value.
+     */
+    @Test
+    public void parameterValuesAreNotDescribed() {
+        String description = SqlProfiler.describe(new Object[] {1, "pbkdf2$secret", null, new byte[] {1, 2}});
+        Assert.assertEquals("[Integer, String(13), null, byte[2]]", description);
+    }
+
+    /**
+     * Every execution through a wrapped connection should be counted with its rows, including slow ones whose plan
+     * is logged.
+     */
+    @Test
+    public void executionsAreAggregatedPerStatement() throws SQLException {
+        SqlProfiler profiler = new SqlProfiler(0, 60_000, 100, ConnectionUtil.getPool());
+        try (Connection connection = profiler.wrap(ConnectionUtil.getConnection())) {
+            for (int i = 0; i < 3; i++) {
+                try (PreparedStatement statement = connection.prepareStatement("SELECT * FROM message WHERE posted_by = ?;")) {
+                    statement.setInt(1, 1);
+                    try (ResultSet rs = statement.executeQuery()) {
+                        while (rs.next()) rs.getString("message_text");
+                    }
+                }
+            }
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM message WHERE message_id = ?;")) {
+                statement.setInt(1, 1);
+                statement.executeUpdate();
+            }
+        }
+
+        List<SqlProfiler.StatementStats> top = profiler.top(10);
+        Assert.assertEquals(2, top.size());
+        SqlProfiler.StatementStats select = top.stream()
+                .filter(stats -> stats.getSql().startsWith("SELECT")).findFirst().orElseThrow();
+        Assert.assertEquals("SELECT * FROM message WHERE posted_by = ?", select.getSql());
+        Assert.assertEquals(3, select.getExecutions());
+        Assert.assertEquals(3, select.getRows());
+        Assert.assertEquals(1, profiler.top(1).size());
+    }
+
+    /**
+     * Sending an http request to GET localhost:8080/admin/sql-stats should list the statements run so far, most total
+     * time first
+     *
+     * Expected Response:
+     *  Status Code: 200
+     *  Response Body: JSON array of statement statistics
+     */
+    @Test
+    public void sqlStatsListsStatements() throws IOException, InterruptedException {
+        HttpRequest getMessages = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/accounts/1/messages")).build();
+        webClient.send(getMessages, HttpResponse.BodyHandlers.ofString());
+
+        HttpRequest getStats = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/admin/sql-stats?limit=500"))
+                .header(SocialMediaController.MANAGEMENT_TOKEN_HEADER, System.getProperty("management.token")).build();
+        HttpResponse<String> response = webClient.send(getStats, HttpResponse.BodyHandlers.ofString());
+        Assert.assertEquals(200, response.statusCode());
+        JsonNode stats = objectMapper.readTree(response.body());
+        boolean found = false;
+        for (int i = 0; i < stats.size(); i++) {
+            if (i > 0) Assert.assertTrue(stats.get(i - 1).get("totalMillis").asDouble() >= stats.get(i).get("totalMillis").asDouble());
+            found |= stats.get(i).get("sql").asText().equals("SELECT * FROM message WHERE posted_by=? ORDER BY time_posted_epoch, message_id");
+        }
+        Assert.assertTrue(response.body(), found);
+
+        HttpRequest badLimit = HttpRequest.newBuilder().uri(URI.create("http://localhost:8080/admin/sql-stats?limit=0"))
+                .header(SocialMediaController.MANAGEMENT_TOKEN_HEADER, System.getProperty("management.token")).build();
+        Assert.assertEquals(400, webClient.send(badLimit, HttpResponse.BodyHandlers.ofString()).statusCode());
+    }
+}